@@ -0,0 +1,149 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.buffer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link IoBuffer} primitives the codecs rely on : relative
+ * puts and gets of bytes, ints and longs, bulk copies, and the allocation
+ * of an auto-expanding buffer grown from a small initial capacity.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IoBufferBenchmark {
+    @Param({ "heap", "direct" })
+    public String bufferType;
+
+    @Param({ "64", "4096" })
+    public int size;
+
+    private IoBuffer buffer;
+
+    private byte[] array;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        IoBuffer.setUseDirectBuffer("direct".equals(bufferType));
+        buffer = IoBuffer.allocate(size);
+        array = new byte[size];
+    }
+
+    @Benchmark
+    public IoBuffer putGetBytes() {
+        IoBuffer buf = buffer;
+        buf.clear();
+
+        for (int i = 0; i < size; i++) {
+            buf.put((byte) i);
+        }
+
+        buf.flip();
+        int sum = 0;
+
+        while (buf.hasRemaining()) {
+            sum += buf.get();
+        }
+
+        return buf.put(0, (byte) sum);
+    }
+
+    @Benchmark
+    public IoBuffer putGetInts() {
+        IoBuffer buf = buffer;
+        buf.clear();
+
+        for (int i = size / 4; i > 0; i--) {
+            buf.putInt(i);
+        }
+
+        buf.flip();
+        int sum = 0;
+
+        while (buf.remaining() >= 4) {
+            sum += buf.getInt();
+        }
+
+        return buf.putInt(0, sum);
+    }
+
+    @Benchmark
+    public IoBuffer putGetLongs() {
+        IoBuffer buf = buffer;
+        buf.clear();
+
+        for (long i = size / 8; i > 0; i--) {
+            buf.putLong(i);
+        }
+
+        buf.flip();
+        long sum = 0;
+
+        while (buf.remaining() >= 8) {
+            sum += buf.getLong();
+        }
+
+        return buf.putLong(0, sum);
+    }
+
+    @Benchmark
+    public IoBuffer bulkCopy() {
+        IoBuffer buf = buffer;
+        buf.clear();
+        buf.put(array);
+        buf.flip();
+        buf.get(array);
+
+        return buf;
+    }
+
+    @Benchmark
+    public IoBuffer expand() {
+        IoBuffer buf = IoBuffer.allocate(16).setAutoExpand(true);
+
+        for (int i = size / 8; i > 0; i--) {
+            buf.putLong(i);
+        }
+
+        buf.flip();
+        buf.free();
+
+        return buf;
+    }
+}
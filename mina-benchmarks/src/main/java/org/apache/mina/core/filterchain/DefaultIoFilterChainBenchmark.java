@@ -0,0 +1,96 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.filterchain;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of propagating events through a
+ * {@link DefaultIoFilterChain} made of pass-through filters : a
+ * <tt>messageReceived</tt> event from the head to the handler, and a write
+ * from the session to the head, where the processor of the
+ * {@link DummySession} completes it.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DefaultIoFilterChainBenchmark {
+    private static final Object MESSAGE = "message";
+
+    @Param({ "0", "4", "16" })
+    public int filterCount;
+
+    private DummySession session;
+
+    private IoFilterChain chain;
+
+    /** The number of messages which reached the handler */
+    private long received;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        session = new DummySession();
+        session.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                received++;
+            }
+        });
+
+        chain = session.getFilterChain();
+
+        for (int i = 0; i < filterCount; i++) {
+            chain.addLast("filter" + i, new IoFilterAdapter());
+        }
+    }
+
+    @Benchmark
+    public long messageReceived() {
+        chain.fireMessageReceived(MESSAGE);
+
+        return received;
+    }
+
+    @Benchmark
+    public Object write() {
+        return session.write(MESSAGE);
+    }
+}
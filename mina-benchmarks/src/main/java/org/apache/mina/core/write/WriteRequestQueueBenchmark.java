@@ -0,0 +1,158 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.write;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.session.DefaultIoSessionDataStructureFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+
+/**
+ * Compares the default {@link WriteRequestQueue} with the
+ * {@link LockFreeWriteRequestQueue} with 1, 4 and 16 threads writing and a
+ * single thread polling, as the I/O processor does.
+ * <p>
+ * The writers back off when the queue holds more than {@link #MAX_BACKLOG}
+ * requests so that a slow consumer doesn't exhaust the heap.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteRequestQueueBenchmark {
+    private static final int MAX_BACKLOG = 65536;
+
+    private static final WriteRequest REQUEST = new DefaultWriteRequest("message");
+
+    @State(Scope.Group)
+    public static class QueueState {
+        @Param({ "default", "lockFree" })
+        public String queueType;
+
+        WriteRequestQueue queue;
+
+        /** The number of polled requests, only written by the consumer */
+        volatile long polled;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws Exception {
+            if ("lockFree".equals(queueType)) {
+                queue = new LockFreeWriteRequestQueue();
+            } else {
+                queue = new DefaultIoSessionDataStructureFactory().getWriteRequestQueue(null);
+            }
+
+            polled = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WriterState {
+        long offered;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            offered = 0;
+        }
+    }
+
+    private static void offer(QueueState q, WriterState w, Control control, int writers) {
+        // Approximate the backlog assuming all the writers progress evenly
+        while (w.offered * writers - q.polled > MAX_BACKLOG) {
+            if (control.stopMeasurement) {
+                return;
+            }
+
+            Thread.yield();
+        }
+
+        q.queue.offer(null, REQUEST);
+        w.offered++;
+    }
+
+    private static WriteRequest poll(QueueState q) {
+        WriteRequest req = q.queue.poll(null);
+
+        if (req != null) {
+            q.polled++;
+        }
+
+        return req;
+    }
+
+    @Benchmark
+    @Group("writers1")
+    @GroupThreads(1)
+    public void offer1(QueueState q, WriterState w, Control control) {
+        offer(q, w, control, 1);
+    }
+
+    @Benchmark
+    @Group("writers1")
+    @GroupThreads(1)
+    public WriteRequest poll1(QueueState q) {
+        return poll(q);
+    }
+
+    @Benchmark
+    @Group("writers4")
+    @GroupThreads(4)
+    public void offer4(QueueState q, WriterState w, Control control) {
+        offer(q, w, control, 4);
+    }
+
+    @Benchmark
+    @Group("writers4")
+    @GroupThreads(1)
+    public WriteRequest poll4(QueueState q) {
+        return poll(q);
+    }
+
+    @Benchmark
+    @Group("writers16")
+    @GroupThreads(16)
+    public void offer16(QueueState q, WriterState w, Control control) {
+        offer(q, w, control, 16);
+    }
+
+    @Benchmark
+    @Group("writers16")
+    @GroupThreads(1)
+    public WriteRequest poll16(QueueState q) {
+        return poll(q);
+    }
+}
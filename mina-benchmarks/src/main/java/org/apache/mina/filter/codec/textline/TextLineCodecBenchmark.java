@@ -0,0 +1,119 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec.textline;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterChain;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a {@link ProtocolCodecFilter} using the
+ * {@link TextLineCodecFactory} : the decoding of a buffer holding
+ * {@link #LINES} lines received by the session, and the encoding of a
+ * single line written to the session.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TextLineCodecBenchmark {
+    private static final int LINES = 16;
+
+    @Param({ "16", "256" })
+    public int lineLength;
+
+    private DummySession session;
+
+    private IoFilterChain chain;
+
+    private String line;
+
+    /** The {@link #LINES} encoded lines */
+    private IoBuffer received;
+
+    /** The number of decoded lines */
+    private long decoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Charset charset = Charset.forName("UTF-8");
+
+        session = new DummySession();
+        session.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                decoded++;
+            }
+        });
+
+        chain = session.getFilterChain();
+        chain.addLast("codec", new ProtocolCodecFilter(new TextLineCodecFactory(charset)));
+
+        StringBuilder sb = new StringBuilder(lineLength);
+
+        for (int i = 0; i < lineLength; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+
+        line = sb.toString();
+
+        received = IoBuffer.allocate((lineLength + 2) * LINES);
+
+        for (int i = 0; i < LINES; i++) {
+            received.put(line.getBytes(charset)).put((byte) '\r').put((byte) '\n');
+        }
+
+        received.flip();
+    }
+
+    @Benchmark
+    public long decode() {
+        chain.fireMessageReceived(received.duplicate());
+
+        return decoded;
+    }
+
+    @Benchmark
+    public Object encode() {
+        return session.write(line);
+    }
+}
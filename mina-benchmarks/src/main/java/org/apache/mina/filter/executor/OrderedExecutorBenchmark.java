@@ -0,0 +1,200 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.executor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.filterchain.IoFilterEvent;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoEventType;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.Control;
+
+/**
+ * Compares the throughput of the {@link OrderedThreadPoolExecutor} and the
+ * {@link StripedOrderedThreadPoolExecutor} : {@link #PRODUCERS} threads
+ * submit <tt>messageReceived</tt> events for a set of sessions, and each
+ * event burns a configurable amount of CPU when it is executed.
+ * <p>
+ * The producers back off when more than {@link #MAX_BACKLOG} events are
+ * waiting, so the measured throughput is the one of the workers.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderedExecutorBenchmark {
+    private static final int PRODUCERS = 4;
+
+    private static final int MAX_BACKLOG = 65536;
+
+    private static final Object MESSAGE = "message";
+
+    @State(Scope.Benchmark)
+    public static class ExecutorState {
+        @Param({ "ordered", "striped" })
+        public String executorType;
+
+        @Param({ "16", "64" })
+        public int poolSize;
+
+        @Param({ "64", "4096" })
+        public int sessionCount;
+
+        /** The number of CPU tokens consumed by each event */
+        @Param({ "0", "100" })
+        public int work;
+
+        ExecutorService executor;
+
+        IoSession[] sessions;
+
+        final AtomicLong executed = new AtomicLong();
+
+        NextFilter nextFilter;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            if ("striped".equals(executorType)) {
+                executor = new StripedOrderedThreadPoolExecutor(poolSize);
+            } else {
+                executor = new OrderedThreadPoolExecutor(poolSize);
+            }
+
+            sessions = new IoSession[sessionCount];
+
+            for (int i = 0; i < sessionCount; i++) {
+                sessions[i] = new DummySession();
+            }
+
+            nextFilter = new WorkingNextFilter(executed, work);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ProducerState {
+        long submitted;
+
+        int next;
+    }
+
+    @Benchmark
+    @Threads(PRODUCERS)
+    public void execute(ExecutorState e, ProducerState p, Control control) {
+        // Approximate the backlog assuming all the producers progress evenly
+        while (p.submitted * PRODUCERS - e.executed.get() > MAX_BACKLOG) {
+            if (control.stopMeasurement) {
+                return;
+            }
+
+            Thread.yield();
+        }
+
+        IoSession session = e.sessions[p.next];
+
+        if (++p.next == e.sessions.length) {
+            p.next = 0;
+        }
+
+        e.executor.execute(new IoFilterEvent(e.nextFilter,
+                IoEventType.MESSAGE_RECEIVED, session, MESSAGE));
+        p.submitted++;
+    }
+
+    private static class WorkingNextFilter implements NextFilter {
+        private final AtomicLong executed;
+
+        private final int work;
+
+        WorkingNextFilter(AtomicLong executed, int work) {
+            this.executed = executed;
+            this.work = work;
+        }
+
+        public void messageReceived(IoSession session, Object message) {
+            if (work > 0) {
+                Blackhole.consumeCPU(work);
+            }
+
+            executed.incrementAndGet();
+        }
+
+        public void sessionCreated(IoSession session) {
+            // Do nothing
+        }
+
+        public void sessionOpened(IoSession session) {
+            // Do nothing
+        }
+
+        public void sessionClosed(IoSession session) {
+            // Do nothing
+        }
+
+        public void sessionIdle(IoSession session, IdleStatus status) {
+            // Do nothing
+        }
+
+        public void exceptionCaught(IoSession session, Throwable cause) {
+            // Do nothing
+        }
+
+        public void messageSent(IoSession session, WriteRequest writeRequest) {
+            // Do nothing
+        }
+
+        public void filterWrite(IoSession session, WriteRequest writeRequest) {
+            // Do nothing
+        }
+
+        public void filterClose(IoSession session) {
+            // Do nothing
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.executor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.filterchain.IoFilterChain;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of handing a <tt>messageReceived</tt> event over to
+ * the handler through an {@link ExecutorFilter} : each invocation fires an
+ * event on a session and waits until a worker thread has delivered it.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderedExecutorHandoffBenchmark {
+    private static final Object MESSAGE = "message";
+
+    @Param({ "ordered", "striped" })
+    public String executorType;
+
+    private ExecutorService executor;
+
+    private IoFilterChain chain;
+
+    /** The number of messages delivered to the handler */
+    private volatile long delivered;
+
+    private long fired;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("striped".equals(executorType)) {
+            executor = new StripedOrderedThreadPoolExecutor(4);
+        } else {
+            executor = new OrderedThreadPoolExecutor(4);
+        }
+
+        DummySession session = new DummySession();
+        session.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                // Only written by the worker thread of the session
+                delivered++;
+            }
+        });
+
+        chain = session.getFilterChain();
+        chain.addLast("executor", new ExecutorFilter(executor));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public long handoff() {
+        chain.fireMessageReceived(MESSAGE);
+        fired++;
+
+        while (delivered != fired) {
+            // Spin until the worker has delivered the message
+        }
+
+        return fired;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.IoUtil;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.service.IoAcceptor;
+import org.apache.mina.core.service.IoConnector;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.apache.mina.transport.vmpipe.VmPipeAcceptor;
+import org.apache.mina.transport.vmpipe.VmPipeAddress;
+import org.apache.mina.transport.vmpipe.VmPipeConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the round trip time of a message sent to an echo server, over
+ * the {@link VmPipeAcceptor} and over a loopback {@link NioSocketAcceptor}.
+ * Each invocation writes a message and waits until all its bytes have been
+ * echoed back.
+ * <p>
+ * Both sides write either with {@link IoSession#write(Object)} or with
+ * {@link IoUtil#writeAndForget(IoSession, Object)} : run with <tt>-prof gc</tt> to
+ * compare the allocation rate per echoed message.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EchoBenchmark {
+    @Param({ "vmpipe", "nio" })
+    public String transport;
+
+    @Param({ "64", "4096" })
+    public int messageSize;
+
+    @Param({ "future", "void" })
+    public String writeMode;
+
+    private IoAcceptor acceptor;
+
+    private IoConnector connector;
+
+    private IoSession session;
+
+    private IoBuffer message;
+
+    private boolean voidWrite;
+
+    private final EchoClientHandler clientHandler = new EchoClientHandler();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SocketAddress address;
+
+        if ("nio".equals(transport)) {
+            acceptor = new NioSocketAcceptor();
+            connector = new NioSocketConnector();
+            address = new InetSocketAddress("127.0.0.1", 0);
+        } else {
+            acceptor = new VmPipeAcceptor();
+            connector = new VmPipeConnector();
+            address = new VmPipeAddress(0);
+        }
+
+        boolean voidWrite = "void".equals(writeMode);
+
+        acceptor.setHandler(new EchoServerHandler(voidWrite));
+        acceptor.bind(address);
+
+        clientHandler.messageSize = messageSize;
+        connector.setHandler(clientHandler);
+
+        ConnectFuture future = connector.connect(acceptor.getLocalAddress());
+        future.awaitUninterruptibly();
+        session = future.getSession();
+
+        message = IoBuffer.allocate(messageSize);
+
+        for (int i = 0; i < messageSize; i++) {
+            message.put((byte) i);
+        }
+
+        message.flip();
+        this.voidWrite = voidWrite;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close(true).awaitUninterruptibly();
+        connector.dispose();
+        acceptor.dispose();
+    }
+
+    @Benchmark
+    public void echo() throws InterruptedException {
+        if (voidWrite) {
+            IoUtil.writeAndForget(session, message.duplicate());
+        } else {
+            session.write(message.duplicate());
+        }
+
+        clientHandler.echoed.acquire();
+    }
+
+    /**
+     * Writes back a copy of each received buffer.
+     */
+    private static class EchoServerHandler extends IoHandlerAdapter {
+        private final boolean voidWrite;
+
+        EchoServerHandler(boolean voidWrite) {
+            this.voidWrite = voidWrite;
+        }
+
+        @Override
+        public void messageReceived(IoSession session, Object message) {
+            IoBuffer in = (IoBuffer) message;
+            IoBuffer out = IoBuffer.allocate(in.remaining());
+            out.put(in);
+            out.flip();
+
+            if (voidWrite) {
+                IoUtil.writeAndForget(session, out);
+            } else {
+                session.write(out);
+            }
+        }
+    }
+
+    /**
+     * Releases a permit each time a whole message has been echoed.
+     */
+    private static class EchoClientHandler extends IoHandlerAdapter {
+        private final Semaphore echoed = new Semaphore(0);
+
+        private int messageSize;
+
+        /** The number of echoed bytes not yet counted as a message */
+        private int pending;
+
+        @Override
+        public void messageReceived(IoSession session, Object message) {
+            pending += ((IoBuffer) message).remaining();
+
+            while (pending >= messageSize) {
+                pending -= messageSize;
+                echoed.release();
+            }
+        }
+    }
+}
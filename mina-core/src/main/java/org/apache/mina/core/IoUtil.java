@@ -28,6 +28,9 @@ import java.util.concurrent.TimeUnit;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.future.IoFuture;
 import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.service.AbstractIoService;
+import org.apache.mina.core.service.IoService;
+import org.apache.mina.core.session.AbstractIoSession;
 import org.apache.mina.core.session.IoSession;
 
 /**
@@ -96,6 +99,34 @@ public class IoUtil {
         return answer;
     }
     
+    /**
+     * Writes the specified {@code message} to the specified {@code session}
+     * without creating a {@link WriteFuture} if the session supports it
+     * (see {@link AbstractIoSession#writeAndForget(Object)}), or falls back
+     * to {@link IoSession#write(Object)} and ignores the returned future
+     * otherwise.
+     */
+    public static void writeAndForget(IoSession session, Object message) {
+        if (session instanceof AbstractIoSession) {
+            ((AbstractIoSession) session).writeAndForget(message);
+        } else {
+            session.write(message);
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if the I/O processor of the specified
+     * {@code session} reuses its read buffer once <tt>messageReceived</tt>
+     * returns (see {@link AbstractIoService#setReadBufferRecycled(boolean)}).
+     * The received bytes which are kept beyond the event must then be copied.
+     */
+    public static boolean isReadBufferRecycled(IoSession session) {
+        IoService service = session.getService();
+
+        return (service instanceof AbstractIoService)
+                && ((AbstractIoService) service).isReadBufferRecycled();
+    }
+
     private static void broadcast(Object message, Iterator<IoSession> sessions, Collection<WriteFuture> answer) {
         if (message instanceof IoBuffer) {
             while (sessions.hasNext()) {
@@ -0,0 +1,547 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.buffer;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * An {@link IoBufferAllocator} which carves its buffers out of large chunks
+ * of memory, organized in per-thread arenas.
+ * <p>
+ * Every thread which allocates a buffer gets its own arena.  An arena holds
+ * one free list per size class (powers of 2 between
+ * {@link #getMinSlabBufferSize()} and {@link #getMaxSlabBufferSize()}), and
+ * refills these free lists by slicing a chunk of {@link #getChunkSize()}
+ * bytes.  A buffer always goes back to the arena it has been carved from:
+ * when it is freed by the owner thread, it is pushed back to the arena free
+ * list directly, and when it is freed by another thread (typically an
+ * {@link org.apache.mina.filter.executor.ExecutorFilter} worker), it is put
+ * in a return queue that the owner thread drains the next time it runs out
+ * of buffers of that size.
+ * <p>
+ * The memory carved by each arena is limited to
+ * {@link #getMaxArenaCapacity()} bytes.  Once an arena reaches this limit,
+ * or when a buffer bigger than {@link #getMaxSlabBufferSize()} is requested,
+ * the buffer is allocated from the heap or the native memory as
+ * {@link SimpleBufferAllocator} would do, and is simply discarded when freed.
+ * <p>
+ * As for {@link CachedBufferAllocator}, the recycled buffers are not
+ * filled with {@code NUL}, and this allocator provides performance advantage
+ * only if {@link IoBuffer#free()} is called properly.  The hit, miss and
+ * held memory statistics of all the arenas are available through
+ * {@link #getHitCount()}, {@link #getMissCount()} and {@link #getBytesHeld()}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SlabBufferAllocator implements IoBufferAllocator {
+
+    private static final int DEFAULT_MIN_SLAB_BUFFER_SIZE = 64;
+    private static final int DEFAULT_MAX_SLAB_BUFFER_SIZE = 1 << 16; // 64KB
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 20; // 1MB
+    private static final int DEFAULT_MAX_ARENA_CAPACITY = 1 << 24; // 16MB
+
+    private final int minSlabBufferSize;
+    private final int maxSlabBufferSize;
+    private final int chunkSize;
+    private final int maxArenaCapacity;
+
+    /** The shift of the smallest size class */
+    private final int minSizeClassShift;
+
+    /** The number of size classes */
+    private final int sizeClassCount;
+
+    private final ThreadLocal<Arena> arenas;
+
+    /** All the arenas created so far, for statistics purpose */
+    private final Queue<WeakReference<Arena>> allArenas =
+        new ConcurrentLinkedQueue<WeakReference<Arena>>();
+
+    /**
+     * Creates a new instance with the default parameters : 64 bytes to 64KB
+     * buffers, carved from 1MB chunks, with at most 16MB per arena.
+     */
+    public SlabBufferAllocator() {
+        this(DEFAULT_MIN_SLAB_BUFFER_SIZE, DEFAULT_MAX_SLAB_BUFFER_SIZE,
+                DEFAULT_CHUNK_SIZE, DEFAULT_MAX_ARENA_CAPACITY);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param minSlabBufferSize the capacity of the smallest pooled buffer.
+     *                          Smaller requests are served with a buffer of
+     *                          this capacity.
+     * @param maxSlabBufferSize the capacity of the biggest pooled buffer.
+     *                          A bigger buffer is never pooled.
+     * @param chunkSize the size of the chunks the pooled buffers are carved
+     *                  from. It can't be smaller than <tt>maxSlabBufferSize</tt>.
+     * @param maxArenaCapacity the maximum number of bytes carved by a single
+     *                         arena. <tt>0</tt> disables this limitation.
+     */
+    public SlabBufferAllocator(int minSlabBufferSize, int maxSlabBufferSize,
+            int chunkSize, int maxArenaCapacity) {
+        if (minSlabBufferSize <= 0) {
+            throw new IllegalArgumentException("minSlabBufferSize: " + minSlabBufferSize);
+        }
+
+        if (maxSlabBufferSize < minSlabBufferSize) {
+            throw new IllegalArgumentException("maxSlabBufferSize: " + maxSlabBufferSize
+                    + " (expected: >= minSlabBufferSize)");
+        }
+
+        if (chunkSize < maxSlabBufferSize) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize
+                    + " (expected: >= maxSlabBufferSize)");
+        }
+
+        if (maxArenaCapacity < 0) {
+            throw new IllegalArgumentException("maxArenaCapacity: " + maxArenaCapacity);
+        }
+
+        this.minSlabBufferSize = IoBuffer.normalizeCapacity(minSlabBufferSize);
+        this.maxSlabBufferSize = Integer.highestOneBit(maxSlabBufferSize);
+
+        if (this.maxSlabBufferSize < this.minSlabBufferSize) {
+            throw new IllegalArgumentException("maxSlabBufferSize: " + maxSlabBufferSize
+                    + " (no size class between minSlabBufferSize and maxSlabBufferSize)");
+        }
+
+        this.chunkSize = chunkSize;
+        this.maxArenaCapacity = maxArenaCapacity;
+        this.minSizeClassShift = Integer.numberOfTrailingZeros(this.minSlabBufferSize);
+        this.sizeClassCount = Integer.numberOfTrailingZeros(this.maxSlabBufferSize)
+                - minSizeClassShift + 1;
+
+        this.arenas = new ThreadLocal<Arena>() {
+            @Override
+            protected Arena initialValue() {
+                Arena arena = new Arena();
+                allArenas.offer(new WeakReference<Arena>(arena));
+                return arena;
+            }
+        };
+    }
+
+    /**
+     * Returns the capacity of the smallest pooled buffer.
+     */
+    public int getMinSlabBufferSize() {
+        return minSlabBufferSize;
+    }
+
+    /**
+     * Returns the capacity of the biggest pooled buffer.  A bigger buffer is
+     * never pooled.
+     */
+    public int getMaxSlabBufferSize() {
+        return maxSlabBufferSize;
+    }
+
+    /**
+     * Returns the size of the chunks the pooled buffers are carved from.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Returns the maximum number of bytes a single arena can carve.
+     * <tt>0</tt> means 'no limitation'.
+     */
+    public int getMaxArenaCapacity() {
+        return maxArenaCapacity;
+    }
+
+    /**
+     * Returns the number of allocations served with a recycled buffer.
+     */
+    public long getHitCount() {
+        long hits = 0;
+
+        for (Iterator<Arena> i = arenaIterator(); i.hasNext();) {
+            hits += i.next().hits;
+        }
+
+        return hits;
+    }
+
+    /**
+     * Returns the number of poolable allocations which could not be served
+     * with a recycled buffer, whether a new buffer has been carved or not.
+     */
+    public long getMissCount() {
+        long misses = 0;
+
+        for (Iterator<Arena> i = arenaIterator(); i.hasNext();) {
+            misses += i.next().misses;
+        }
+
+        return misses;
+    }
+
+    /**
+     * Returns the number of bytes held by all the arenas, that is the total
+     * size of the chunks they have allocated.
+     */
+    public long getBytesHeld() {
+        long bytesHeld = 0;
+
+        for (Iterator<Arena> i = arenaIterator(); i.hasNext();) {
+            bytesHeld += i.next().bytesHeld;
+        }
+
+        return bytesHeld;
+    }
+
+    /**
+     * Returns the number of live arenas, that is the number of threads which
+     * have allocated a buffer and whose arena has not been garbage collected.
+     */
+    public int getArenaCount() {
+        int count = 0;
+
+        for (Iterator<Arena> i = arenaIterator(); i.hasNext();) {
+            i.next();
+            count++;
+        }
+
+        return count;
+    }
+
+    public IoBuffer allocate(int requestedCapacity, boolean direct) {
+        SlabBuffer buf = allocate0(requestedCapacity, direct);
+        buf.limit(requestedCapacity);
+        return buf;
+    }
+
+    public ByteBuffer allocateNioBuffer(int capacity, boolean direct) {
+        SlabBuffer buf = allocate0(capacity, direct);
+
+        if (buf.arena != null) {
+            // Remember where the buffer comes from, in case it is used to
+            // expand or shrink a SlabBuffer (see SlabBuffer.buf(ByteBuffer)).
+            buf.arena.handoff = buf;
+        }
+
+        ByteBuffer nioBuffer = buf.buf();
+        nioBuffer.limit(capacity);
+        return nioBuffer;
+    }
+
+    public IoBuffer wrap(ByteBuffer nioBuffer) {
+        return new SlabBuffer(null, 0, nioBuffer);
+    }
+
+    public void dispose() {
+        // Do nothing
+    }
+
+    private SlabBuffer allocate0(int requestedCapacity, boolean direct) {
+        int actualCapacity = IoBuffer.normalizeCapacity(requestedCapacity);
+
+        if (actualCapacity > maxSlabBufferSize) {
+            return new SlabBuffer(null, 0, allocateUnpooled(actualCapacity, direct));
+        }
+
+        if (actualCapacity < minSlabBufferSize) {
+            actualCapacity = minSlabBufferSize;
+        }
+
+        Arena arena = arenas.get();
+        Slab slab = arena.getSlab(direct);
+        int sizeClass = Integer.numberOfTrailingZeros(actualCapacity) - minSizeClassShift;
+        ByteBuffer buf = slab.poll(sizeClass);
+
+        if (buf != null) {
+            arena.hits++;
+            buf.clear();
+            buf.order(ByteOrder.BIG_ENDIAN);
+            return new SlabBuffer(arena, sizeClass, buf);
+        }
+
+        arena.misses++;
+        buf = slab.carve(actualCapacity);
+
+        if (buf == null) {
+            // The arena is full.
+            return new SlabBuffer(null, 0, allocateUnpooled(actualCapacity, direct));
+        }
+
+        return new SlabBuffer(arena, sizeClass, buf);
+    }
+
+    private static ByteBuffer allocateUnpooled(int capacity, boolean direct) {
+        if (direct) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+
+        return ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Returns an iterator over the live arenas, purging the references to
+     * the collected ones.
+     */
+    private Iterator<Arena> arenaIterator() {
+        final Iterator<WeakReference<Arena>> i = allArenas.iterator();
+
+        return new Iterator<Arena>() {
+            private Arena next = fetch();
+
+            private Arena fetch() {
+                while (i.hasNext()) {
+                    Arena arena = i.next().get();
+
+                    if (arena != null) {
+                        return arena;
+                    }
+
+                    i.remove();
+                }
+
+                return null;
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public Arena next() {
+                Arena arena = next;
+                next = fetch();
+                return arena;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * The buffers owned by a single thread.  Only the owner thread modifies
+     * the free lists and the counters, other threads only use the return
+     * queues.
+     */
+    private final class Arena {
+        private final Thread owner = Thread.currentThread();
+        private final Slab heapSlab = new Slab(this, false);
+        private final Slab directSlab = new Slab(this, true);
+
+        private volatile long hits;
+        private volatile long misses;
+        private volatile long bytesHeld;
+
+        /** The last buffer returned by allocateNioBuffer() */
+        private SlabBuffer handoff;
+
+        private Slab getSlab(boolean direct) {
+            return direct ? directSlab : heapSlab;
+        }
+    }
+
+    /**
+     * The heap or direct free lists of an arena.
+     */
+    private final class Slab {
+        private final Arena arena;
+        private final boolean direct;
+        private final ByteBuffer[][] freeBuffers = new ByteBuffer[sizeClassCount][];
+        private final int[] freeCounts = new int[sizeClassCount];
+        private final Queue<ByteBuffer>[] returnQueues;
+
+        /** The chunk the new buffers are carved from */
+        private ByteBuffer chunk;
+
+        @SuppressWarnings("unchecked")
+        private Slab(Arena arena, boolean direct) {
+            this.arena = arena;
+            this.direct = direct;
+            returnQueues = new Queue[sizeClassCount];
+
+            for (int i = 0; i < sizeClassCount; i++) {
+                freeBuffers[i] = new ByteBuffer[8];
+                returnQueues[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+            }
+        }
+
+        private ByteBuffer poll(int sizeClass) {
+            if (freeCounts[sizeClass] == 0) {
+                // Take back the buffers freed by the other threads.
+                Queue<ByteBuffer> returnQueue = returnQueues[sizeClass];
+
+                for (;;) {
+                    ByteBuffer buf = returnQueue.poll();
+
+                    if (buf == null) {
+                        break;
+                    }
+
+                    push(sizeClass, buf);
+                }
+
+                if (freeCounts[sizeClass] == 0) {
+                    return null;
+                }
+            }
+
+            int index = --freeCounts[sizeClass];
+            ByteBuffer buf = freeBuffers[sizeClass][index];
+            freeBuffers[sizeClass][index] = null;
+            return buf;
+        }
+
+        private void push(int sizeClass, ByteBuffer buf) {
+            ByteBuffer[] buffers = freeBuffers[sizeClass];
+            int count = freeCounts[sizeClass];
+
+            if (count == buffers.length) {
+                ByteBuffer[] newBuffers = new ByteBuffer[count << 1];
+                System.arraycopy(buffers, 0, newBuffers, 0, count);
+                freeBuffers[sizeClass] = buffers = newBuffers;
+            }
+
+            buffers[count] = buf;
+            freeCounts[sizeClass] = count + 1;
+        }
+
+        private void release(int sizeClass, ByteBuffer buf) {
+            if (Thread.currentThread() == arena.owner) {
+                push(sizeClass, buf);
+            } else {
+                returnQueues[sizeClass].offer(buf);
+            }
+        }
+
+        /**
+         * Carves a new buffer from the current chunk, allocating a new chunk
+         * if needed. Returns <tt>null</tt> if the arena is full.
+         */
+        private ByteBuffer carve(int capacity) {
+            if ((chunk == null) || (chunk.remaining() < capacity)) {
+                if ((maxArenaCapacity != 0) && (arena.bytesHeld + chunkSize > maxArenaCapacity)) {
+                    return null;
+                }
+
+                chunk = allocateUnpooled(chunkSize, direct);
+                arena.bytesHeld += chunkSize;
+            }
+
+            int position = chunk.position();
+            chunk.limit(position + capacity);
+            ByteBuffer buf = chunk.slice();
+            chunk.limit(chunk.capacity());
+            chunk.position(position + capacity);
+            return buf;
+        }
+    }
+
+    private class SlabBuffer extends AbstractIoBuffer {
+        /** The arena this buffer belongs to, or null if it is not pooled */
+        private Arena arena;
+        private int sizeClass;
+        private ByteBuffer buf;
+
+        protected SlabBuffer(Arena arena, int sizeClass, ByteBuffer buf) {
+            super(SlabBufferAllocator.this, buf.capacity());
+            this.arena = arena;
+            this.sizeClass = sizeClass;
+            this.buf = buf;
+            buf.order(ByteOrder.BIG_ENDIAN);
+        }
+
+        protected SlabBuffer(SlabBuffer parent, ByteBuffer buf) {
+            super(parent);
+            this.buf = buf;
+        }
+
+        @Override
+        public ByteBuffer buf() {
+            if (buf == null) {
+                throw new IllegalStateException("Buffer has been freed already.");
+            }
+            return buf;
+        }
+
+        @Override
+        protected void buf(ByteBuffer buf) {
+            free();
+
+            // The new buffer has just been returned by allocateNioBuffer()
+            // in this thread : find out which arena it belongs to.
+            Arena current = arenas.get();
+            SlabBuffer source = current.handoff;
+            current.handoff = null;
+
+            if ((source != null) && (source.buf == buf)) {
+                arena = source.arena;
+                sizeClass = source.sizeClass;
+            }
+
+            this.buf = buf;
+        }
+
+        @Override
+        protected IoBuffer duplicate0() {
+            return new SlabBuffer(this, buf().duplicate());
+        }
+
+        @Override
+        protected IoBuffer slice0() {
+            return new SlabBuffer(this, buf().slice());
+        }
+
+        @Override
+        protected IoBuffer asReadOnlyBuffer0() {
+            return new SlabBuffer(this, buf().asReadOnlyBuffer());
+        }
+
+        @Override
+        public byte[] array() {
+            return buf().array();
+        }
+
+        @Override
+        public int arrayOffset() {
+            return buf().arrayOffset();
+        }
+
+        @Override
+        public boolean hasArray() {
+            return buf().hasArray();
+        }
+
+        @Override
+        public void free() {
+            if ((arena != null) && (buf != null) && !isDerived()) {
+                arena.getSlab(buf.isDirect()).release(sizeClass, buf);
+            }
+
+            arena = null;
+            buf = null;
+        }
+    }
+}
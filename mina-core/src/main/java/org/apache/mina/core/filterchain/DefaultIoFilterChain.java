@@ -19,20 +19,27 @@
  */
 package org.apache.mina.core.filterchain;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.filterchain.IoFilter.NextFilter;
 import org.apache.mina.core.future.ConnectFuture;
 import org.apache.mina.core.future.IoFuture;
+import org.apache.mina.core.service.IoHandler;
+import org.apache.mina.core.service.WritabilityListener;
 import org.apache.mina.core.session.AbstractIoSession;
 import org.apache.mina.core.session.AttributeKey;
 import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoEventType;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.core.write.WriteRequest;
+import org.apache.mina.util.CachedClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +47,13 @@ import org.slf4j.LoggerFactory;
  * A default implementation of {@link IoFilterChain} that provides
  * all operations for developers who want to implement their own
  * transport layer once used with {@link AbstractIoSession}.
+ * <p>
+ * The chain is compiled each time it is modified : for every entry and every
+ * event type, the entry the event must be forwarded to is computed once, so
+ * the filters which don't override an {@link IoFilterAdapter} method (and
+ * would only forward the event to the next filter) are skipped when this
+ * event is fired. Filters which implement {@link IoFilter} directly are
+ * always called.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -67,6 +81,38 @@ public class DefaultIoFilterChain implements IoFilterChain {
     /** The logger for this class */
     private final static Logger LOGGER = LoggerFactory.getLogger(DefaultIoFilterChain.class);
 
+    /** The indexes of the events in the compiled chain */
+    private static final int SESSION_CREATED = IoEventType.SESSION_CREATED.ordinal();
+
+    private static final int SESSION_OPENED = IoEventType.SESSION_OPENED.ordinal();
+
+    private static final int SESSION_CLOSED = IoEventType.SESSION_CLOSED.ordinal();
+
+    private static final int MESSAGE_RECEIVED = IoEventType.MESSAGE_RECEIVED.ordinal();
+
+    private static final int MESSAGE_SENT = IoEventType.MESSAGE_SENT.ordinal();
+
+    private static final int SESSION_IDLE = IoEventType.SESSION_IDLE.ordinal();
+
+    private static final int EXCEPTION_CAUGHT = IoEventType.EXCEPTION_CAUGHT.ordinal();
+
+    private static final int WRITABILITY_CHANGED = IoEventType.WRITABILITY_CHANGED.ordinal();
+
+    private static final int WRITE = IoEventType.WRITE.ordinal();
+
+    private static final int CLOSE = IoEventType.CLOSE.ordinal();
+
+    private static final int EVENT_COUNT = IoEventType.values().length;
+
+    /** The events going from the tail to the head of the chain */
+    private static final int OUTBOUND_EVENTS = (1 << WRITE) | (1 << CLOSE);
+
+    private static final int ALL_EVENTS = (1 << EVENT_COUNT) - 1;
+
+    /** The events handled by each filter class, computed once per class */
+    private static final Map<Class<?>, Integer> EVENT_MASKS = Collections
+            .synchronizedMap(new WeakHashMap<Class<?>, Integer>());
+
 
     /**
      * Create a new default chain, associated with a session. It will only contain a
@@ -83,6 +129,7 @@ public class DefaultIoFilterChain implements IoFilterChain {
         head = new EntryImpl(null, null, "head", new HeadFilter());
         tail = new EntryImpl(head, null, "tail", new TailFilter());
         head.nextEntry = tail;
+        compile();
     }
 
     public IoSession getSession() {
@@ -273,6 +320,10 @@ public class DefaultIoFilterChain implements IoFilterChain {
         EntryImpl newEntry = new EntryImpl(prevEntry, prevEntry.nextEntry,
                 name, filter);
 
+        // The filter may use its NextFilter before being added
+        newEntry.updateInboundLinks();
+        newEntry.updateOutboundLinks();
+
         try {
             filter.onPreAdd(this, name, newEntry.getNextFilter());
         } catch (Exception e) {
@@ -283,6 +334,7 @@ public class DefaultIoFilterChain implements IoFilterChain {
         prevEntry.nextEntry.prevEntry = newEntry;
         prevEntry.nextEntry = newEntry;
         name2entry.put(name, newEntry);
+        compile();
 
         try {
             filter.onPostAdd(this, name, newEntry.getNextFilter());
@@ -320,6 +372,96 @@ public class DefaultIoFilterChain implements IoFilterChain {
         nextEntry.prevEntry = prevEntry;
 
         name2entry.remove(entry.name);
+        compile();
+    }
+
+    /**
+     * Computes, for each entry of the chain and each event type, the entry
+     * the event must be forwarded to. This method must be called each time
+     * the chain is modified.
+     * <p>
+     * An entry which has been removed keeps its links, so a filter which
+     * forwards an event after its removal still reaches its former
+     * neighbours, as before the compilation was introduced.
+     */
+    private void compile() {
+        // The inbound links are computed from the tail, the outbound ones
+        // from the head, so that the links of the neighbour are up to date
+        for (EntryImpl e = tail; e != null; e = e.prevEntry) {
+            e.updateInboundLinks();
+        }
+
+        for (EntryImpl e = head; e != null; e = e.nextEntry) {
+            e.updateOutboundLinks();
+        }
+    }
+
+    /**
+     * Returns a bit mask of the events the given filter handles, i.e. the
+     * events for which it does not inherit the pass-through implementation
+     * of {@link IoFilterAdapter}.
+     */
+    private static int getEventMask(IoFilter filter) {
+        Class<?> type = filter.getClass();
+        Integer mask = EVENT_MASKS.get(type);
+
+        if (mask == null) {
+            mask = computeEventMask(type);
+            EVENT_MASKS.put(type, mask);
+        }
+
+        return mask;
+    }
+
+    private static int computeEventMask(Class<?> type) {
+        if (!IoFilterAdapter.class.isAssignableFrom(type)) {
+            if (WritabilityFilter.class.isAssignableFrom(type)) {
+                return ALL_EVENTS;
+            }
+
+            // The writabilityChanged event is only sent to the filters which
+            // ask for it
+            return ALL_EVENTS & ~(1 << WRITABILITY_CHANGED);
+        }
+
+        int mask = 0;
+        mask |= getEventMask(type, SESSION_CREATED, "sessionCreated",
+                NextFilter.class, IoSession.class);
+        mask |= getEventMask(type, SESSION_OPENED, "sessionOpened",
+                NextFilter.class, IoSession.class);
+        mask |= getEventMask(type, SESSION_CLOSED, "sessionClosed",
+                NextFilter.class, IoSession.class);
+        mask |= getEventMask(type, MESSAGE_RECEIVED, "messageReceived",
+                NextFilter.class, IoSession.class, Object.class);
+        mask |= getEventMask(type, MESSAGE_SENT, "messageSent",
+                NextFilter.class, IoSession.class, WriteRequest.class);
+        mask |= getEventMask(type, SESSION_IDLE, "sessionIdle",
+                NextFilter.class, IoSession.class, IdleStatus.class);
+        mask |= getEventMask(type, EXCEPTION_CAUGHT, "exceptionCaught",
+                NextFilter.class, IoSession.class, Throwable.class);
+        mask |= getEventMask(type, WRITABILITY_CHANGED, "writabilityChanged",
+                NextFilter.class, IoSession.class, boolean.class);
+        mask |= getEventMask(type, WRITE, "filterWrite",
+                NextFilter.class, IoSession.class, WriteRequest.class);
+        mask |= getEventMask(type, CLOSE, "filterClose",
+                NextFilter.class, IoSession.class);
+
+        return mask;
+    }
+
+    private static int getEventMask(Class<?> type, int event, String name,
+            Class<?>... parameterTypes) {
+        try {
+            Method method = type.getMethod(name, parameterTypes);
+
+            if (method.getDeclaringClass() == IoFilterAdapter.class) {
+                return 0;
+            }
+        } catch (Exception e) {
+            // Can't tell, so the filter is always called
+        }
+
+        return 1 << event;
     }
 
     /**
@@ -346,8 +488,7 @@ public class DefaultIoFilterChain implements IoFilterChain {
     }
 
     public void fireSessionCreated() {
-        Entry head = this.head;
-        callNextSessionCreated(head, session);
+        callNextSessionCreated(head.first(SESSION_CREATED), session);
     }
 
     private void callNextSessionCreated(Entry entry, IoSession session) {
@@ -361,8 +502,7 @@ public class DefaultIoFilterChain implements IoFilterChain {
     }
 
     public void fireSessionOpened() {
-        Entry head = this.head;
-        callNextSessionOpened(head, session);
+        callNextSessionOpened(head.first(SESSION_OPENED), session);
     }
 
     private void callNextSessionOpened(Entry entry, IoSession session) {
@@ -384,8 +524,7 @@ public class DefaultIoFilterChain implements IoFilterChain {
         }
 
         // And start the chain.
-        Entry head = this.head;
-        callNextSessionClosed(head, session);
+        callNextSessionClosed(head.first(SESSION_CLOSED), session);
     }
 
     private void callNextSessionClosed(Entry entry, IoSession session) {
@@ -399,9 +538,8 @@ public class DefaultIoFilterChain implements IoFilterChain {
     }
 
     public void fireSessionIdle(IdleStatus status) {
-        session.increaseIdleCount(status, System.currentTimeMillis());
-        Entry head = this.head;
-        callNextSessionIdle(head, session, status);
+        session.increaseIdleCount(status, CachedClock.currentTimeMillis());
+        callNextSessionIdle(head.first(SESSION_IDLE), session, status);
     }
 
     private void callNextSessionIdle(Entry entry, IoSession session,
@@ -418,12 +556,11 @@ public class DefaultIoFilterChain implements IoFilterChain {
 
     public void fireMessageReceived(Object message) {
         if (message instanceof IoBuffer) {
-            session.increaseReadBytes(((IoBuffer) message).remaining(), System
-                    .currentTimeMillis());
+            session.increaseReadBytes(((IoBuffer) message).remaining(),
+                    CachedClock.currentTimeMillis());
         }
 
-        Entry head = this.head;
-        callNextMessageReceived(head, session, message);
+        callNextMessageReceived(head.first(MESSAGE_RECEIVED), session, message);
     }
 
     private void callNextMessageReceived(Entry entry, IoSession session,
@@ -439,7 +576,7 @@ public class DefaultIoFilterChain implements IoFilterChain {
     }
 
     public void fireMessageSent(WriteRequest request) {
-        session.increaseWrittenMessages(request, System.currentTimeMillis());
+        session.increaseWrittenMessages(request, CachedClock.currentTimeMillis());
 
         try {
             request.getFuture().setWritten();
@@ -447,10 +584,8 @@ public class DefaultIoFilterChain implements IoFilterChain {
             fireExceptionCaught(t);
         }
 
-        Entry head = this.head;
-        
         if (!request.isEncoded()) {
-            callNextMessageSent(head, session, request);
+            callNextMessageSent(head.first(MESSAGE_SENT), session, request);
         }
     }
 
@@ -467,8 +602,7 @@ public class DefaultIoFilterChain implements IoFilterChain {
     }
 
     public void fireExceptionCaught(Throwable cause) {
-        Entry head = this.head;
-        callNextExceptionCaught(head, session, cause);
+        callNextExceptionCaught(head.first(EXCEPTION_CAUGHT), session, cause);
     }
 
     private void callNextExceptionCaught(Entry entry, IoSession session,
@@ -496,9 +630,51 @@ public class DefaultIoFilterChain implements IoFilterChain {
         }
     }
 
+    /**
+     * Fires a <tt>writabilityChanged</tt> event, which is only delivered to
+     * the {@link WritabilityFilter}s of the chain and to a handler which
+     * implements {@link WritabilityListener}.  It is fired by the I/O
+     * processor of the session : most users don't need to call this method
+     * at all.
+     *
+     * @param writable <tt>true</tt> if the session became writable again
+     */
+    public void fireWritabilityChanged(boolean writable) {
+        callNextWritabilityChanged(head.first(WRITABILITY_CHANGED), session,
+                writable);
+    }
+
+    private void callNextWritabilityChanged(Entry entry, IoSession session,
+            boolean writable) {
+        try {
+            // The event mask only selects WritabilityFilters for this event
+            WritabilityFilter filter = (WritabilityFilter) entry.getFilter();
+            NextFilter nextFilter = entry.getNextFilter();
+            filter.writabilityChanged(nextFilter, session, writable);
+        } catch (Throwable e) {
+            fireExceptionCaught(e);
+        }
+    }
+
+    /**
+     * Forwards a <tt>writabilityChanged</tt> event to the filter following
+     * the one the given {@link NextFilter} has been passed to, as
+     * {@link NextFilter} has no method for this event.  The event is dropped
+     * if the {@link NextFilter} does not belong to a
+     * {@link DefaultIoFilterChain}, as no other chain delivers it.
+     *
+     * @param writable <tt>true</tt> if the session became writable again
+     */
+    public static void forwardWritabilityChanged(NextFilter nextFilter,
+            IoSession session, boolean writable) {
+        if (nextFilter instanceof EntryImpl.NextFilterImpl) {
+            ((EntryImpl.NextFilterImpl) nextFilter).writabilityChanged(session,
+                    writable);
+        }
+    }
+
     public void fireFilterWrite(WriteRequest writeRequest) {
-        Entry tail = this.tail;
-        callPreviousFilterWrite(tail, session, writeRequest);
+        callPreviousFilterWrite(tail.first(WRITE), session, writeRequest);
     }
 
     private void callPreviousFilterWrite(Entry entry, IoSession session,
@@ -514,8 +690,7 @@ public class DefaultIoFilterChain implements IoFilterChain {
     }
 
     public void fireFilterClose() {
-        Entry tail = this.tail;
-        callPreviousFilterClose(tail, session);
+        callPreviousFilterClose(tail.first(CLOSE), session);
     }
 
     private void callPreviousFilterClose(Entry entry, IoSession session) {
@@ -609,18 +784,10 @@ public class DefaultIoFilterChain implements IoFilterChain {
                 // it after the write operation is finished, because
                 // the buffer will be specified with messageSent event.
                 buffer.mark();
-                int remaining = buffer.remaining();
-                if (remaining == 0) {
-                    // Zero-sized buffer means the internal message
-                    // delimiter.
-                    s.increaseScheduledWriteMessages();
-                } else {
-                    s.increaseScheduledWriteBytes(remaining);
-                }
-            } else {
-                s.increaseScheduledWriteMessages();
             }
 
+            s.increaseScheduledBytesAndMessages(writeRequest);
+
             s.getWriteRequestQueue().offer(s, writeRequest);
             if (!s.isWriteSuspended()) {
                 s.getProcessor().flush(s);
@@ -702,14 +869,25 @@ public class DefaultIoFilterChain implements IoFilterChain {
             }
         }
 
+        @Override
+        public void writabilityChanged(NextFilter nextFilter, IoSession session,
+                boolean writable) throws Exception {
+            IoHandler handler = session.getHandler();
+
+            if (handler instanceof WritabilityListener) {
+                ((WritabilityListener) handler).writabilityChanged(session,
+                        writable);
+            }
+        }
+
         @Override
         public void messageReceived(NextFilter nextFilter, IoSession session,
                 Object message) throws Exception {
             AbstractIoSession s = (AbstractIoSession) session;
             if (!(message instanceof IoBuffer)) {
-                s.increaseReadMessages(System.currentTimeMillis());
+                s.increaseReadMessages(CachedClock.currentTimeMillis());
             } else if (!((IoBuffer) message).hasRemaining()) {
-                s.increaseReadMessages(System.currentTimeMillis());
+                s.increaseReadMessages(CachedClock.currentTimeMillis());
             }
 
             try {
@@ -750,6 +928,16 @@ public class DefaultIoFilterChain implements IoFilterChain {
 
         private IoFilter filter;
 
+        /** The events handled by the filter */
+        private int eventMask;
+
+        /**
+         * The entry each event is forwarded to, indexed by event type : the
+         * next entry handling the event for the inbound events, the previous
+         * one for the outbound events.
+         */
+        private final EntryImpl[] targets = new EntryImpl[EVENT_COUNT];
+
         private final NextFilter nextFilter;
 
         private EntryImpl(EntryImpl prevEntry, EntryImpl nextEntry,
@@ -765,58 +953,72 @@ public class DefaultIoFilterChain implements IoFilterChain {
             this.nextEntry = nextEntry;
             this.name = name;
             this.filter = filter;
-            this.nextFilter = new NextFilter() {
-                public void sessionCreated(IoSession session) {
-                    Entry nextEntry = EntryImpl.this.nextEntry;
-                    callNextSessionCreated(nextEntry, session);
-                }
+            this.eventMask = getEventMask(filter);
+            this.nextFilter = new NextFilterImpl();
+        }
 
-                public void sessionOpened(IoSession session) {
-                    Entry nextEntry = EntryImpl.this.nextEntry;
-                    callNextSessionOpened(nextEntry, session);
-                }
+        /**
+         * Forwards the events to the entries of the compiled chain.
+         */
+        private class NextFilterImpl implements NextFilter {
+            public void sessionCreated(IoSession session) {
+                Entry nextEntry = targets[SESSION_CREATED];
+                callNextSessionCreated(nextEntry, session);
+            }
 
-                public void sessionClosed(IoSession session) {
-                    Entry nextEntry = EntryImpl.this.nextEntry;
-                    callNextSessionClosed(nextEntry, session);
-                }
+            public void sessionOpened(IoSession session) {
+                Entry nextEntry = targets[SESSION_OPENED];
+                callNextSessionOpened(nextEntry, session);
+            }
 
-                public void sessionIdle(IoSession session, IdleStatus status) {
-                    Entry nextEntry = EntryImpl.this.nextEntry;
-                    callNextSessionIdle(nextEntry, session, status);
-                }
+            public void sessionClosed(IoSession session) {
+                Entry nextEntry = targets[SESSION_CLOSED];
+                callNextSessionClosed(nextEntry, session);
+            }
 
-                public void exceptionCaught(IoSession session, Throwable cause) {
-                    Entry nextEntry = EntryImpl.this.nextEntry;
-                    callNextExceptionCaught(nextEntry, session, cause);
-                }
+            public void sessionIdle(IoSession session, IdleStatus status) {
+                Entry nextEntry = targets[SESSION_IDLE];
+                callNextSessionIdle(nextEntry, session, status);
+            }
 
-                public void messageReceived(IoSession session, Object message) {
-                    Entry nextEntry = EntryImpl.this.nextEntry;
-                    callNextMessageReceived(nextEntry, session, message);
-                }
+            public void exceptionCaught(IoSession session, Throwable cause) {
+                Entry nextEntry = targets[EXCEPTION_CAUGHT];
+                callNextExceptionCaught(nextEntry, session, cause);
+            }
 
-                public void messageSent(IoSession session,
-                        WriteRequest writeRequest) {
-                    Entry nextEntry = EntryImpl.this.nextEntry;
-                    callNextMessageSent(nextEntry, session, writeRequest);
-                }
+            /**
+             * Forwards <tt>writabilityChanged</tt> event to next filter.
+             */
+            private void writabilityChanged(IoSession session, boolean writable) {
+                Entry nextEntry = targets[WRITABILITY_CHANGED];
+                callNextWritabilityChanged(nextEntry, session, writable);
+            }
 
-                public void filterWrite(IoSession session,
-                        WriteRequest writeRequest) {
-                    Entry nextEntry = EntryImpl.this.prevEntry;
-                    callPreviousFilterWrite(nextEntry, session, writeRequest);
-                }
+            public void messageReceived(IoSession session, Object message) {
+                Entry nextEntry = targets[MESSAGE_RECEIVED];
+                callNextMessageReceived(nextEntry, session, message);
+            }
 
-                public void filterClose(IoSession session) {
-                    Entry nextEntry = EntryImpl.this.prevEntry;
-                    callPreviousFilterClose(nextEntry, session);
-                }
+            public void messageSent(IoSession session,
+                    WriteRequest writeRequest) {
+                Entry nextEntry = targets[MESSAGE_SENT];
+                callNextMessageSent(nextEntry, session, writeRequest);
+            }
 
-                public String toString() {
-                    return EntryImpl.this.nextEntry.name;
-                }
-            };
+            public void filterWrite(IoSession session,
+                    WriteRequest writeRequest) {
+                Entry nextEntry = targets[WRITE];
+                callPreviousFilterWrite(nextEntry, session, writeRequest);
+            }
+
+            public void filterClose(IoSession session) {
+                Entry nextEntry = targets[CLOSE];
+                callPreviousFilterClose(nextEntry, session);
+            }
+
+            public String toString() {
+                return EntryImpl.this.nextEntry.name;
+            }
         }
 
         public String getName() {
@@ -833,6 +1035,45 @@ public class DefaultIoFilterChain implements IoFilterChain {
             }
 
             this.filter = filter;
+            this.eventMask = getEventMask(filter);
+            compile();
+        }
+
+        /**
+         * @return <tt>true</tt> if the filter of this entry handles the event
+         */
+        private boolean handles(int event) {
+            return (eventMask & (1 << event)) != 0;
+        }
+
+        /**
+         * Returns the first entry to call when an event is fired from this
+         * entry, i.e. from the head or the tail of the chain.
+         */
+        private EntryImpl first(int event) {
+            if (handles(event)) {
+                return this;
+            }
+
+            return targets[event];
+        }
+
+        private void updateInboundLinks() {
+            for (int event = 0; event < EVENT_COUNT; event++) {
+                if ((OUTBOUND_EVENTS & (1 << event)) == 0) {
+                    targets[event] = nextEntry == null ? null : nextEntry
+                            .first(event);
+                }
+            }
+        }
+
+        private void updateOutboundLinks() {
+            for (int event = 0; event < EVENT_COUNT; event++) {
+                if ((OUTBOUND_EVENTS & (1 << event)) != 0) {
+                    targets[event] = prevEntry == null ? null : prevEntry
+                            .first(event);
+                }
+            }
         }
 
         public NextFilter getNextFilter() {
@@ -30,7 +30,7 @@ import org.apache.mina.core.write.WriteRequest;
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
-public class IoFilterAdapter implements IoFilter {
+public class IoFilterAdapter implements IoFilter, WritabilityFilter {
     /**
      * {@inheritDoc}
      */
@@ -111,6 +111,18 @@ public class IoFilterAdapter implements IoFilter {
         nextFilter.exceptionCaught(session, cause);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The default implementation forwards the event to the next filter, so
+     * an overriding method calls this one to forward it.
+     */
+    public void writabilityChanged(NextFilter nextFilter, IoSession session,
+            boolean writable) throws Exception {
+        DefaultIoFilterChain.forwardWritabilityChanged(nextFilter, session,
+                writable);
+    }
+
     /**
      * {@inheritDoc}
      */
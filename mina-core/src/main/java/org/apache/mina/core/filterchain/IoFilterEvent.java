@@ -98,6 +98,11 @@ public class IoFilterEvent extends IoEvent {
             nextFilter.sessionIdle(session, (IdleStatus) getParameter());
             break;
             
+        case WRITABILITY_CHANGED:
+            DefaultIoFilterChain.forwardWritabilityChanged(nextFilter, session,
+                    (Boolean) getParameter());
+            break;
+            
         case SESSION_OPENED:
             nextFilter.sessionOpened(session);
             break;
@@ -0,0 +1,52 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.filterchain;
+
+import org.apache.mina.core.session.IoSession;
+
+/**
+ * An {@link IoFilter} which is notified when the writability of a session
+ * changes, i.e. when the number of bytes scheduled for write crosses the
+ * high or the low watermark of the session (see
+ * {@link org.apache.mina.core.session.IoSessionConfig#setWriteHighWatermark(int)}).
+ * <p>
+ * The <tt>writabilityChanged</tt> event is not part of {@link IoFilter} :
+ * a {@link DefaultIoFilterChain} only delivers it to the filters which
+ * implement this interface and skips the other ones, and it is not delivered
+ * at all by the other {@link IoFilterChain} implementations.
+ * {@link IoFilterAdapter} implements this interface and forwards the event.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface WritabilityFilter extends IoFilter {
+    /**
+     * Filters the <tt>writabilityChanged</tt> event.  It is fired from the
+     * I/O processor thread of the session.  Call
+     * {@link DefaultIoFilterChain#forwardWritabilityChanged(NextFilter, IoSession, boolean)}
+     * to forward it to the next filter.
+     *
+     * @param nextFilter the {@link NextFilter} for this filter
+     * @param session the session whose writability changed
+     * @param writable <tt>true</tt> if the session became writable again,
+     *                 <tt>false</tt> if it exceeded its high watermark
+     */
+    void writabilityChanged(NextFilter nextFilter, IoSession session,
+            boolean writable) throws Exception;
+}
@@ -19,9 +19,9 @@
  */
 package org.apache.mina.core.future;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.mina.core.polling.AbstractPollingIoProcessor;
 import org.apache.mina.core.service.IoProcessor;
@@ -32,6 +32,11 @@ import org.apache.mina.util.ExceptionMonitor;
 /**
  * A default implementation of {@link IoFuture} associated with
  * an {@link IoSession}.
+ * <p>
+ * This implementation is lock free : the result is set with a CAS, and
+ * the listeners and the waiting threads are pushed on a single stack which
+ * is atomically taken by the thread completing the future.  A thread
+ * awaiting the future is parked only if the future is not yet done.
  * 
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -40,16 +45,26 @@ public class DefaultIoFuture implements IoFuture {
     /** A number of seconds to wait between two deadlock controls ( 5 seconds ) */
     private static final long DEAD_LOCK_CHECK_INTERVAL = 5000L;
 
+    /** The result stored when the future is completed with a null value */
+    private static final Object NULL_RESULT = new Object();
+
+    /** The head of the stack once the future has been completed */
+    private static final Node DONE = new Node(null, null);
+
+    private static final AtomicReferenceFieldUpdater<DefaultIoFuture, Object> RESULT_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(DefaultIoFuture.class, Object.class, "result");
+
+    private static final AtomicReferenceFieldUpdater<DefaultIoFuture, Node> STACK_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(DefaultIoFuture.class, Node.class, "stack");
+
     /** The associated session */
     private final IoSession session;
-    
-    /** A lock used by the wait() method */
-    private final Object lock;
-    private IoFutureListener<?> firstListener;
-    private List<IoFutureListener<?>> otherListeners;
-    private Object result;
-    private boolean ready;
-    private int waiters;
+
+    /** The result of the operation, null until the future is done */
+    private volatile Object result;
+
+    /** The listeners and the waiting threads, or DONE */
+    private volatile Node stack;
 
     /**
      * Creates a new instance associated with an {@link IoSession}.
@@ -58,7 +73,6 @@ public class DefaultIoFuture implements IoFuture {
      */
     public DefaultIoFuture(IoSession session) {
         this.session = session;
-        this.lock = this;
     }
 
     /**
@@ -88,22 +102,7 @@ public class DefaultIoFuture implements IoFuture {
      * {@inheritDoc}
      */
     public IoFuture await() throws InterruptedException {
-        synchronized (lock) {
-            while (!ready) {
-                waiters++;
-                try {
-                    // Wait for a notify, or if no notify is called,
-                    // assume that we have a deadlock and exit the 
-                    // loop to check for a potential deadlock.
-                    lock.wait(DEAD_LOCK_CHECK_INTERVAL);
-                } finally {
-                    waiters--;
-                    if (!ready) {
-                        checkDeadLock();
-                    }
-                }
-            }
-        }
+        await0(Long.MAX_VALUE, true);
         return this;
     }
 
@@ -167,49 +166,73 @@ public class DefaultIoFuture implements IoFuture {
      * when it's not allowed.
      */
     private boolean await0(long timeoutMillis, boolean interruptable) throws InterruptedException {
+        if (isCompleted()) {
+            return true;
+        } else if (timeoutMillis <= 0) {
+            return false;
+        }
+
         long endTime = System.currentTimeMillis() + timeoutMillis;
-        
+
         if (endTime < 0) {
             endTime = Long.MAX_VALUE;
         }
 
-        synchronized (lock) {
-            if (ready) {
-                return ready;
-            } else if (timeoutMillis <= 0) {
-                return ready;
-            }
+        Node waiter = new Node(Thread.currentThread(), null);
 
-            waiters++;
-            
-            try {
-                for (;;) {
-                    try {
-                        long timeOut = Math.min(timeoutMillis, DEAD_LOCK_CHECK_INTERVAL);
-                        lock.wait(timeOut);
-                    } catch (InterruptedException e) {
-                        if (interruptable) {
-                            throw e;
-                        }
-                    }
+        if (!push(waiter)) {
+            // Completed in the meantime
+            return true;
+        }
+
+        boolean interrupted = false;
+
+        try {
+            for (;;) {
+                long now = System.currentTimeMillis();
+
+                if (now >= endTime) {
+                    return isCompleted();
+                }
+
+                long waitTime = Math.min(endTime - now, DEAD_LOCK_CHECK_INTERVAL);
+                long checkTime = now + waitTime;
+
+                // Park until notified, or until no notification came and
+                // we have to check for a potential deadlock.
+                do {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(checkTime - now));
 
-                    if (ready) {
+                    if (isCompleted()) {
                         return true;
                     }
-                    
-                    if (endTime < System.currentTimeMillis()) {
-                        return ready;
+
+                    if (Thread.interrupted()) {
+                        if (interruptable) {
+                            throw new InterruptedException();
+                        }
+
+                        interrupted = true;
                     }
-                }
-            } finally {
-                waiters--;
-                if (!ready) {
-                    checkDeadLock();
-                }
+
+                    now = System.currentTimeMillis();
+                } while (now < checkTime);
+
+                checkDeadLock();
+            }
+        } finally {
+            waiter.thread = null;
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!isCompleted()) {
+                removeDeadNodes();
+                checkDeadLock();
             }
         }
     }
-
     
     /**
      * 
@@ -265,38 +288,40 @@ public class DefaultIoFuture implements IoFuture {
      * {@inheritDoc}
      */
     public boolean isDone() {
-        synchronized (lock) {
-            return ready;
-        }
+        return result != null;
+    }
+
+    /**
+     * Tells if a result has been set.  Unlike {@link #isDone()}, which the
+     * subclasses may override, this is what the waiting threads check.
+     */
+    private boolean isCompleted() {
+        return result != null;
     }
 
     /**
      * Sets the result of the asynchronous operation, and mark it as finished.
      */
     public void setValue(Object newValue) {
-        synchronized (lock) {
-            // Allow only once.
-            if (ready) {
-                return;
-            }
-
-            result = newValue;
-            ready = true;
-            if (waiters > 0) {
-                lock.notifyAll();
-            }
+        // Allow only once.
+        if (!RESULT_UPDATER.compareAndSet(this, null,
+                newValue == null ? NULL_RESULT : newValue)) {
+            return;
         }
 
-        notifyListeners();
+        Node head = STACK_UPDATER.getAndSet(this, DONE);
+
+        if (head != null) {
+            notifyNodes(head);
+        }
     }
 
     /**
      * Returns the result of the asynchronous operation.
      */
     protected Object getValue() {
-        synchronized (lock) {
-            return result;
-        }
+        Object value = result;
+        return value == NULL_RESULT ? null : value;
     }
 
     /**
@@ -307,25 +332,10 @@ public class DefaultIoFuture implements IoFuture {
             throw new IllegalArgumentException("listener");
         }
 
-        boolean notifyNow = false;
-        synchronized (lock) {
-            if (ready) {
-                notifyNow = true;
-            } else {
-                if (firstListener == null) {
-                    firstListener = listener;
-                } else {
-                    if (otherListeners == null) {
-                        otherListeners = new ArrayList<IoFutureListener<?>>(1);
-                    }
-                    otherListeners.add(listener);
-                }
-            }
-        }
-
-        if (notifyNow) {
+        if (!push(new Node(null, listener))) {
             notifyListener(listener);
         }
+
         return this;
     }
 
@@ -337,36 +347,123 @@ public class DefaultIoFuture implements IoFuture {
             throw new IllegalArgumentException("listener");
         }
 
-        synchronized (lock) {
-            if (!ready) {
-                if (listener == firstListener) {
-                    if (otherListeners != null && !otherListeners.isEmpty()) {
-                        firstListener = otherListeners.remove(0);
-                    } else {
-                        firstListener = null;
-                    }
-                } else if (otherListeners != null) {
-                    otherListeners.remove(listener);
-                }
+        // The stack is in the reverse order of the additions : remove the
+        // oldest occurrence of the listener
+        Node oldest = null;
+
+        for (Node node = stack; node != null && node != DONE; node = node.next) {
+            if (node.listener == listener) {
+                oldest = node;
             }
         }
 
+        if (oldest != null && Node.LISTENER_UPDATER.compareAndSet(oldest, listener, null)) {
+            removeDeadNodes();
+        }
+
         return this;
     }
 
-    private void notifyListeners() {
-        // There won't be any visibility problem or concurrent modification
-        // because 'ready' flag will be checked against both addListener and
-        // removeListener calls.
-        if (firstListener != null) {
-            notifyListener(firstListener);
-            firstListener = null;
-
-            if (otherListeners != null) {
-                for (IoFutureListener<?> l : otherListeners) {
-                    notifyListener(l);
+    /**
+     * Pushes a node on the stack.
+     *
+     * @return <tt>false</tt> if the future is already done
+     */
+    private boolean push(Node node) {
+        for (;;) {
+            Node head = stack;
+
+            if (head == DONE) {
+                return false;
+            }
+
+            node.next = head;
+
+            if (STACK_UPDATER.compareAndSet(this, head, node)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Unlinks the nodes which neither hold a waiting thread nor a listener
+     * anymore, so that timed out waits and removed listeners don't pile up.
+     */
+    private void removeDeadNodes() {
+        retry: for (;;) {
+            Node pred = null;
+            Node node = stack;
+
+            while (node != null && node != DONE) {
+                Node next = node.next;
+
+                if (node.thread != null || node.listener != null) {
+                    pred = node;
+                } else if (pred != null) {
+                    pred.next = next;
+
+                    if (pred.thread == null && pred.listener == null) {
+                        // The predecessor died too
+                        continue retry;
+                    }
+                } else if (!STACK_UPDATER.compareAndSet(this, node, next)) {
+                    continue retry;
+                }
+
+                node = next;
+            }
+
+            return;
+        }
+    }
+
+    /**
+     * Wakes up the waiting threads and notifies the listeners, in the order
+     * they have been added.
+     */
+    private void notifyNodes(Node head) {
+        IoFutureListener<?> firstListener = null;
+        IoFutureListener<?>[] listeners = null;
+        int count = 0;
+
+        for (Node node = head; node != null; node = node.next) {
+            Thread thread = node.thread;
+
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+
+            IoFutureListener<?> listener = node.listener;
+
+            if (listener == null) {
+                continue;
+            }
+
+            if (count == 0) {
+                firstListener = listener;
+            } else {
+                if (listeners == null) {
+                    listeners = new IoFutureListener<?>[4];
+                    listeners[0] = firstListener;
+                } else if (count == listeners.length) {
+                    IoFutureListener<?>[] newListeners = new IoFutureListener<?>[count << 1];
+                    System.arraycopy(listeners, 0, newListeners, 0, count);
+                    listeners = newListeners;
                 }
-                otherListeners = null;
+
+                listeners[count] = listener;
+            }
+
+            count++;
+        }
+
+        if (listeners == null) {
+            if (firstListener != null) {
+                notifyListener(firstListener);
+            }
+        } else {
+            for (int i = count - 1; i >= 0; i--) {
+                notifyListener(listeners[i]);
             }
         }
     }
@@ -379,4 +476,23 @@ public class DefaultIoFuture implements IoFuture {
             ExceptionMonitor.getInstance().exceptionCaught(t);
         }
     }
+
+    /**
+     * An entry of the stack : either a waiting thread or a listener.
+     */
+    private static final class Node {
+        private static final AtomicReferenceFieldUpdater<Node, IoFutureListener> LISTENER_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, IoFutureListener.class, "listener");
+
+        volatile Thread thread;
+
+        volatile IoFutureListener<?> listener;
+
+        volatile Node next;
+
+        Node(Thread thread, IoFutureListener<?> listener) {
+            this.thread = thread;
+            this.listener = listener;
+        }
+    }
 }
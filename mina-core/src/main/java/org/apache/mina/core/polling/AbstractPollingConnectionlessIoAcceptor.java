@@ -47,6 +47,7 @@ import org.apache.mina.core.session.IoSessionConfig;
 import org.apache.mina.core.session.IoSessionRecycler;
 import org.apache.mina.core.write.WriteRequest;
 import org.apache.mina.core.write.WriteRequestQueue;
+import org.apache.mina.util.CachedClock;
 import org.apache.mina.util.ExceptionMonitor;
 
 /**
@@ -393,7 +394,7 @@ public abstract class AbstractPollingConnectionlessIoAcceptor<T extends Abstract
                         processReadySessions(selectedHandles());
                     }
 
-                    long currentTime = System.currentTimeMillis();
+                    long currentTime = CachedClock.update();
                     flushSessions(currentTime);
                     nHandles -= unregisterHandles();
 
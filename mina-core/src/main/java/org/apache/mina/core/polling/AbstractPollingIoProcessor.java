@@ -21,6 +21,7 @@ package org.apache.mina.core.polling;
 
 import java.io.IOException;
 import java.net.PortUnreachableException;
+import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -32,15 +33,20 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.mina.core.IoUtil;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.file.FileRegion;
 import org.apache.mina.core.filterchain.IoFilterChain;
 import org.apache.mina.core.filterchain.IoFilterChainBuilder;
 import org.apache.mina.core.future.DefaultIoFuture;
+import org.apache.mina.core.future.DefaultWriteFuture;
+import org.apache.mina.core.future.WriteFuture;
 import org.apache.mina.core.service.AbstractIoService;
 import org.apache.mina.core.service.IoProcessor;
 import org.apache.mina.core.service.IoServiceListenerSupport;
 import org.apache.mina.core.session.AbstractIoSession;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IdleTimingWheel;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.core.session.IoSessionConfig;
 import org.apache.mina.core.session.SessionState;
@@ -48,6 +54,7 @@ import org.apache.mina.core.write.WriteRequest;
 import org.apache.mina.core.write.WriteRequestQueue;
 import org.apache.mina.core.write.WriteToClosedSessionException;
 import org.apache.mina.transport.socket.AbstractDatagramSessionConfig;
+import org.apache.mina.util.CachedClock;
 import org.apache.mina.util.ExceptionMonitor;
 import org.apache.mina.util.NamePreservingRunnable;
 import org.slf4j.Logger;
@@ -80,6 +87,10 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
      */
     private static final long SELECT_TIMEOUT = 1000L;
 
+    /** A key used to store the processor a session has been migrated to */
+    private static final AttributeKey MIGRATED_TO = new AttributeKey(
+            AbstractPollingIoProcessor.class, "migratedTo");
+
     /** A map containing the last Thread ID for each class */
     private static final Map<Class<?>, AtomicInteger> threadIds = new ConcurrentHashMap<Class<?>, AtomicInteger>();
 
@@ -107,11 +118,20 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
      */
     private final Queue<T> trafficControllingSessions = new ConcurrentLinkedQueue<T>();
 
+    /** A queue used to store the sessions to be migrated to another processor */
+    private final Queue<Migration> migratingSessions = new ConcurrentLinkedQueue<Migration>();
+
+    /** A queue used to store the sessions migrated from another processor */
+    private final Queue<T> adoptedSessions = new ConcurrentLinkedQueue<T>();
+
     /** The processor thread : it handles the incoming messages */
     private Processor processor;
 
     private long lastIdleCheckTime;
 
+    /** The sessions, scheduled by their next possible idle time or write timeout */
+    private final IdleTimingWheel idleTimingWheel = new IdleTimingWheel();
+
     private final Object disposalLock = new Object();
 
     private volatile boolean disposing;
@@ -122,6 +142,18 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
 
     protected AtomicBoolean wakeupCalled = new AtomicBoolean(false);
 
+    /**
+     * The read buffer reused for the sessions whose service enables
+     * read buffer recycling. Only accessed by the processor thread.
+     */
+    private IoBuffer recycledReadBuffer;
+
+    /**
+     * The number of bytes read and written by this processor.  Only updated
+     * by the processor thread.
+     */
+    private volatile long processedBytes;
+
     /**
      * Create an {@link AbstractPollingIoProcessor} with the given
      * {@link Executor} for handling I/Os events.
@@ -348,6 +380,30 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
      */
     protected abstract void destroy(T session) throws Exception;
 
+    /**
+     * Tells if the sessions of this processor can be migrated to another
+     * processor, i.e. if {@link #detach(AbstractIoSession)} is implemented.
+     * The default implementation returns <tt>false</tt> : a processor which
+     * overrides {@link #detach(AbstractIoSession)} must override this method
+     * too.
+     */
+    public boolean isMigratable() {
+        return false;
+    }
+
+    /**
+     * Stops the polling of a session without closing it, so that it can be
+     * polled by another processor. The default implementation throws an
+     * {@link UnsupportedOperationException}, so the session can't be
+     * migrated.
+     * 
+     * @param session the {@link IoSession} to remove from the polling
+     * @throws Exception any exception thrown by the underlying system calls
+     */
+    protected void detach(T session) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Reads a sequence of bytes from a {@link IoSession} into the given
      * {@link IoBuffer}. Is called when the session was found ready for reading.
@@ -380,6 +436,50 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
     protected abstract int write(T session, IoBuffer buf, int length)
             throws Exception;
 
+    /**
+     * Write a sequence of buffers to a {@link IoSession} with a single
+     * gathering write, if the underlying API supports it. This method is
+     * called when more than one {@link IoBuffer} is queued and the session's
+     * {@link IoSessionConfig#getMaxGatheringWriteCount()} is greater than 1.
+     * The default implementation writes the buffers one by one using
+     * {@link #write(AbstractIoSession, IoBuffer, int)}, and stops as soon
+     * as a buffer can't be fully written.
+     * 
+     * @param session
+     *            the session to write
+     * @param buffers
+     *            the buffers to write
+     * @param offset
+     *            the index of the first buffer to write
+     * @param count
+     *            the number of buffers to write
+     * @return the number of byte written
+     * @throws Exception
+     *             any exception thrown by the underlying system calls
+     */
+    protected int write(T session, IoBuffer[] buffers, int offset, int count)
+            throws Exception {
+        int writtenBytes = 0;
+
+        for (int i = offset; i < offset + count; i++) {
+            IoBuffer buf = buffers[i];
+            int remaining = buf.remaining();
+
+            if (remaining == 0) {
+                continue;
+            }
+
+            int localWrittenBytes = write(session, buf, remaining);
+            writtenBytes += localWrittenBytes;
+
+            if (localWrittenBytes < remaining) {
+                break;
+            }
+        }
+
+        return writtenBytes;
+    }
+
     /**
      * Write a part of a file to a {@link IoSession}, if the underlying API
      * isn't supporting system calls like sendfile(), you can throw a
@@ -444,6 +544,76 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
         }
     }
 
+    /**
+     * Returns the number of bytes read and written by the sessions of this
+     * processor since it has been created.
+     */
+    public final long getProcessedBytes() {
+        return processedBytes;
+    }
+
+    /**
+     * Migrates a session to another processor of the same type, without
+     * closing it nor firing any event. The session is only migrated if it
+     * has nothing to write when this processor handles the request,
+     * otherwise the returned future is notified with a <tt>false</tt>
+     * result.
+     * 
+     * @param session the session to migrate
+     * @param target the processor which will poll the session
+     * @return a future notified once the session has been detached from
+     *         this processor, or when the migration has been rejected
+     * @throws UnsupportedOperationException if one of the processors is not
+     *             {@link #isMigratable() migratable}
+     */
+    public final SessionMigrationFuture migrate(T session,
+            AbstractPollingIoProcessor<T> target) {
+        if (target == null) {
+            throw new IllegalArgumentException("target");
+        }
+
+        if (!isMigratable() || !target.isMigratable()) {
+            throw new UnsupportedOperationException(
+                    "The sessions of this processor can't be migrated.");
+        }
+
+        if (isDisposing() || target.isDisposing()) {
+            throw new IllegalStateException("Already disposed.");
+        }
+
+        SessionMigrationFuture future = new SessionMigrationFuture(session);
+
+        if (target == this) {
+            future.setMigrated(true);
+        } else {
+            migratingSessions.add(new Migration(session, target, future));
+            startupProcessor();
+        }
+
+        return future;
+    }
+
+    private void adopt(T session) {
+        adoptedSessions.add(session);
+        startupProcessor();
+    }
+
+    /**
+     * Returns the processor the given session has been migrated to, or
+     * <tt>null</tt> if it has not been migrated from this processor.
+     */
+    @SuppressWarnings("unchecked")
+    private AbstractPollingIoProcessor<T> getMigrationTarget(T session) {
+        AbstractPollingIoProcessor<T> target = (AbstractPollingIoProcessor<T>) session
+                .getAttribute(MIGRATED_TO);
+
+        if (target == this) {
+            return null;
+        }
+
+        return target;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -534,6 +704,8 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
             // Propagate the SESSION_CREATED event up to the chain
             IoServiceListenerSupport listeners = ((AbstractIoService) session.getService()).getListeners();
             listeners.fireSessionCreated(session);
+
+            idleTimingWheel.add(session, CachedClock.currentTimeMillis());
         } catch (Throwable e) {
             ExceptionMonitor.getInstance().exceptionCaught(e);
             
@@ -549,6 +721,76 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
         return registered;
     }
 
+    /**
+     * Detaches the idle sessions to be migrated, and hand them to their new
+     * processor.
+     * 
+     * @return The number of migrated sessions
+     */
+    private int migrateSessions() {
+        int migratedSessions = 0;
+
+        for (Migration m = migratingSessions.poll(); m != null; m = migratingSessions.poll()) {
+            T session = m.session;
+            boolean migrated = false;
+
+            if (getState(session) == SessionState.OPENED
+                    && !session.isScheduledForFlush()
+                    && session.getCurrentWriteRequest() == null
+                    && session.getWriteRequestQueue().isEmpty(session)) {
+                try {
+                    detach(session);
+                    idleTimingWheel.remove(session);
+                    session.setAttribute(MIGRATED_TO, m.target);
+                    migrated = true;
+                } catch (Exception e) {
+                    ExceptionMonitor.getInstance().exceptionCaught(e);
+                }
+            }
+
+            m.future.setMigrated(migrated);
+
+            if (migrated) {
+                m.target.adopt(session);
+                migratedSessions++;
+            }
+        }
+
+        return migratedSessions;
+    }
+
+    /**
+     * Starts the polling of the sessions migrated from other processors.
+     * 
+     * @return The number of adopted sessions
+     */
+    private int handleAdoptedSessions() {
+        int adoptedCount = 0;
+
+        for (T session = adoptedSessions.poll(); session != null; session = adoptedSessions.poll()) {
+            // The session belongs to this processor now, even if it has been
+            // closed in the meantime : its removal has been counted here.
+            adoptedCount++;
+
+            if (!session.isConnected()) {
+                continue;
+            }
+
+            try {
+                init(session);
+                idleTimingWheel.add(session, CachedClock.currentTimeMillis());
+
+                // Restore the suspended reads and pending writes
+                updateTrafficControl(session);
+            } catch (Exception e) {
+                ExceptionMonitor.getInstance().exceptionCaught(e);
+                scheduleRemove(session);
+            }
+        }
+
+        return adoptedCount;
+    }
+
     private int removeSessions() {
         int removedSessions = 0;
 
@@ -570,6 +812,14 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
                     break;
     
                 case OPENING:
+                    AbstractPollingIoProcessor<T> target = getMigrationTarget(session);
+
+                    if (target != null) {
+                        // The session is now handled by another processor
+                        target.remove(session);
+                        break;
+                    }
+
                     // Remove session from the newSessions queue and
                     // remove it
                     newSessions.remove(session);
@@ -589,6 +839,8 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
     }
 
     private boolean removeNow(T session) {
+        idleTimingWheel.remove(session);
+        session.releaseReadBufferBudget();
         clearWriteRequestQueue(session);
 
         try {
@@ -611,6 +863,15 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
 
         List<WriteRequest> failedRequests = new ArrayList<WriteRequest>();
 
+        // The requests already gathered from the queue but not yet
+        // written have to be failed first.
+        if (session.getCurrentWriteRequest() instanceof GatheringWriteRequest) {
+            GatheringWriteRequest batch = (GatheringWriteRequest) session
+                    .getCurrentWriteRequest();
+            session.setCurrentWriteRequest(null);
+            batch.drainTo(failedRequests);
+        }
+
         if ((req = writeRequestQueue.poll(session)) != null) {
             Object message = req.getMessage();
             
@@ -680,7 +941,16 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
     private void read(T session) {
         IoSessionConfig config = session.getConfig();
         int bufferSize = config.getReadBufferSize();
-        IoBuffer buf = IoBuffer.allocate(bufferSize);
+        // The service may promise that the received buffers are not kept
+        // beyond messageReceived : the processor-owned buffer is reused then
+        final boolean recycled = IoUtil.isReadBufferRecycled(session);
+        IoBuffer buf;
+
+        if (recycled) {
+            buf = acquireReadBuffer(bufferSize);
+        } else {
+            buf = IoBuffer.allocate(bufferSize);
+        }
 
         final boolean hasFragmentation = session.getTransportMetadata()
                 .hasFragmentation();
@@ -711,16 +981,14 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
             }
 
             if (readBytes > 0) {
+                processedBytes += readBytes;
+
                 IoFilterChain filterChain = session.getFilterChain();
                 filterChain.fireMessageReceived(buf);
                 buf = null;
 
                 if (hasFragmentation) {
-                    if (readBytes << 1 < config.getReadBufferSize()) {
-                        session.decreaseReadBufferSize();
-                    } else if (readBytes == config.getReadBufferSize()) {
-                        session.increaseReadBufferSize();
-                    }
+                    session.updateReadBufferSize(readBytes);
                 }
             }
 
@@ -742,6 +1010,25 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
     }
 
 
+    /**
+     * Returns the processor-owned read buffer, cleared and limited to the
+     * requested size.  A new buffer is allocated only if the current one is
+     * too small.
+     */
+    private IoBuffer acquireReadBuffer(int bufferSize) {
+        IoBuffer buf = recycledReadBuffer;
+
+        if (buf == null || buf.capacity() < bufferSize) {
+            buf = IoBuffer.allocate(bufferSize);
+            recycledReadBuffer = buf;
+        } else {
+            buf.clear();
+            buf.limit(bufferSize);
+        }
+
+        return buf;
+    }
+
     private static String byteArrayToHex( byte[] barray )
     {
         char[] c = new char[barray.length * 2];
@@ -767,7 +1054,7 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
         // process idle sessions
         if (currentTime - lastIdleCheckTime >= SELECT_TIMEOUT) {
             lastIdleCheckTime = currentTime;
-            AbstractIoSession.notifyIdleness(allSessions(), currentTime);
+            idleTimingWheel.expire(currentTime);
         }
     }
 
@@ -797,6 +1084,10 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
                 case OPENED:
                     try {
                         boolean flushedAll = flushNow(session, currentTime);
+
+                        // The writability only changes on this thread, so
+                        // that the events are not fired from the writers
+                        session.updateWritability();
                         
                         if (flushedAll
                                 && !session.getWriteRequestQueue().isEmpty(session)
@@ -816,6 +1107,14 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
                     break;
     
                 case OPENING:
+                    AbstractPollingIoProcessor<T> target = getMigrationTarget(session);
+
+                    if (target != null) {
+                        // The session is now handled by another processor
+                        target.flush(session);
+                        break;
+                    }
+
                     // Retry later if session is not yet fully initialized.
                     // (In case that Session.write() is called before addSession()
                     // is processed)
@@ -846,6 +1145,11 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
         // performance in my experience while not breaking fairness much.
         final int maxWrittenBytes = session.getConfig().getMaxReadBufferSize()
                 + (session.getConfig().getMaxReadBufferSize() >>> 1);
+
+        // Gathering writes only make sense for stream transports, as a
+        // datagram channel would send all the buffers in one datagram.
+        final int maxGatheringWriteCount = hasFragmentation ? session
+                .getConfig().getMaxGatheringWriteCount() : 1;
         int writtenBytes = 0;
         WriteRequest req = null;
         
@@ -869,8 +1173,31 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
 
                 int localWrittenBytes = 0;
                 Object message = req.getMessage();
-                
-                if (message instanceof IoBuffer) {
+
+                if ((maxGatheringWriteCount > 1)
+                        && (message instanceof IoBuffer)
+                        && !(req instanceof GatheringWriteRequest)) {
+                    GatheringWriteRequest batch = gather(session, req,
+                            maxGatheringWriteCount, maxWrittenBytes - writtenBytes);
+
+                    if (batch != null) {
+                        req = batch;
+                        session.setCurrentWriteRequest(batch);
+                    }
+                }
+
+                if (req instanceof GatheringWriteRequest) {
+                    localWrittenBytes = writeBuffers(session,
+                            (GatheringWriteRequest) req, currentTime);
+
+                    if (localWrittenBytes > 0
+                            && session.getCurrentWriteRequest() == req) {
+                        // Some buffers aren't empty, we re-interest it in writing
+                        writtenBytes += localWrittenBytes;
+                        setInterestedInWrite(session, true);
+                        return false;
+                    }
+                } else if (message instanceof IoBuffer) {
                     localWrittenBytes = writeBuffer(session, req,
                             hasFragmentation, maxWrittenBytes - writtenBytes,
                             currentTime);
@@ -906,6 +1233,12 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
                 }
 
                 if (localWrittenBytes == 0) {
+                    if (session.getCurrentWriteRequest() != req) {
+                        // Empty message(s) : nothing had to be written, but
+                        // the request has been completed, go on.
+                        continue;
+                    }
+
                     // Kernel buffer is full.
                     setInterestedInWrite(session, true);
                     return false;
@@ -921,6 +1254,11 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
             } while (writtenBytes < maxWrittenBytes);
         } catch (Exception e) {
             if (req != null) {
+                if (req instanceof GatheringWriteRequest) {
+                    // A failed batch is drained : it can't be written anymore
+                    session.setCurrentWriteRequest(null);
+                }
+
                 req.getFuture().setException(e);
             }
             
@@ -951,6 +1289,7 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
         }
 
         session.increaseWrittenBytes(localWrittenBytes, currentTime);
+        processedBytes += localWrittenBytes;
 
         if (!buf.hasRemaining() || !hasFragmentation && localWrittenBytes != 0) {
             // Buffer has been sent, clear the current request.
@@ -965,6 +1304,100 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
         return localWrittenBytes;
     }
 
+    /**
+     * Polls the queued write requests following the given one, as long as
+     * they contain an {@link IoBuffer}, and gather them in a single request.
+     * 
+     * @return the gathered request, or <tt>null</tt> if there is nothing to
+     *         gather with the given request
+     */
+    private GatheringWriteRequest gather(T session, WriteRequest first,
+            int maxCount, int maxLength) {
+        int length = ((IoBuffer) first.getMessage()).remaining();
+
+        if (length >= maxLength) {
+            return null;
+        }
+
+        WriteRequestQueue writeRequestQueue = session.getWriteRequestQueue();
+        WriteRequest req = writeRequestQueue.poll(session);
+
+        if (req == null) {
+            return null;
+        }
+
+        GatheringWriteRequest batch = new GatheringWriteRequest(session, maxCount);
+        batch.add(first);
+
+        for (;;) {
+            Object message = req.getMessage();
+
+            if (!(message instanceof IoBuffer)) {
+                // We can't put it back in the queue : it will be
+                // written once the whole batch has been sent.
+                batch.setNextRequest(req);
+                break;
+            }
+
+            batch.add(req);
+            length += ((IoBuffer) message).remaining();
+
+            if (batch.isFull() || length >= maxLength) {
+                break;
+            }
+
+            req = writeRequestQueue.poll(session);
+
+            if (req == null) {
+                break;
+            }
+        }
+
+        return batch;
+    }
+
+    private int writeBuffers(T session, GatheringWriteRequest batch,
+            long currentTime) throws Exception {
+        int localWrittenBytes = 0;
+
+        if (batch.hasRemaining()) {
+            localWrittenBytes = write(session, batch.buffers, batch.first,
+                    batch.count - batch.first);
+        }
+
+        session.increaseWrittenBytes(localWrittenBytes, currentTime);
+        processedBytes += localWrittenBytes;
+
+        // Notify the fully written requests, in order
+        while (batch.first < batch.count
+                && !batch.buffers[batch.first].hasRemaining()) {
+            WriteRequest req = batch.requests[batch.first];
+            IoBuffer buf = batch.buffers[batch.first];
+            batch.requests[batch.first] = null;
+            batch.buffers[batch.first] = null;
+            batch.first++;
+
+            int pos = buf.position();
+            buf.reset();
+
+            fireMessageSent(session, req);
+
+            // And set it back to its position
+            buf.position(pos);
+        }
+
+        if (batch.first < batch.count) {
+            // Some buffers are left, the batch stays the current request
+            session.setCurrentWriteRequest(batch);
+        } else {
+            // The batch has been sent, go on with the request which
+            // stopped the gathering, if any.
+            session.setCurrentWriteRequest(batch.nextRequest);
+        }
+
+        return localWrittenBytes;
+    }
+
     private int writeFile(T session, WriteRequest req,
             boolean hasFragmentation, int maxLength, long currentTime)
             throws Exception {
@@ -988,6 +1421,7 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
         }
 
         session.increaseWrittenBytes(localWrittenBytes, currentTime);
+        processedBytes += localWrittenBytes;
 
         if (region.getRemainingBytes() <= 0 || !hasFragmentation
                 && localWrittenBytes != 0) {
@@ -1029,6 +1463,14 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
                     break;
     
                 case OPENING:
+                    AbstractPollingIoProcessor<T> target = getMigrationTarget(session);
+
+                    if (target != null) {
+                        // The session is now handled by another processor
+                        target.updateTrafficMask(session);
+                        break;
+                    }
+
                     // Retry later if session is not yet fully initialized.
                     // (In case that Session.suspend??() or session.resume??() is
                     // called before addSession() is processed)
@@ -1070,6 +1512,24 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
         }
     }
 
+    /**
+     * A request to migrate a session to another processor.
+     */
+    private final class Migration {
+        private final T session;
+
+        private final AbstractPollingIoProcessor<T> target;
+
+        private final SessionMigrationFuture future;
+
+        private Migration(T session, AbstractPollingIoProcessor<T> target,
+                SessionMigrationFuture future) {
+            this.session = session;
+            this.target = target;
+            this.future = future;
+        }
+    }
+
     /**
      * The main loop. This is the place in charge to poll the Selector, and to 
      * process the active sessions. It's done in 
@@ -1079,7 +1539,7 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
     private class Processor implements Runnable {
         public void run() {
             int nSessions = 0;
-            lastIdleCheckTime = System.currentTimeMillis();
+            lastIdleCheckTime = CachedClock.update();
 
             for (;;) {
                 try {
@@ -1089,7 +1549,7 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
                     // a dedicated thread).
                     long t0 = System.currentTimeMillis();
                     int selected = select(SELECT_TIMEOUT);
-                    long t1 = System.currentTimeMillis();
+                    long t1 = CachedClock.update();
                     long delta = (t1 - t0);
 
                     if ((selected == 0) && !wakeupCalled.get() && (delta < 100)) {
@@ -1129,6 +1589,9 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
 
                     // Manage newly created session first
                     nSessions += handleNewSessions();
+
+                    // Then the sessions migrated from other processors
+                    nSessions += handleAdoptedSessions();
                     
                     updateTrafficMask();
 
@@ -1139,12 +1602,16 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
                         process();
                     }
 
-                    // Write the pending requests
-                    long currentTime = System.currentTimeMillis();
+                    // Write the pending requests. The clock is updated again
+                    // as processing the selected keys may have taken a while
+                    long currentTime = CachedClock.update();
                     flush(currentTime);
                     
                     // And manage removed sessions
                     nSessions -= removeSessions();
+
+                    // Hand the sessions to be migrated to their new processor
+                    nSessions -= migrateSessions();
                     
                     // Last, not least, send Idle events to the idle sessions
                     notifyIdleSessions(currentTime);
@@ -1153,7 +1620,8 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
                     // more sessions on this Processor
                     if (nSessions == 0) {
                         synchronized (lock) {
-                            if (newSessions.isEmpty() && isSelectorEmpty()) {
+                            if (newSessions.isEmpty() && adoptedSessions.isEmpty()
+                                    && migratingSessions.isEmpty() && isSelectorEmpty()) {
                                 processor = null;
                                 break;
                             }
@@ -1193,4 +1661,128 @@ public abstract class AbstractPollingIoProcessor<T extends AbstractIoSession>
             }
         }
     }
+
+    /**
+     * A set of {@link IoBuffer} write requests polled from a session's queue
+     * to be written with a single gathering write.  It stays the current
+     * write request of the session until all its buffers have been written.
+     */
+    private static final class GatheringWriteRequest implements WriteRequest {
+        private final WriteRequest[] requests;
+
+        private final IoBuffer[] buffers;
+
+        private final WriteFuture future;
+
+        /** The index of the first request which is not fully written */
+        private int first;
+
+        private int count;
+
+        /** A non buffer request polled while gathering */
+        private WriteRequest nextRequest;
+
+        private GatheringWriteRequest(IoSession session, int maxCount) {
+            requests = new WriteRequest[maxCount];
+            buffers = new IoBuffer[maxCount];
+            future = new GatheringWriteFuture(session);
+        }
+
+        private void add(WriteRequest req) {
+            requests[count] = req;
+            buffers[count] = (IoBuffer) req.getMessage();
+            count++;
+        }
+
+        private boolean isFull() {
+            return count == requests.length;
+        }
+
+        /**
+         * Tells if at least one of the buffers not yet written has some
+         * bytes to write.
+         */
+        private boolean hasRemaining() {
+            for (int i = first; i < count; i++) {
+                if (buffers[i].hasRemaining()) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private void setNextRequest(WriteRequest nextRequest) {
+            this.nextRequest = nextRequest;
+        }
+
+        /**
+         * Moves all the requests not yet written to the given list.
+         */
+        private void drainTo(List<WriteRequest> list) {
+            for (int i = first; i < count; i++) {
+                if (buffers[i].hasRemaining()) {
+                    buffers[i].reset();
+                }
+
+                list.add(requests[i]);
+                requests[i] = null;
+                buffers[i] = null;
+            }
+
+            first = count;
+
+            if (nextRequest != null) {
+                list.add(nextRequest);
+                nextRequest = null;
+            }
+        }
+
+        public WriteRequest getOriginalRequest() {
+            return this;
+        }
+
+        public WriteFuture getFuture() {
+            return future;
+        }
+
+        public Object getMessage() {
+            return first < count ? buffers[first] : null;
+        }
+
+        public SocketAddress getDestination() {
+            return null;
+        }
+
+        public boolean isEncoded() {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "GatheringWriteRequest: " + (count - first) + " pending buffer(s)";
+        }
+
+        /**
+         * A future which propagates a failure to all the requests of the
+         * batch not yet written.
+         */
+        private final class GatheringWriteFuture extends DefaultWriteFuture {
+            private GatheringWriteFuture(IoSession session) {
+                super(session);
+            }
+
+            @Override
+            public void setException(Throwable exception) {
+                List<WriteRequest> pending = new ArrayList<WriteRequest>();
+                drainTo(pending);
+
+                for (WriteRequest req : pending) {
+                    req.getFuture().setException(exception);
+                }
+
+                super.setException(exception);
+            }
+        }
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.polling;
+
+import org.apache.mina.core.future.DefaultIoFuture;
+import org.apache.mina.core.session.IoSession;
+
+/**
+ * The future returned when a session is migrated from an
+ * {@link AbstractPollingIoProcessor} to another.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SessionMigrationFuture extends DefaultIoFuture {
+    /**
+     * Creates a new instance.
+     * 
+     * @param session the session being migrated
+     */
+    public SessionMigrationFuture(IoSession session) {
+        super(session);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the session has been detached from its
+     * processor and handed to the new one, <tt>false</tt> if it could not be
+     * migrated (because it was not idle or was closing) or if the operation
+     * is not completed yet.
+     */
+    public boolean isMigrated() {
+        return isDone() && getValue() == Boolean.TRUE;
+    }
+
+    /**
+     * Sets the result of the migration, and notifies the listeners.
+     */
+    public void setMigrated(boolean migrated) {
+        setValue(Boolean.valueOf(migrated));
+    }
+}
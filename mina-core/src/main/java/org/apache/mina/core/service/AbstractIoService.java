@@ -133,6 +133,18 @@ public abstract class AbstractIoService implements IoService {
 
     private IoSessionDataStructureFactory sessionDataStructureFactory = new DefaultIoSessionDataStructureFactory();
 
+    /**
+     * Tells if the processors reuse their read buffer for the sessions
+     * of this service.
+     */
+    private volatile boolean readBufferRecycled;
+
+    /**
+     * The number of bytes the read buffers of the sessions may grow beyond
+     * their initial size, 0 meaning no limit.
+     */
+    private volatile long readBufferBudget;
+
     /**
      * Maintains the {@link IoServiceListener}s of this service.
      */
@@ -392,6 +404,63 @@ public abstract class AbstractIoService implements IoService {
         this.sessionDataStructureFactory = sessionDataStructureFactory;
     }
 
+    /**
+     * Returns <tt>true</tt> if the {@link IoProcessor}s of this service reuse
+     * a single processor-owned buffer for every read instead of allocating a
+     * new {@link org.apache.mina.core.buffer.IoBuffer} per read event.
+     */
+    public final boolean isReadBufferRecycled() {
+        return readBufferRecycled;
+    }
+
+    /**
+     * Sets whether the {@link IoProcessor}s of this service reuse a single
+     * processor-owned buffer for every read.  Enabling it is a promise that
+     * the processor keeps the ownership of the buffer passed to
+     * <tt>messageReceived</tt> : its content is overwritten by the next read
+     * as soon as the event returns.  The filters and the handler must then
+     * consume the received bytes synchronously, or copy them, and never keep
+     * a reference to the received buffer (or to a slice or duplicate of it).
+     * The decoders of MINA which keep the received bytes copy them when this
+     * property is set.
+     * <p>
+     * The processor doesn't inspect the filter chain : don't enable this
+     * property if a filter hands the received buffers off to another thread,
+     * like an {@link org.apache.mina.filter.executor.ExecutorFilter} placed
+     * before the decoder does.  The default is <tt>false</tt>.
+     */
+    public final void setReadBufferRecycled(boolean readBufferRecycled) {
+        this.readBufferRecycled = readBufferRecycled;
+    }
+
+    /**
+     * Returns the maximum number of bytes the read buffers of the sessions
+     * of this service may grow beyond their initial size, all sessions
+     * combined.  <tt>0</tt> means there is no limit.
+     */
+    public final long getReadBufferBudget() {
+        return readBufferBudget;
+    }
+
+    /**
+     * Sets the maximum number of bytes the read buffers of the sessions of
+     * this service may grow beyond their initial size, all sessions combined.
+     * When the budget is exhausted, the read buffer of a session keeps its
+     * current size until other sessions shrink their buffers or are closed.
+     * The current usage is available from
+     * {@link IoServiceStatistics#getReadBufferBudgetUsage()}.
+     *
+     * @param readBufferBudget The budget in bytes, or <tt>0</tt> for no limit
+     */
+    public final void setReadBufferBudget(long readBufferBudget) {
+        if (readBufferBudget < 0) {
+            throw new IllegalArgumentException("readBufferBudget: "
+                    + readBufferBudget + " (expected: 0+)");
+        }
+
+        this.readBufferBudget = readBufferBudget;
+    }
+
     /**
      * {@inheritDoc}
      */
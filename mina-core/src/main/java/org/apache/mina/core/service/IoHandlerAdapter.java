@@ -32,7 +32,7 @@ import org.slf4j.LoggerFactory;
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
-public class IoHandlerAdapter implements IoHandler {
+public class IoHandlerAdapter implements IoHandler, WritabilityListener {
     private static final Logger LOGGER = LoggerFactory.getLogger(IoHandlerAdapter.class);
 
     public void sessionCreated(IoSession session) throws Exception {
@@ -52,6 +52,11 @@ public class IoHandlerAdapter implements IoHandler {
         // Empty handler
     }
 
+    public void writabilityChanged(IoSession session, boolean writable)
+            throws Exception {
+        // Empty handler
+    }
+
     public void exceptionCaught(IoSession session, Throwable cause)
             throws Exception {
         if (LOGGER.isWarnEnabled()) {
@@ -0,0 +1,51 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.service;
+
+import org.apache.mina.core.session.AbstractIoSession;
+
+/**
+ * Decides which {@link IoProcessor} of a {@link SimpleIoProcessorPool} a
+ * newly created {@link AbstractIoSession} is assigned to.
+ * <p>
+ * The following strategies are provided :
+ * <ul>
+ * <li>{@link RoundRobinAssignmentStrategy}</li>
+ * <li>{@link LeastSessionsAssignmentStrategy}</li>
+ * <li>{@link LeastBytesAssignmentStrategy}</li>
+ * <li>{@link KeyHashAssignmentStrategy}</li>
+ * </ul>
+ * When no strategy is set, the pool assigns the session using its ID.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ * 
+ * @param <T> the type of the {@link AbstractIoSession} managed by the pool
+ */
+public interface IoProcessorAssignmentStrategy<T extends AbstractIoSession> {
+    /**
+     * Returns the index of the processor the given session will be
+     * assigned to.
+     * 
+     * @param pool the pool which contains the processors
+     * @param session the new session
+     * @return an index between <tt>0</tt> and <tt>pool.getSize() - 1</tt>
+     */
+    int select(SimpleIoProcessorPool<T> pool, T session);
+}
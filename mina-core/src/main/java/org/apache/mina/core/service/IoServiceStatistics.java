@@ -57,6 +57,9 @@ public class IoServiceStatistics {
 
     private final AtomicInteger scheduledWriteBytes = new AtomicInteger();
     private final AtomicInteger scheduledWriteMessages = new AtomicInteger();
+
+    /** The bytes the session read buffers have grown beyond their initial size */
+    private final AtomicLong readBufferBudgetUsage = new AtomicLong();
     
     private int throughputCalculationInterval = 3;
     
@@ -380,6 +383,67 @@ public class IoServiceStatistics {
         scheduledWriteMessages.decrementAndGet();
     }
 
+    /**
+     * Returns the number of bytes the read buffers of the sessions have
+     * grown beyond their initial size, all sessions combined.
+     *
+     * @see AbstractIoService#setReadBufferBudget(long)
+     */
+    public final long getReadBufferBudgetUsage() {
+        return readBufferBudgetUsage.get();
+    }
+
+    /**
+     * Returns the ratio of the read buffer budget currently in use, between
+     * <tt>0</tt> and <tt>1</tt>, or <tt>0</tt> if the budget is unlimited.
+     *
+     * @see AbstractIoService#setReadBufferBudget(long)
+     */
+    public final double getReadBufferBudgetUtilization() {
+        long budget = service.getReadBufferBudget();
+
+        if (budget == 0) {
+            return 0;
+        }
+
+        return (double) readBufferBudgetUsage.get() / budget;
+    }
+
+    /**
+     * Reserves <code>bytes</code> of the read buffer budget.
+     *
+     * @return <tt>false</tt> if the budget has not enough bytes left, in
+     *         which case nothing is reserved
+     */
+    public final boolean reserveReadBufferBudget(int bytes) {
+        long budget = service.getReadBufferBudget();
+
+        if (budget == 0) {
+            readBufferBudgetUsage.addAndGet(bytes);
+            return true;
+        }
+
+        for (;;) {
+            long usage = readBufferBudgetUsage.get();
+
+            if (usage + bytes > budget) {
+                return false;
+            }
+
+            if (readBufferBudgetUsage.compareAndSet(usage, usage + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back <code>bytes</code> previously reserved with
+     * {@link #reserveReadBufferBudget(int)}.
+     */
+    public final void releaseReadBufferBudget(int bytes) {
+        readBufferBudgetUsage.addAndGet(-bytes);
+    }
+
     /**
      * Sets the time at which throughtput counters where updated.
      */        
@@ -0,0 +1,72 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.service;
+
+import org.apache.mina.core.session.AbstractIoSession;
+
+/**
+ * An {@link IoProcessorAssignmentStrategy} which assigns the new sessions
+ * using the hash code of a user supplied key, so that all the sessions
+ * sharing the same key (e.g. the same remote host) are handled by the same
+ * processor.
+ * <p>
+ * The following example assigns the sessions by remote IP address :
+ * <pre><code>
+ * pool.setAssignmentStrategy(new KeyHashAssignmentStrategy&lt;NioSession&gt;() {
+ *     protected Object getKey(NioSession session) {
+ *         return ((InetSocketAddress) session.getRemoteAddress()).getAddress();
+ *     }
+ * });
+ * </code></pre>
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ * 
+ * @param <T> the type of the {@link AbstractIoSession} managed by the pool
+ */
+public abstract class KeyHashAssignmentStrategy<T extends AbstractIoSession>
+        implements IoProcessorAssignmentStrategy<T> {
+
+    /**
+     * {@inheritDoc}
+     */
+    public int select(SimpleIoProcessorPool<T> pool, T session) {
+        Object key = getKey(session);
+
+        if (key == null) {
+            return 0;
+        }
+
+        int h = key.hashCode();
+
+        // Spread the bits, as many hash codes only differ in the upper bits
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+
+        return (h & Integer.MAX_VALUE) % pool.getSize();
+    }
+
+    /**
+     * Returns the key used to assign the given session.
+     * 
+     * @param session the new session
+     * @return the key, <tt>null</tt> assigns the session to the first processor
+     */
+    protected abstract Object getKey(T session);
+}
@@ -0,0 +1,140 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.service;
+
+import org.apache.mina.core.session.AbstractIoSession;
+
+/**
+ * An {@link IoProcessorAssignmentStrategy} which assigns the new sessions to
+ * the processor which has read and written the smallest number of bytes per
+ * second since the last load computation (see
+ * {@link SimpleIoProcessorPool#getProcessedBytes(int)}).
+ * <p>
+ * The loads are only computed again when they are older than the given
+ * refresh interval.  In the meantime, each assignment adds the average load
+ * of a session to the load of the selected processor, so that the new
+ * sessions are spread over the processors instead of all being assigned to
+ * the least loaded one.  Among equally loaded processors, the one managing
+ * the smallest number of sessions is selected.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ * 
+ * @param <T> the type of the {@link AbstractIoSession} managed by the pool
+ */
+public class LeastBytesAssignmentStrategy<T extends AbstractIoSession>
+        implements IoProcessorAssignmentStrategy<T> {
+    /** The default interval between two load computations, in milliseconds */
+    public static final long DEFAULT_REFRESH_INTERVAL = 1000L;
+
+    private final long refreshInterval;
+
+    /** The bytes/second handled by each processor, plus the assigned sessions */
+    private double[] loads;
+
+    /** The bytes processed by each processor at the last load computation */
+    private long[] processedBytes;
+
+    /** The average bytes/second handled by a session */
+    private double sessionLoad;
+
+    private long lastRefreshTime;
+
+    /**
+     * Creates a new instance which computes the loads every second.
+     */
+    public LeastBytesAssignmentStrategy() {
+        this(DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param refreshInterval the interval between two load computations,
+     *            in milliseconds
+     */
+    public LeastBytesAssignmentStrategy(long refreshInterval) {
+        if (refreshInterval < 0) {
+            throw new IllegalArgumentException("refreshInterval: "
+                    + refreshInterval + " (expected: 0+)");
+        }
+
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized int select(SimpleIoProcessorPool<T> pool, T session) {
+        refreshLoads(pool);
+        int selected = 0;
+
+        for (int i = 1; i < loads.length; i++) {
+            if (loads[i] < loads[selected]
+                    || loads[i] == loads[selected]
+                    && pool.getManagedSessionCount(i) < pool.getManagedSessionCount(selected)) {
+                selected = i;
+            }
+        }
+
+        // Account for the new session until the next computation
+        loads[selected] += sessionLoad;
+
+        return selected;
+    }
+
+    private void refreshLoads(SimpleIoProcessorPool<T> pool) {
+        long currentTime = System.currentTimeMillis();
+        int size = pool.getSize();
+
+        if (loads == null || loads.length != size) {
+            // Nothing to compare with yet
+            loads = new double[size];
+            processedBytes = new long[size];
+            sessionLoad = 0;
+
+            for (int i = 0; i < size; i++) {
+                processedBytes[i] = pool.getProcessedBytes(i);
+            }
+
+            lastRefreshTime = currentTime;
+            return;
+        }
+
+        long interval = currentTime - lastRefreshTime;
+
+        if (interval < refreshInterval || interval <= 0) {
+            return;
+        }
+
+        double totalLoad = 0;
+        int totalSessions = 0;
+
+        for (int i = 0; i < size; i++) {
+            long bytes = pool.getProcessedBytes(i);
+            loads[i] = (bytes - processedBytes[i]) * 1000.0 / interval;
+            processedBytes[i] = bytes;
+            totalLoad += loads[i];
+            totalSessions += pool.getManagedSessionCount(i);
+        }
+
+        sessionLoad = totalLoad / Math.max(totalSessions, 1);
+        lastRefreshTime = currentTime;
+    }
+}
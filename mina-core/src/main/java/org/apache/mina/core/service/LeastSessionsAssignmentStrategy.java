@@ -0,0 +1,53 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.service;
+
+import org.apache.mina.core.session.AbstractIoSession;
+
+/**
+ * An {@link IoProcessorAssignmentStrategy} which assigns the new sessions to
+ * the processor managing the smallest number of sessions.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ * 
+ * @param <T> the type of the {@link AbstractIoSession} managed by the pool
+ */
+public class LeastSessionsAssignmentStrategy<T extends AbstractIoSession>
+        implements IoProcessorAssignmentStrategy<T> {
+
+    /**
+     * {@inheritDoc}
+     */
+    public int select(SimpleIoProcessorPool<T> pool, T session) {
+        int selected = 0;
+        int minSessions = Integer.MAX_VALUE;
+
+        for (int i = 0; i < pool.getSize(); i++) {
+            int sessions = pool.getManagedSessionCount(i);
+
+            if (sessions < minSessions) {
+                minSessions = sessions;
+                selected = i;
+            }
+        }
+
+        return selected;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.session.AbstractIoSession;
+
+/**
+ * An {@link IoProcessorAssignmentStrategy} which assigns the new sessions to
+ * each processor in turn.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ * 
+ * @param <T> the type of the {@link AbstractIoSession} managed by the pool
+ */
+public class RoundRobinAssignmentStrategy<T extends AbstractIoSession>
+        implements IoProcessorAssignmentStrategy<T> {
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * {@inheritDoc}
+     */
+    public int select(SimpleIoProcessorPool<T> pool, T session) {
+        // Mask the sign bit, as the counter will overflow eventually
+        return (next.getAndIncrement() & Integer.MAX_VALUE) % pool.getSize();
+    }
+}
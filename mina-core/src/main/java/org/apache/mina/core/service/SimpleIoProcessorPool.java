@@ -20,14 +20,22 @@
 package org.apache.mina.core.service;
 
 import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.apache.mina.core.RuntimeIoException;
+import org.apache.mina.core.future.CloseFuture;
+import org.apache.mina.core.future.IoFutureListener;
+import org.apache.mina.core.polling.AbstractPollingIoProcessor;
+import org.apache.mina.core.polling.SessionMigrationFuture;
 import org.apache.mina.core.session.AbstractIoSession;
 import org.apache.mina.core.session.AttributeKey;
 import org.apache.mina.core.session.IoSession;
+import org.apache.mina.util.ConcurrentHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,6 +75,15 @@ import org.slf4j.LoggerFactory;
  * acceptor.dispose();
  * pool.dispose();
  * </code></pre>
+ * <p>
+ * By default, a session is assigned to a processor using its ID. Another
+ * {@link IoProcessorAssignmentStrategy} can be set to take the load of each
+ * processor into account, and the idle sessions of
+ * {@link AbstractPollingIoProcessor#isMigratable() migratable} processors
+ * can be moved from a processor to another with {@link #migrate(AbstractIoSession, int)}
+ * or {@link #rebalance()}.  The pool only keeps track of the sessions of
+ * each processor when a strategy is set, or when it is asked to with
+ * {@link #setSessionTracking(boolean)}.
  * 
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  * 
@@ -101,6 +118,26 @@ public class SimpleIoProcessorPool<T extends AbstractIoSession> implements IoPro
     /** A flag set to true if all the IoProcessor contained in the pool have been disposed */
     private volatile boolean disposed;
 
+    /** The sessions managed by each processor */
+    private final Set<T>[] managedSessions;
+
+    /** The strategy used to assign a new session, null to use the session ID */
+    private volatile IoProcessorAssignmentStrategy<T> assignmentStrategy;
+
+    /** Tells if the sessions managed by each processor are tracked */
+    private volatile boolean sessionTracking;
+
+    /** A listener which forgets the sessions when they are closed */
+    private final IoFutureListener<CloseFuture> sessionCloseListener = new IoFutureListener<CloseFuture>() {
+        public void operationComplete(CloseFuture future) {
+            IoSession session = future.getSession();
+
+            for (Set<T> sessions : managedSessions) {
+                sessions.remove(session);
+            }
+        }
+    };
+
     /**
      * Creates a new instance of SimpleIoProcessorPool with a default
      * size of NbCPUs +1.
@@ -160,6 +197,11 @@ public class SimpleIoProcessorPool<T extends AbstractIoSession> implements IoPro
         }
 
         pool = new IoProcessor[size];
+        managedSessions = new Set[size];
+
+        for (int i = 0; i < size; i++) {
+            managedSessions[i] = new ConcurrentHashSet<T>();
+        }
 
         boolean success = false;
         Constructor<? extends IoProcessor<T>> processorConstructor = null;
@@ -235,7 +277,14 @@ public class SimpleIoProcessorPool<T extends AbstractIoSession> implements IoPro
      * {@inheritDoc}
      */
     public final void add(T session) {
-        getProcessor(session).add(session);
+        IoProcessor<T> processor = getProcessor(session);
+
+        if (sessionTracking) {
+            managedSessions[indexOf(processor)].add(session);
+            session.getCloseFuture().addListener(sessionCloseListener);
+        }
+
+        processor.add(session);
     }
 
     /**
@@ -312,6 +361,271 @@ public class SimpleIoProcessorPool<T extends AbstractIoSession> implements IoPro
         disposed = true;
     }
 
+    /**
+     * Returns the number of {@link IoProcessor}s in this pool.
+     */
+    public int getSize() {
+        return pool.length;
+    }
+
+    /**
+     * Returns the sessions currently assigned to the processor at the given
+     * index.  The set is empty unless the sessions are tracked (see
+     * {@link #setSessionTracking(boolean)}).
+     * 
+     * @param index the index of the processor in the pool
+     * @return a read-only view of the sessions
+     */
+    public Set<T> getManagedSessions(int index) {
+        checkIndex(index);
+        return Collections.unmodifiableSet(managedSessions[index]);
+    }
+
+    /**
+     * Returns the number of sessions currently assigned to the processor at
+     * the given index, or <tt>0</tt> unless the sessions are tracked (see
+     * {@link #setSessionTracking(boolean)}).
+     * 
+     * @param index the index of the processor in the pool
+     */
+    public int getManagedSessionCount(int index) {
+        checkIndex(index);
+        return managedSessions[index].size();
+    }
+
+    /**
+     * Returns the number of bytes read and written by the processor at the
+     * given index since it has been created, or <tt>0</tt> if it is not an
+     * {@link AbstractPollingIoProcessor}.
+     * 
+     * @param index the index of the processor in the pool
+     */
+    public long getProcessedBytes(int index) {
+        checkIndex(index);
+        IoProcessor<T> processor = pool[index];
+
+        if (processor instanceof AbstractPollingIoProcessor) {
+            return ((AbstractPollingIoProcessor<?>) processor).getProcessedBytes();
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns the strategy used to assign the new sessions to a processor,
+     * or <tt>null</tt> if the sessions are assigned using their ID.
+     */
+    public IoProcessorAssignmentStrategy<T> getAssignmentStrategy() {
+        return assignmentStrategy;
+    }
+
+    /**
+     * Sets the strategy used to assign the new sessions to a processor.
+     * The sessions already assigned are not moved.  Setting a strategy
+     * enables the {@link #setSessionTracking(boolean) session tracking}, as
+     * the strategies may need the number of sessions of each processor.
+     * 
+     * @param assignmentStrategy the strategy, or <tt>null</tt> to assign the
+     *            sessions using their ID
+     */
+    public void setAssignmentStrategy(IoProcessorAssignmentStrategy<T> assignmentStrategy) {
+        if (assignmentStrategy != null) {
+            sessionTracking = true;
+        }
+
+        this.assignmentStrategy = assignmentStrategy;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the pool keeps track of the sessions managed
+     * by each processor.
+     */
+    public boolean isSessionTracking() {
+        return sessionTracking;
+    }
+
+    /**
+     * Sets whether the pool keeps track of the sessions managed by each
+     * processor, which {@link #getManagedSessions(int)} and
+     * {@link #rebalance()} need.  Only the sessions added afterward are
+     * tracked.  The tracking is disabled by default, unless an
+     * {@link #setAssignmentStrategy(IoProcessorAssignmentStrategy) assignment strategy}
+     * is set.
+     * 
+     * @param sessionTracking <tt>true</tt> to track the sessions
+     */
+    public void setSessionTracking(boolean sessionTracking) {
+        this.sessionTracking = sessionTracking;
+
+        if (!sessionTracking) {
+            for (Set<T> sessions : managedSessions) {
+                sessions.clear();
+            }
+        }
+    }
+
+    /**
+     * Moves a session to the processor at the given index, without closing
+     * it. The session is only moved if it has nothing to write when its
+     * current processor handles the request.  Both processors must be
+     * {@link AbstractPollingIoProcessor#isMigratable() migratable}
+     * {@link AbstractPollingIoProcessor}s.
+     * 
+     * @param session the session to move
+     * @param index the index of the new processor in the pool
+     * @return a future notified once the session has been moved, or when
+     *         the migration has been rejected
+     * @throws UnsupportedOperationException if the processors are not
+     *             migratable {@link AbstractPollingIoProcessor}s
+     */
+    @SuppressWarnings("unchecked")
+    public SessionMigrationFuture migrate(final T session, final int index) {
+        checkIndex(index);
+
+        if (disposing) {
+            throw new IllegalStateException("A disposed processor cannot be accessed.");
+        }
+
+        IoProcessor<T> source = (IoProcessor<T>) session.getAttribute(PROCESSOR);
+
+        if (source == null) {
+            throw new IllegalArgumentException("session is not managed by this pool: " + session);
+        }
+
+        final IoProcessor<T> target = pool[index];
+
+        if (!isMigratable(source) || !isMigratable(target)) {
+            throw new UnsupportedOperationException(
+                    "Only the sessions of a migratable AbstractPollingIoProcessor can be migrated.");
+        }
+
+        // Notified once the managed sessions have been updated
+        final SessionMigrationFuture future = new SessionMigrationFuture(session);
+
+        ((AbstractPollingIoProcessor<T>) source).migrate(session,
+                (AbstractPollingIoProcessor<T>) target).addListener(
+                new IoFutureListener<SessionMigrationFuture>() {
+            public void operationComplete(SessionMigrationFuture f) {
+                if (!f.isMigrated()) {
+                    future.setMigrated(false);
+                    return;
+                }
+
+                session.setAttribute(PROCESSOR, target);
+
+                if (sessionTracking) {
+                    for (Set<T> sessions : managedSessions) {
+                        sessions.remove(session);
+                    }
+
+                    managedSessions[index].add(session);
+
+                    if (!session.isConnected()) {
+                        // Closed in the meantime
+                        managedSessions[index].remove(session);
+                    }
+                }
+
+                future.setMigrated(true);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Moves idle sessions from the processors managing the most sessions
+     * to the ones managing the fewest, until all of them manage about the
+     * same number of sessions.  The sessions are moved asynchronously, and
+     * the sessions which are not idle anymore when their processor handles
+     * the request stay where they are.  The processors which are not
+     * {@link AbstractPollingIoProcessor#isMigratable() migratable} are
+     * skipped.
+     * 
+     * @return the number of requested migrations
+     * @throws IllegalStateException if the sessions are not tracked (see
+     *             {@link #setSessionTracking(boolean)})
+     */
+    public int rebalance() {
+        if (!sessionTracking) {
+            throw new IllegalStateException(
+                    "The sessions must be tracked to be rebalanced.");
+        }
+
+        boolean[] migratable = new boolean[pool.length];
+        int[] counts = new int[pool.length];
+        int total = 0;
+
+        for (int i = 0; i < pool.length; i++) {
+            migratable[i] = isMigratable(pool[i]);
+            counts[i] = managedSessions[i].size();
+            total += counts[i];
+        }
+
+        // The maximum number of sessions a processor should manage
+        int maxCount = (total + pool.length - 1) / pool.length;
+        int requested = 0;
+
+        for (int src = 0; src < pool.length; src++) {
+            if (!migratable[src]) {
+                continue;
+            }
+
+            Iterator<T> candidates = managedSessions[src].iterator();
+
+            while (counts[src] > maxCount && candidates.hasNext()) {
+                int dst = -1;
+
+                for (int i = 0; i < pool.length; i++) {
+                    if (migratable[i] && (dst < 0 || counts[i] < counts[dst])) {
+                        dst = i;
+                    }
+                }
+
+                if (counts[dst] + 1 > maxCount) {
+                    break;
+                }
+
+                T session = candidates.next();
+
+                if (session.getCurrentWriteRequest() != null
+                        || session.getScheduledWriteMessages() > 0) {
+                    // Not idle
+                    continue;
+                }
+
+                migrate(session, dst);
+                counts[src]--;
+                counts[dst]++;
+                requested++;
+            }
+        }
+
+        return requested;
+    }
+
+    private static boolean isMigratable(IoProcessor<?> processor) {
+        return (processor instanceof AbstractPollingIoProcessor)
+                && ((AbstractPollingIoProcessor<?>) processor).isMigratable();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= pool.length) {
+            throw new IllegalArgumentException("index: " + index
+                    + " (expected: 0-" + (pool.length - 1) + ")");
+        }
+    }
+
+    private int indexOf(IoProcessor<T> processor) {
+        for (int i = 0; i < pool.length; i++) {
+            if (pool[i] == processor) {
+                return i;
+            }
+        }
+
+        throw new IllegalStateException("Unknown processor: " + processor);
+    }
+
     /**
      * Find the processor associated to a session. If it hasen't be stored into
      * the session's attributes, pick a new processor and stores it.
@@ -329,14 +643,28 @@ public class SimpleIoProcessorPool<T extends AbstractIoSession> implements IoPro
     }
 
     /**
-     * Get a new Processor in the pool, using a round-robin algorithm.
+     * Get a new Processor in the pool, using the assignment strategy if any,
+     * or the session ID.
      */
     private IoProcessor<T> nextProcessor(T session) {
         if (disposed) {
             throw new IllegalStateException(
                     "A disposed processor cannot be accessed.");
         }
-        
-        return pool[Math.abs((int)session.getId()) % pool.length];
+
+        IoProcessorAssignmentStrategy<T> strategy = assignmentStrategy;
+
+        if (strategy == null) {
+            return pool[Math.abs((int)session.getId()) % pool.length];
+        }
+
+        int index = strategy.select(this, session);
+
+        if (index < 0 || index >= pool.length) {
+            throw new IllegalStateException(strategy.getClass().getName()
+                    + " selected an invalid processor index: " + index);
+        }
+
+        return pool[index];
     }
 }
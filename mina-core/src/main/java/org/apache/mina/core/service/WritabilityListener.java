@@ -0,0 +1,48 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.service;
+
+import org.apache.mina.core.session.IoSession;
+
+/**
+ * An {@link IoHandler} which is notified when the writability of a session
+ * changes, i.e. when the number of bytes scheduled for write crosses the
+ * high or the low watermark of the session (see
+ * {@link org.apache.mina.core.session.IoSessionConfig#setWriteHighWatermark(int)}).
+ * <p>
+ * The <tt>writabilityChanged</tt> event is not part of {@link IoHandler} :
+ * it is only delivered to the handlers which implement this interface, and
+ * only by a {@link org.apache.mina.core.filterchain.DefaultIoFilterChain}.
+ * {@link IoHandlerAdapter} implements this interface with an empty method.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface WritabilityListener {
+    /**
+     * Invoked when the writability of the session changes.  Producers
+     * should stop writing when the session is not writable anymore and
+     * resume when it becomes writable again.
+     *
+     * @param session the session whose writability changed
+     * @param writable <tt>true</tt> if the session became writable again,
+     *                 <tt>false</tt> if it exceeded its high watermark
+     */
+    void writabilityChanged(IoSession session, boolean writable) throws Exception;
+}
@@ -35,6 +35,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.file.DefaultFileRegion;
 import org.apache.mina.core.file.FilenameFileRegion;
+import org.apache.mina.core.filterchain.DefaultIoFilterChain;
 import org.apache.mina.core.filterchain.IoFilterChain;
 import org.apache.mina.core.future.CloseFuture;
 import org.apache.mina.core.future.DefaultCloseFuture;
@@ -47,6 +48,7 @@ import org.apache.mina.core.service.AbstractIoService;
 import org.apache.mina.core.service.IoAcceptor;
 import org.apache.mina.core.service.IoProcessor;
 import org.apache.mina.core.service.IoService;
+import org.apache.mina.core.service.IoServiceStatistics;
 import org.apache.mina.core.service.TransportMetadata;
 import org.apache.mina.core.write.DefaultWriteRequest;
 import org.apache.mina.core.write.WriteException;
@@ -148,6 +150,27 @@ public abstract class AbstractIoSession implements IoSession {
 
     private boolean deferDecreaseReadBuffer = true;
 
+    /**
+     * Tells if the scheduled write bytes exceeded the high watermark.  Only
+     * modified by the I/O processor, in {@link #updateWritability()}.
+     */
+    private volatile boolean unwritable;
+
+    /**
+     * Tells if the reads have been suspended because of the watermarks.
+     * Only accessed by the I/O processor, in {@link #updateWritability()}.
+     */
+    private volatile boolean readSuspendedByWatermark;
+
+    /** The moving average of the read sizes, -1 until the first read */
+    private int readBytesAverage = -1;
+
+    /** The read buffer size the budget is computed from */
+    private int initialReadBufferSize;
+
+    /** The bytes of the service read buffer budget used by this session */
+    private int readBufferBudgetUsage;
+
     /**
      * TODO Add method documentation
      */
@@ -469,6 +492,48 @@ public abstract class AbstractIoSession implements IoSession {
         return writeFuture;
     }
 
+    /**
+     * Writes the specified <code>message</code> to remote peer without
+     * creating a {@link WriteFuture}.  This operation is asynchronous, like
+     * {@link #write(Object)}, and <tt>IoHandler.messageSent()</tt> is still
+     * invoked when the message is actually sent, but nobody can wait for or
+     * listen to its completion : a failure is only reported through
+     * <tt>IoHandler.exceptionCaught()</tt>, and the message is silently
+     * discarded if the session is already closing.
+     * <p>
+     * Use this method for fire-and-forget writes to avoid allocating and
+     * notifying a future per message.  The requests written this way carry
+     * {@link DefaultWriteRequest#UNUSED_FUTURE}.  This method is not part of
+     * {@link IoSession}; when only an {@link IoSession} reference is at hand,
+     * use {@link org.apache.mina.core.IoUtil#writeAndForget(IoSession, Object)}.
+     */
+    public void writeAndForget(Object message) {
+        if (message == null) {
+            throw new IllegalArgumentException("message");
+        }
+
+        // Nobody would be notified of the failure
+        if (isClosing() || !isConnected()) {
+            return;
+        }
+
+        if (message instanceof IoBuffer
+                && !((IoBuffer) message).hasRemaining()) {
+            // Nothing to write : probably an error in the user code
+            throw new IllegalArgumentException(
+            "message is empty. Forgot to call flip()?");
+        }
+
+        if (message instanceof FileChannel || message instanceof File) {
+            // We need a future to close the file once it has been written
+            write(message);
+            return;
+        }
+
+        // No future : the request uses the shared bogus one
+        getFilterChain().fireFilterWrite(new DefaultWriteRequest(message));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -644,6 +709,36 @@ public abstract class AbstractIoSession implements IoSession {
     public boolean isWriteSuspended() {
         return writeSuspended; 
     }
+
+    /**
+     * Tells if the producers can write to this session without making its
+     * write queue grow unbounded.  The session becomes not writable when the
+     * number of bytes scheduled for write exceeds the
+     * {@link IoSessionConfig#getWriteHighWatermark() high watermark}, and
+     * writable again when it falls to the
+     * {@link IoSessionConfig#getWriteLowWatermark() low watermark}.  Reads
+     * are suspended while the session is not writable, and each change fires
+     * a <tt>writabilityChanged</tt> event to the
+     * {@link org.apache.mina.core.filterchain.WritabilityFilter}s of the chain
+     * and to the handler if it is a
+     * {@link org.apache.mina.core.service.WritabilityListener}.
+     * <p>
+     * The writability is updated by the
+     * {@link org.apache.mina.core.polling.AbstractPollingIoProcessor} of the
+     * session after each flush, so the events are always fired from the I/O
+     * processor thread and the writability may lag behind the scheduled
+     * write bytes until then.  The sessions of the other I/O processors, like
+     * the sessions created by a connectionless acceptor, are always writable.
+     * <p>
+     * Writing to a session which is not writable still succeeds; the
+     * watermarks only give the producers a way to throttle themselves.
+     *
+     * @return <tt>true</tt> if the session is writable, which is always the
+     *         case if the watermarks are disabled
+     */
+    public final boolean isWritable() {
+        return !unwritable;
+    }
     
     /**
      * {@inheritDoc}
@@ -812,12 +907,8 @@ public abstract class AbstractIoSession implements IoSession {
      */
     public final void increaseWrittenMessages(
             WriteRequest request, long currentTime) {
-        Object message = request.getMessage();
-        if (message instanceof IoBuffer) {
-            IoBuffer b = (IoBuffer) message;
-            if (b.hasRemaining()) {
-                return;
-            }
+        if (!isMessageEnd(request)) {
+            return;
         }
 
         writtenMessages++;
@@ -839,6 +930,58 @@ public abstract class AbstractIoSession implements IoSession {
         }
     }
 
+    /**
+     * Compares the scheduled write bytes with the watermarks and changes the
+     * writability of the session accordingly, firing a
+     * <tt>writabilityChanged</tt> event if it changed.  This method is called
+     * by the I/O processor after each flush of the session, and must not be
+     * called concurrently.
+     */
+    public final void updateWritability() {
+        int highWatermark = getConfig().getWriteHighWatermark();
+
+        if (!unwritable) {
+            if ((highWatermark <= 0)
+                    || (scheduledWriteBytes.get() <= highWatermark)) {
+                return;
+            }
+
+            unwritable = true;
+
+            if (!isReadSuspended()) {
+                readSuspendedByWatermark = true;
+                suspendRead();
+            }
+
+            fireWritabilityChanged(false);
+        } else {
+            int lowWatermark = Math.min(getConfig().getWriteLowWatermark(),
+                    highWatermark);
+
+            if ((highWatermark > 0)
+                    && (scheduledWriteBytes.get() > lowWatermark)) {
+                return;
+            }
+
+            unwritable = false;
+
+            if (readSuspendedByWatermark) {
+                readSuspendedByWatermark = false;
+                resumeRead();
+            }
+
+            fireWritabilityChanged(true);
+        }
+    }
+
+    private void fireWritabilityChanged(boolean writable) {
+        IoFilterChain filterChain = getFilterChain();
+
+        if (!isClosing() && (filterChain instanceof DefaultIoFilterChain)) {
+            ((DefaultIoFilterChain) filterChain).fireWritabilityChanged(writable);
+        }
+    }
+
     /**
      * TODO Add method documentation
      */
@@ -860,22 +1003,77 @@ public abstract class AbstractIoSession implements IoSession {
     }
 
     /**
-     * TODO Add method documentation
+     * Adds the given request to the number of bytes and messages scheduled
+     * for write, when it is queued.  The remaining bytes of a buffer are
+     * added to the scheduled write bytes.  The scheduled write messages are
+     * increased only when the request ends a message written by the
+     * application : a message which is not a buffer, the empty buffer ending
+     * an encoded message, or a buffer replacing a message which is not a
+     * buffer (e.g. the single buffer produced by a coalescing
+     * {@link org.apache.mina.filter.codec.ProtocolCodecFilter}), which is
+     * counted as the end of that message.
+     *
+     * @param request the write request being queued
+     * @see #decreaseScheduledBytesAndMessages(WriteRequest)
+     */
+    public final void increaseScheduledBytesAndMessages(WriteRequest request) {
+        Object message = request.getMessage();
+        if (message instanceof IoBuffer) {
+            IoBuffer b = (IoBuffer) message;
+            if (b.hasRemaining()) {
+                increaseScheduledWriteBytes(b.remaining());
+            }
+        }
+
+        if (isMessageEnd(request)) {
+            increaseScheduledWriteMessages();
+        }
+    }
+
+    /**
+     * Removes the given request from the number of bytes and messages
+     * scheduled for write, when it is discarded without having been written.
+     * The messages are counted like
+     * {@link #increaseScheduledBytesAndMessages(WriteRequest)} does.
+     *
+     * @param request the discarded write request
      */
     public final void decreaseScheduledBytesAndMessages(WriteRequest request) {
         Object message = request.getMessage();
         if (message instanceof IoBuffer) {
             IoBuffer b = (IoBuffer) message;
             if (b.hasRemaining()) {
-                increaseScheduledWriteBytes(-((IoBuffer) message).remaining());
-            } else {
-                decreaseScheduledWriteMessages();
+                increaseScheduledWriteBytes(-b.remaining());
             }
-        } else {
+        }
+
+        if (isMessageEnd(request)) {
             decreaseScheduledWriteMessages();
         }
     }
 
+    /**
+     * Tells if the given request completes a message written by the
+     * application, so that it has to be counted in the message statistics.
+     * This is the case of any message which is not a buffer, of the
+     * zero-sized buffer used as an internal message delimiter, and of a
+     * buffer which replaces a message that was not a buffer, as produced by
+     * a {@link org.apache.mina.filter.codec.ProtocolCodecFilter} coalescing
+     * the encoder output.
+     */
+    private static boolean isMessageEnd(WriteRequest request) {
+        Object message = request.getMessage();
+
+        if (!(message instanceof IoBuffer) || !((IoBuffer) message).hasRemaining()) {
+            return true;
+        }
+
+        WriteRequest originalRequest = request.getOriginalRequest();
+
+        return (originalRequest != request)
+                && !(originalRequest.getMessage() instanceof IoBuffer);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -925,6 +1123,93 @@ public abstract class AbstractIoSession implements IoSession {
         deferDecreaseReadBuffer = true;
     }
 
+    /**
+     * Adapts the read buffer size to the number of bytes read by the last
+     * read operation.  The size follows a moving average of the read sizes
+     * with some hysteresis, so that bursty sessions don't oscillate :
+     * <ul>
+     *   <li>it is doubled when a read fills the buffer and the average is
+     *   at least three quarters of the buffer size,</li>
+     *   <li>it is halved when the average falls below a quarter of the
+     *   buffer size.</li>
+     * </ul>
+     * The growth beyond the initial size is taken from the read buffer
+     * budget of the service (see {@link AbstractIoService#setReadBufferBudget(long)}) :
+     * the buffer does not grow when the budget is exhausted.
+     *
+     * @param readBytes The number of bytes read by the last read operation
+     */
+    public final void updateReadBufferSize(int readBytes) {
+        IoSessionConfig config = getConfig();
+        int size = config.getReadBufferSize();
+
+        if (readBytesAverage < 0) {
+            // Start in the middle of the hysteresis band
+            readBytesAverage = size >>> 1;
+            initialReadBufferSize = size;
+        }
+
+        // Exponential moving average, weighting the last read by 1/4
+        readBytesAverage += (readBytes - readBytesAverage) >> 2;
+
+        if ((readBytes >= size)
+                && (readBytesAverage >= size - (size >>> 2))) {
+            int newSize = Math.min(size << 1, config.getMaxReadBufferSize());
+
+            if ((newSize > size) && reserveReadBufferBudget(newSize)) {
+                config.setReadBufferSize(newSize);
+            }
+        } else if ((readBytesAverage < size >>> 2)
+                && (size > config.getMinReadBufferSize())) {
+            int newSize = Math.max(size >>> 1, config.getMinReadBufferSize());
+            reserveReadBufferBudget(newSize);
+            config.setReadBufferSize(newSize);
+        }
+    }
+
+    /**
+     * Updates the share of the service read buffer budget used by this
+     * session for a new read buffer size.
+     *
+     * @return <tt>false</tt> if the budget is exhausted
+     */
+    private boolean reserveReadBufferBudget(int newSize) {
+        int usage = Math.max(0, newSize - initialReadBufferSize);
+        int delta = usage - readBufferBudgetUsage;
+
+        if (delta == 0 || !(getService() instanceof AbstractIoService)) {
+            return true;
+        }
+
+        IoServiceStatistics stats = ((AbstractIoService) getService()).getStatistics();
+
+        if (delta > 0) {
+            if (!stats.reserveReadBufferBudget(delta)) {
+                return false;
+            }
+        } else {
+            stats.releaseReadBufferBudget(-delta);
+        }
+
+        readBufferBudgetUsage = usage;
+        return true;
+    }
+
+    /**
+     * Gives back the share of the service read buffer budget used by this
+     * session.  This method is called when the session is destroyed.
+     */
+    public final void releaseReadBufferBudget() {
+        if (readBufferBudgetUsage > 0) {
+            if (getService() instanceof AbstractIoService) {
+                ((AbstractIoService) getService()).getStatistics()
+                        .releaseReadBufferBudget(readBufferBudgetUsage);
+            }
+
+            readBufferBudgetUsage = 0;
+        }
+    }
+
     /**
      * TODO Add method documentation
      */
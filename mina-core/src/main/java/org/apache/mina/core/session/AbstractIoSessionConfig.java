@@ -37,6 +37,12 @@ public abstract class AbstractIoSessionConfig implements IoSessionConfig {
     private int writeTimeout = 60;
     private boolean useReadOperation;
     private int throughputCalculationInterval = 3;
+    private int maxGatheringWriteCount = 1;
+    private int writeHighWatermark;
+    private int writeLowWatermark;
+
+    /** The entry of the session using this configuration in its idle timing wheel */
+    private volatile IdleTimingWheel.Entry idleTimingEntry;
 
     protected AbstractIoSessionConfig() {
         // Do nothing
@@ -59,6 +65,9 @@ public abstract class AbstractIoSessionConfig implements IoSessionConfig {
         setWriteTimeout(config.getWriteTimeout());
         setUseReadOperation(config.isUseReadOperation());
         setThroughputCalculationInterval(config.getThroughputCalculationInterval());
+        setMaxGatheringWriteCount(config.getMaxGatheringWriteCount());
+        setWriteHighWatermark(config.getWriteHighWatermark());
+        setWriteLowWatermark(config.getWriteLowWatermark());
 
         doSetAll(config);
     }
@@ -172,6 +181,8 @@ public abstract class AbstractIoSessionConfig implements IoSessionConfig {
         } else {
             throw new IllegalArgumentException("Unknown idle status: " + status);
         }
+
+        rescheduleIdleCheck();
     }
     
     /**
@@ -260,6 +271,7 @@ public abstract class AbstractIoSessionConfig implements IoSessionConfig {
                     + writeTimeout);
         }
         this.writeTimeout = writeTimeout;
+        rescheduleIdleCheck();
     }
 
     /**
@@ -301,4 +313,86 @@ public abstract class AbstractIoSessionConfig implements IoSessionConfig {
     public long getThroughputCalculationIntervalInMillis() {
         return throughputCalculationInterval * 1000L;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getMaxGatheringWriteCount() {
+        return maxGatheringWriteCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setMaxGatheringWriteCount(int maxGatheringWriteCount) {
+        if (maxGatheringWriteCount <= 0) {
+            throw new IllegalArgumentException("maxGatheringWriteCount: "
+                    + maxGatheringWriteCount + " (expected: 1+)");
+        }
+
+        this.maxGatheringWriteCount = maxGatheringWriteCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getWriteHighWatermark() {
+        return writeHighWatermark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setWriteHighWatermark(int writeHighWatermark) {
+        if (writeHighWatermark < 0) {
+            throw new IllegalArgumentException("writeHighWatermark: "
+                    + writeHighWatermark + " (expected: 0+)");
+        }
+
+        this.writeHighWatermark = writeHighWatermark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getWriteLowWatermark() {
+        return writeLowWatermark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setWriteLowWatermark(int writeLowWatermark) {
+        if (writeLowWatermark < 0) {
+            throw new IllegalArgumentException("writeLowWatermark: "
+                    + writeLowWatermark + " (expected: 0+)");
+        }
+
+        this.writeLowWatermark = writeLowWatermark;
+    }
+
+    /**
+     * Sets the entry to reschedule when the idle times or the write timeout
+     * change.
+     */
+    synchronized void setIdleTimingEntry(IdleTimingWheel.Entry entry) {
+        idleTimingEntry = entry;
+    }
+
+    /**
+     * Forgets the given entry, unless another one has been set since.
+     */
+    synchronized void clearIdleTimingEntry(IdleTimingWheel.Entry entry) {
+        if (idleTimingEntry == entry) {
+            idleTimingEntry = null;
+        }
+    }
+
+    private void rescheduleIdleCheck() {
+        IdleTimingWheel.Entry entry = idleTimingEntry;
+
+        if (entry != null) {
+            entry.reschedule();
+        }
+    }
 }
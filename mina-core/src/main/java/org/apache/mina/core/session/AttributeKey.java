@@ -21,6 +21,7 @@ package org.apache.mina.core.session;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A key that makes its parent {@link Map} or session attribute to search
@@ -32,17 +33,38 @@ public final class AttributeKey implements Serializable {
     /** The serial version UID */
     private static final long serialVersionUID = -583377473376683096L;
     
+    /** The number of keys created so far */
+    private static final AtomicInteger KEY_COUNT = new AtomicInteger();
+
     /** The attribute's name */
     private final String name;
 
+    /** The hash code, derived from the creation order of the key */
+    private final int hashCode;
+
     /**
      * Creates a new instance. It's built from :
      * - the class' name
      * - the attribute's name
-     * - this attribute hashCode
+     * - this attribute identity hashCode
      */
     public AttributeKey(Class<?> source, String name) {
-        this.name = source.getName() + '.' + name + '@' + Integer.toHexString(this.hashCode());
+        this.name = source.getName() + '.' + name + '@' + Integer.toHexString(System.identityHashCode(this));
+
+        // Multiplying the key index by an odd constant gives distinct low
+        // bits to consecutive keys, so the keys used by a session rarely
+        // collide in the attribute map.
+        this.hashCode = KEY_COUNT.getAndIncrement() * 0x9E3779B9;
+    }
+
+    /**
+     * Returns a hash code computed once for all when the key is created.
+     * As a key is only equal to itself, it is consistent with
+     * {@link #equals(Object)}.
+     */
+    @Override
+    public int hashCode() {
+        return hashCode;
     }
 
     /**
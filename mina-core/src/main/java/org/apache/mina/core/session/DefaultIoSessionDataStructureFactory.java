@@ -19,21 +19,19 @@
  */
 package org.apache.mina.core.session;
 
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.mina.core.write.WriteRequest;
 import org.apache.mina.core.write.WriteRequestQueue;
 
 /**
  * The default {@link IoSessionDataStructureFactory} implementation
- * that creates a new {@link HashMap}-based {@link IoSessionAttributeMap}
- * instance and a new synchronized {@link ConcurrentLinkedQueue} instance per
+ * that creates a new compact {@link IoSessionAttributeMap} instance and a
+ * new synchronized {@link ConcurrentLinkedQueue} instance per
  * {@link IoSession}.
  * 
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
@@ -51,9 +49,29 @@ public class DefaultIoSessionDataStructureFactory implements
         return new DefaultWriteRequestQueue();
     }
 
+    /**
+     * An open addressing hash table storing the keys and the values in a
+     * single small array.  The reads are lock free, the updates are
+     * serialized.  The {@link AttributeKey}s have a precomputed hash code
+     * spreading them well, so the lookups of the built-in filters neither
+     * hash nor compare anything but references.
+     * <p>
+     * A removed attribute only clears its value : its key keeps its slot
+     * until the table is rebuilt, which never breaks a probe sequence
+     * followed by a concurrent reader.
+     */
     private static class DefaultIoSessionAttributeMap implements IoSessionAttributeMap {
-        private final Map<Object, Object> attributes =
-            new ConcurrentHashMap<Object, Object>(4);
+        /** The number of slots of a new table, a power of two */
+        private static final int INITIAL_CAPACITY = 8;
+
+        /**
+         * The keys at even indexes, each followed by its value.  Created
+         * on the first update.
+         */
+        private volatile AtomicReferenceArray<Object> table;
+
+        /** The number of slots holding a key, alive or not */
+        private int usedSlots;
 
         /**
          * Default constructor
@@ -67,7 +85,7 @@ public class DefaultIoSessionDataStructureFactory implements
                 throw new IllegalArgumentException("key");
             }
 
-            Object answer = attributes.get(key);
+            Object answer = get(key);
             if (answer == null) {
                 return defaultValue;
             }
@@ -80,11 +98,13 @@ public class DefaultIoSessionDataStructureFactory implements
                 throw new IllegalArgumentException("key");
             }
 
-            if (value == null) {
-                return attributes.remove(key);
+            synchronized (this) {
+                if (value == null) {
+                    return remove(key);
+                }
+
+                return put(key, value);
             }
-            
-            return attributes.put(key, value);
         }
 
         public Object setAttributeIfAbsent(IoSession session, Object key, Object value) {
@@ -96,14 +116,14 @@ public class DefaultIoSessionDataStructureFactory implements
                 return null;
             }
 
-            Object oldValue;
-            synchronized (attributes) {
-                oldValue = attributes.get(key);
+            synchronized (this) {
+                Object oldValue = get(key);
                 if (oldValue == null) {
-                    attributes.put(key, value);
+                    put(key, value);
                 }
+
+                return oldValue;
             }
-            return oldValue;
         }
 
         public Object removeAttribute(IoSession session, Object key) {
@@ -111,7 +131,9 @@ public class DefaultIoSessionDataStructureFactory implements
                 throw new IllegalArgumentException("key");
             }
 
-            return attributes.remove(key);
+            synchronized (this) {
+                return remove(key);
+            }
         }
 
         public boolean removeAttribute(IoSession session, Object key, Object value) {
@@ -123,9 +145,9 @@ public class DefaultIoSessionDataStructureFactory implements
                 return false;
             }
 
-            synchronized (attributes) {
-                if (value.equals(attributes.get(key))) {
-                    attributes.remove(key);
+            synchronized (this) {
+                if (value.equals(get(key))) {
+                    remove(key);
                     return true;
                 }
             }
@@ -134,14 +156,19 @@ public class DefaultIoSessionDataStructureFactory implements
         }
 
         public boolean replaceAttribute(IoSession session, Object key, Object oldValue, Object newValue) {
-            synchronized (attributes) {
-                Object actualOldValue = attributes.get(key);
+            synchronized (this) {
+                Object actualOldValue = get(key);
                 if (actualOldValue == null) {
                     return false;
                 }
 
                 if (actualOldValue.equals(oldValue)) {
-                    attributes.put(key, newValue);
+                    if (newValue == null) {
+                        remove(key);
+                    } else {
+                        put(key, newValue);
+                    }
+
                     return true;
                 }
                 
@@ -150,18 +177,176 @@ public class DefaultIoSessionDataStructureFactory implements
         }
 
         public boolean containsAttribute(IoSession session, Object key) {
-            return attributes.containsKey(key);
+            return get(key) != null;
         }
 
         public Set<Object> getAttributeKeys(IoSession session) {
-            synchronized (attributes) {
-                return new HashSet<Object>(attributes.keySet());
+            Set<Object> keys = new HashSet<Object>();
+            AtomicReferenceArray<Object> t = table;
+
+            if (t != null) {
+                for (int i = 0; i < t.length(); i += 2) {
+                    Object key = t.get(i);
+
+                    if (key != null && t.get(i + 1) != null) {
+                        keys.add(key);
+                    }
+                }
             }
+
+            return keys;
         }
 
         public void dispose(IoSession session) throws Exception {
             // Do nothing
         }
+
+        private Object get(Object key) {
+            AtomicReferenceArray<Object> t = table;
+
+            if (t == null) {
+                return null;
+            }
+
+            int index = indexOf(t, key);
+
+            if (index < 0) {
+                return null;
+            }
+
+            return t.get(index + 1);
+        }
+
+        /**
+         * Stores a non null value.  Must be called with the lock held.
+         */
+        private Object put(Object key, Object value) {
+            AtomicReferenceArray<Object> t = table;
+
+            if (t == null) {
+                t = new AtomicReferenceArray<Object>(INITIAL_CAPACITY << 1);
+                table = t;
+            } else {
+                int index = indexOf(t, key);
+
+                if (index >= 0) {
+                    return t.getAndSet(index + 1, value);
+                }
+
+                // Keep at least a quarter of the slots free
+                if ((usedSlots + 1) << 2 > (t.length() >> 1) * 3) {
+                    t = rebuild(t);
+                    table = t;
+                }
+            }
+
+            insert(t, key, value);
+            usedSlots++;
+
+            return null;
+        }
+
+        /**
+         * Clears the value of a key.  Must be called with the lock held.
+         */
+        private Object remove(Object key) {
+            AtomicReferenceArray<Object> t = table;
+
+            if (t == null) {
+                return null;
+            }
+
+            int index = indexOf(t, key);
+
+            if (index < 0) {
+                return null;
+            }
+
+            return t.getAndSet(index + 1, null);
+        }
+
+        /**
+         * Creates a new table containing only the live attributes.
+         */
+        private AtomicReferenceArray<Object> rebuild(AtomicReferenceArray<Object> t) {
+            int live = 0;
+
+            for (int i = 1; i < t.length(); i += 2) {
+                if (t.get(i) != null) {
+                    live++;
+                }
+            }
+
+            int capacity = INITIAL_CAPACITY;
+
+            while ((live + 1) << 2 > capacity * 3) {
+                capacity <<= 1;
+            }
+
+            AtomicReferenceArray<Object> newTable = new AtomicReferenceArray<Object>(capacity << 1);
+
+            for (int i = 0; i < t.length(); i += 2) {
+                Object value = t.get(i + 1);
+
+                if (value != null) {
+                    insert(newTable, t.get(i), value);
+                }
+            }
+
+            usedSlots = live;
+
+            return newTable;
+        }
+
+        /**
+         * Stores an absent key in its first free slot.  The value is set
+         * before the key so that a reader finding the key finds its value.
+         */
+        private static void insert(AtomicReferenceArray<Object> t, Object key, Object value) {
+            int mask = t.length() - 2;
+            int index = (hash(key) << 1) & mask;
+
+            while (t.get(index) != null) {
+                index = (index + 2) & mask;
+            }
+
+            t.set(index + 1, value);
+            t.set(index, key);
+        }
+
+        /**
+         * Returns the index of the key in the table, or -1.  The table
+         * always has a free slot ending the probe sequence.
+         */
+        private static int indexOf(AtomicReferenceArray<Object> t, Object key) {
+            int mask = t.length() - 2;
+            int index = (hash(key) << 1) & mask;
+
+            for (;;) {
+                Object k = t.get(index);
+
+                if (k == null) {
+                    return -1;
+                }
+
+                if (k == key || (!(key instanceof AttributeKey) && k.equals(key))) {
+                    return index;
+                }
+
+                index = (index + 2) & mask;
+            }
+        }
+
+        private static int hash(Object key) {
+            int h = key.hashCode();
+
+            if (key instanceof AttributeKey) {
+                // Already spread
+                return h;
+            }
+
+            return h ^ (h >>> 16);
+        }
     }
     
     private static class DefaultWriteRequestQueue implements WriteRequestQueue {
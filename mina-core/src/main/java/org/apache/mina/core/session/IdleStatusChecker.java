@@ -19,14 +19,11 @@
  */
 package org.apache.mina.core.session;
 
-import java.util.Iterator;
-import java.util.Set;
-
 import org.apache.mina.core.future.CloseFuture;
 import org.apache.mina.core.future.IoFuture;
 import org.apache.mina.core.future.IoFutureListener;
 import org.apache.mina.core.service.IoService;
-import org.apache.mina.util.ConcurrentHashSet;
+import org.apache.mina.util.CachedClock;
 
 /**
  * Detects idle sessions and fires <tt>sessionIdle</tt> events to them.
@@ -38,9 +35,8 @@ import org.apache.mina.util.ConcurrentHashSet;
  */
 public class IdleStatusChecker {
     
-    // the list of session to check
-    private final Set<AbstractIoSession> sessions =
-        new ConcurrentHashSet<AbstractIoSession>();
+    // the sessions to check, scheduled by their next possible idle time
+    private final IdleTimingWheel sessions = new IdleTimingWheel();
 
     /* create a task you can execute in the transport code,
      * if the transport is like NIO or APR you don't need to call it,
@@ -61,7 +57,7 @@ public class IdleStatusChecker {
      * @param session the session to check
      */
     public void addSession(AbstractIoSession session) {
-        sessions.add(session);
+        sessions.add(session, CachedClock.currentTimeMillis());
         CloseFuture closeFuture = session.getCloseFuture();
         
         // isn't service reponsability to remove the session nicely ?
@@ -101,7 +97,7 @@ public class IdleStatusChecker {
             try {
                 while (!cancelled) {
                     // Check idleness with fixed delay (1 second).
-                    long currentTime = System.currentTimeMillis();
+                    long currentTime = CachedClock.update();
 
                     notifySessions(currentTime);
 
@@ -128,13 +124,7 @@ public class IdleStatusChecker {
         }
 
         private void notifySessions(long currentTime) {
-            Iterator<AbstractIoSession> it = sessions.iterator();
-            while (it.hasNext()) {
-                AbstractIoSession session = it.next();
-                if (session.isConnected()) {
-                    AbstractIoSession.notifyIdleSession(session, currentTime);
-                }
-            }
+            sessions.expire(currentTime);
         }
     }
 
@@ -0,0 +1,394 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hashed timing wheel which tells when the sessions have to be checked for
+ * idleness and write timeout, so that only the sessions which may have
+ * expired are checked at each tick instead of all the managed sessions.
+ * <p>
+ * A session is not moved in the wheel each time it reads or writes : when
+ * its check time comes, {@link #expire(long)} checks it with
+ * {@link AbstractIoSession#notifyIdleSession(IoSession, long)} and
+ * reschedules it at the earliest time one of its idle times or its write
+ * timeout may elapse, given the time of its last read, write and
+ * <tt>sessionIdle</tt> event.  An active session is then checked about once
+ * per idle time, and a session with no idle time and no write timeout is
+ * not checked at all.
+ * <p>
+ * When the idle times or the write timeout of a session using an
+ * {@link AbstractIoSessionConfig} change, the session is moved in the wheel
+ * if it has to be checked earlier.  Other configurations take effect at the
+ * next check of the session, which happens within
+ * {@link #getMaxCheckInterval()} milliseconds.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class IdleTimingWheel {
+    /** The default duration of a tick, in milliseconds */
+    private static final long DEFAULT_TICK_DURATION = 1000L;
+
+    /** The default number of buckets */
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /** The default maximum delay between two checks of a session, in milliseconds */
+    private static final long DEFAULT_MAX_CHECK_INTERVAL = 30000L;
+
+    /** The key of the session attribute holding its entry in this wheel */
+    private final AttributeKey ENTRY = new AttributeKey(getClass(), "entry");
+
+    private final long tickDuration;
+
+    private final long maxCheckInterval;
+
+    /** The buckets. Each one is the sentinel of a circular list of entries */
+    private final Entry[] wheel;
+
+    private final int mask;
+
+    /** The last tick processed by expire(), or -1 */
+    private long currentTick = -1;
+
+    /** The number of scheduled sessions */
+    private int size;
+
+    /**
+     * Creates a new instance with a 1 second tick, 512 buckets, and sessions
+     * checked at least every 30 seconds.
+     */
+    public IdleTimingWheel() {
+        this(DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE, DEFAULT_MAX_CHECK_INTERVAL);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param tickDuration the duration of a tick, in milliseconds
+     * @param wheelSize the number of buckets, rounded up to a power of 2
+     * @param maxCheckInterval the maximum delay between two checks of a
+     *                         session, in milliseconds
+     */
+    public IdleTimingWheel(long tickDuration, int wheelSize, long maxCheckInterval) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration: " + tickDuration);
+        }
+
+        if ((wheelSize <= 0) || (wheelSize > 1 << 30)) {
+            throw new IllegalArgumentException("wheelSize: " + wheelSize);
+        }
+
+        if (maxCheckInterval < tickDuration) {
+            throw new IllegalArgumentException("maxCheckInterval: " + maxCheckInterval
+                    + " (expected: >= tickDuration)");
+        }
+
+        this.tickDuration = tickDuration;
+        this.maxCheckInterval = maxCheckInterval;
+
+        int normalizedSize = Integer.highestOneBit(wheelSize);
+
+        if (normalizedSize < wheelSize) {
+            normalizedSize <<= 1;
+        }
+
+        wheel = new Entry[normalizedSize];
+        mask = normalizedSize - 1;
+
+        for (int i = 0; i < normalizedSize; i++) {
+            Entry head = new Entry(this, null);
+            head.prev = head;
+            head.next = head;
+            wheel[i] = head;
+        }
+    }
+
+    /**
+     * Returns the duration of a tick, in milliseconds.
+     */
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * Returns the maximum delay between two checks of a session, in
+     * milliseconds.
+     */
+    public long getMaxCheckInterval() {
+        return maxCheckInterval;
+    }
+
+    /**
+     * Returns the number of scheduled sessions.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Schedules the first check of the specified session.
+     *
+     * @param session the session to check
+     * @param currentTime the current time (i.e. {@link System#currentTimeMillis()})
+     */
+    public void add(IoSession session, long currentTime) {
+        Entry entry = new Entry(this, session);
+
+        if (session.setAttributeIfAbsent(ENTRY, entry) != null) {
+            // Already scheduled
+            return;
+        }
+
+        long checkTime = getNextCheckTime(session, currentTime);
+
+        synchronized (this) {
+            if (entry.removed) {
+                // Removed before being scheduled
+                return;
+            }
+
+            if (currentTick < 0) {
+                currentTick = currentTime / tickDuration;
+            }
+
+            entry.added = true;
+            schedule(entry, checkTime);
+            size++;
+        }
+
+        IoSessionConfig config = session.getConfig();
+
+        if (config instanceof AbstractIoSessionConfig) {
+            ((AbstractIoSessionConfig) config).setIdleTimingEntry(entry);
+        }
+    }
+
+    /**
+     * Stops checking the specified session.
+     */
+    public void remove(IoSession session) {
+        Entry entry = (Entry) session.removeAttribute(ENTRY);
+
+        if (entry == null) {
+            return;
+        }
+
+        IoSessionConfig config = session.getConfig();
+
+        if (config instanceof AbstractIoSessionConfig) {
+            ((AbstractIoSessionConfig) config).clearIdleTimingEntry(entry);
+        }
+
+        synchronized (this) {
+            entry.removed = true;
+
+            if (entry.added) {
+                if (entry.next != null) {
+                    unlink(entry);
+                }
+
+                size--;
+            }
+        }
+    }
+
+    /**
+     * Moves the session of the given entry if its idle times or its write
+     * timeout make it expire before its scheduled check.
+     */
+    void reschedule(Entry entry) {
+        long checkTime = getNextCheckTime(entry.session, System.currentTimeMillis());
+
+        synchronized (this) {
+            // A session being checked is rescheduled by expire()
+            if (entry.removed || !entry.added || (entry.next == null)) {
+                return;
+            }
+
+            if (checkTime < entry.tick * tickDuration) {
+                unlink(entry);
+                schedule(entry, checkTime);
+            }
+        }
+    }
+
+    /**
+     * Checks the sessions whose check time has come, firing their
+     * <tt>sessionIdle</tt> events and write timeouts, and reschedules them.
+     * The sessions which are not connected anymore are forgotten.
+     *
+     * @param currentTime the current time (i.e. {@link System#currentTimeMillis()})
+     */
+    public void expire(long currentTime) {
+        List<Entry> expired = null;
+
+        synchronized (this) {
+            long tick = currentTime / tickDuration;
+
+            if ((currentTick < 0) || (tick <= currentTick)) {
+                return;
+            }
+
+            // Visit each bucket at most once, even if we are late.
+            long ticks = Math.min(tick - currentTick, wheel.length);
+
+            for (long t = tick - ticks + 1; t <= tick; t++) {
+                Entry head = wheel[(int) (t & mask)];
+
+                for (Entry entry = head.next; entry != head;) {
+                    Entry next = entry.next;
+
+                    if (entry.tick <= tick) {
+                        unlink(entry);
+
+                        if (expired == null) {
+                            expired = new ArrayList<Entry>();
+                        }
+
+                        expired.add(entry);
+                    }
+
+                    entry = next;
+                }
+            }
+
+            currentTick = tick;
+        }
+
+        if (expired == null) {
+            return;
+        }
+
+        for (Entry entry : expired) {
+            IoSession session = entry.session;
+
+            if (!session.isConnected()) {
+                remove(session);
+                continue;
+            }
+
+            AbstractIoSession.notifyIdleSession(session, currentTime);
+            long checkTime = getNextCheckTime(session, currentTime);
+
+            synchronized (this) {
+                // The session may have been removed in the meantime.
+                if (!entry.removed) {
+                    schedule(entry, checkTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the earliest time one of the idle times or the write timeout
+     * of the session may elapse.
+     */
+    private long getNextCheckTime(IoSession session, long currentTime) {
+        IoSessionConfig config = session.getConfig();
+        long checkTime = currentTime + maxCheckInterval;
+
+        long idleTime = config.getIdleTimeInMillis(IdleStatus.BOTH_IDLE);
+
+        if (idleTime > 0) {
+            checkTime = Math.min(checkTime, Math.max(session.getLastIoTime(),
+                    session.getLastIdleTime(IdleStatus.BOTH_IDLE)) + idleTime);
+        }
+
+        idleTime = config.getIdleTimeInMillis(IdleStatus.READER_IDLE);
+
+        if (idleTime > 0) {
+            checkTime = Math.min(checkTime, Math.max(session.getLastReadTime(),
+                    session.getLastIdleTime(IdleStatus.READER_IDLE)) + idleTime);
+        }
+
+        idleTime = config.getIdleTimeInMillis(IdleStatus.WRITER_IDLE);
+
+        if (idleTime > 0) {
+            checkTime = Math.min(checkTime, Math.max(session.getLastWriteTime(),
+                    session.getLastIdleTime(IdleStatus.WRITER_IDLE)) + idleTime);
+        }
+
+        long writeTimeout = config.getWriteTimeoutInMillis();
+
+        if (writeTimeout > 0) {
+            if (session.getWriteRequestQueue().isEmpty(session)) {
+                // A write may be queued at any time.
+                checkTime = Math.min(checkTime, currentTime + writeTimeout);
+            } else {
+                checkTime = Math.min(checkTime, session.getLastWriteTime() + writeTimeout);
+            }
+        }
+
+        return checkTime;
+    }
+
+    private void schedule(Entry entry, long checkTime) {
+        // Round up, and never schedule in a bucket which has been processed.
+        long tick = Math.max((checkTime + tickDuration - 1) / tickDuration, currentTick + 1);
+        Entry head = wheel[(int) (tick & mask)];
+
+        entry.tick = tick;
+        entry.prev = head.prev;
+        entry.next = head;
+        head.prev.next = entry;
+        head.prev = entry;
+    }
+
+    private void unlink(Entry entry) {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    /**
+     * A scheduled session, linked in its bucket.
+     */
+    static final class Entry {
+        private final IdleTimingWheel wheel;
+
+        private final IoSession session;
+
+        /** The tick at which the session has to be checked */
+        private long tick;
+
+        private Entry prev;
+
+        private Entry next;
+
+        private boolean added;
+
+        private boolean removed;
+
+        private Entry(IdleTimingWheel wheel, IoSession session) {
+            this.wheel = wheel;
+            this.session = session;
+        }
+
+        /**
+         * Checks the session earlier if its new configuration requires it.
+         */
+        void reschedule() {
+            wheel.reschedule(this);
+        }
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.apache.mina.core.session;
 
+import org.apache.mina.core.filterchain.DefaultIoFilterChain;
+import org.apache.mina.core.filterchain.IoFilterChain;
 import org.apache.mina.core.write.WriteRequest;
 
 /**
@@ -83,6 +85,14 @@ public class IoEvent implements Runnable {
         case SESSION_IDLE:
             getSession().getFilterChain().fireSessionIdle((IdleStatus) getParameter());
             break;
+        case WRITABILITY_CHANGED:
+            IoFilterChain filterChain = getSession().getFilterChain();
+
+            if (filterChain instanceof DefaultIoFilterChain) {
+                ((DefaultIoFilterChain) filterChain)
+                        .fireWritabilityChanged((Boolean) getParameter());
+            }
+            break;
         case SESSION_OPENED:
             getSession().getFilterChain().fireSessionOpened();
             break;
@@ -36,4 +36,5 @@ public enum IoEventType {
     EXCEPTION_CAUGHT,
     WRITE,
     CLOSE,
+    WRITABILITY_CHANGED,
 }
@@ -184,6 +184,61 @@ public interface IoSessionConfig {
      */
     void setUseReadOperation(boolean useReadOperation);
 
+    /**
+     * Returns the maximum number of queued {@link org.apache.mina.core.buffer.IoBuffer}
+     * write requests the I/O processor writes with a single gathering write
+     * on transports with fragmentation.  The default value is <tt>1</tt>,
+     * which means that every write request is written separately.
+     */
+    int getMaxGatheringWriteCount();
+
+    /**
+     * Sets the maximum number of queued {@link org.apache.mina.core.buffer.IoBuffer}
+     * write requests the I/O processor writes with a single gathering write.
+     * Setting a value greater than <tt>1</tt> saves system calls when many
+     * small messages are written.  A <tt>messageSent</tt> event is still fired
+     * for each request, in order, once it has been fully written.
+     */
+    void setMaxGatheringWriteCount(int maxGatheringWriteCount);
+
+    /**
+     * Returns the number of bytes scheduled for write above which the
+     * session becomes not writable.  <tt>0</tt> (the default) disables the
+     * write watermarks.
+     *
+     * @see AbstractIoSession#isWritable()
+     */
+    int getWriteHighWatermark();
+
+    /**
+     * Sets the number of bytes scheduled for write above which the session
+     * becomes not writable : reads are suspended and a
+     * <tt>writabilityChanged</tt> event is fired, so that the producers can
+     * stop writing until the session becomes writable again.  <tt>0</tt>
+     * disables the write watermarks.
+     *
+     * @see AbstractIoSession#isWritable()
+     */
+    void setWriteHighWatermark(int writeHighWatermark);
+
+    /**
+     * Returns the number of bytes scheduled for write at or below which a
+     * session which is not writable becomes writable again.
+     *
+     * @see AbstractIoSession#isWritable()
+     */
+    int getWriteLowWatermark();
+
+    /**
+     * Sets the number of bytes scheduled for write at or below which a
+     * session which is not writable becomes writable again : reads are
+     * resumed and a <tt>writabilityChanged</tt> event is fired.  A value
+     * greater than the high watermark is treated as the high watermark.
+     *
+     * @see AbstractIoSession#isWritable()
+     */
+    void setWriteLowWatermark(int writeLowWatermark);
+
     /**
      * Sets all configuration properties retrieved from the specified
      * <tt>config</tt>.
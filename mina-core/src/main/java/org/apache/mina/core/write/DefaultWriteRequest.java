@@ -32,7 +32,13 @@ import org.apache.mina.core.session.IoSession;
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class DefaultWriteRequest implements WriteRequest {
-    private static final WriteFuture UNUSED_FUTURE = new WriteFuture() {
+    /**
+     * The bogus future shared by all the requests created without a
+     * {@link WriteFuture}.  It is always done, never written, ignores the
+     * notifications and refuses the listeners, so a filter which needs
+     * to track a request should first check it is not this instance.
+     */
+    public static final WriteFuture UNUSED_FUTURE = new WriteFuture() {
         public boolean isWritten() {
             return false;
         }
@@ -0,0 +1,155 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.write;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.mina.core.session.IoSession;
+
+/**
+ * A lock-free {@link WriteRequestQueue} designed for many producer threads
+ * (the threads calling {@link IoSession#write(Object)}) and a single
+ * consumer (the I/O processor flushing the session).
+ * <p>
+ * Producers never block each other nor the consumer: an offer is a single
+ * atomic swap of the tail node followed by a link from the previous tail.
+ * The {@link #poll(IoSession)} and {@link #clear(IoSession)} methods must be
+ * called by one thread at a time, which is guaranteed when the queue is used
+ * through {@link org.apache.mina.core.session.AbstractIoSession#getWriteRequestQueue()}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class LockFreeWriteRequestQueue implements WriteRequestQueue {
+    /** The last inserted node, shared by all the producers */
+    private final AtomicReference<Node> tail;
+
+    /** The node preceding the first request, only modified by the consumer */
+    private volatile Node head;
+
+    /**
+     * Creates a new empty queue.
+     */
+    public LockFreeWriteRequestQueue() {
+        Node stub = new Node(null);
+        head = stub;
+        tail = new AtomicReference<Node>(stub);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void offer(IoSession session, WriteRequest writeRequest) {
+        if (writeRequest == null) {
+            throw new IllegalArgumentException("writeRequest");
+        }
+
+        Node node = new Node(writeRequest);
+        Node previous = tail.getAndSet(node);
+
+        // Until this point, the consumer can't see the new node.
+        previous.next = node;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public WriteRequest poll(IoSession session) {
+        Node first = head.next;
+
+        if (first == null) {
+            // Either empty, or a producer has not linked its node yet :
+            // the request will be picked up by the next flush.
+            return null;
+        }
+
+        WriteRequest answer = first.value;
+
+        // The polled node becomes the new stub
+        first.value = null;
+        head = first;
+
+        return answer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isEmpty(IoSession session) {
+        Node h = head;
+
+        // A node may have been swapped in the tail but not linked yet.
+        return h.next == null && h == tail.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void clear(IoSession session) {
+        while (poll(session) != null) {
+            // Discard
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void dispose(IoSession session) {
+        // Do nothing
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+
+        boolean first = true;
+
+        for (Node n = head.next; n != null; n = n.next) {
+            WriteRequest value = n.value;
+
+            if (value == null) {
+                continue;
+            }
+
+            if (first) {
+                first = false;
+            } else {
+                sb.append(", ");
+            }
+
+            sb.append(value);
+        }
+
+        return sb.append(']').toString();
+    }
+
+    /**
+     * A node of the linked list.
+     */
+    private static final class Node {
+        private WriteRequest value;
+
+        private volatile Node next;
+
+        private Node(WriteRequest value) {
+            this.value = value;
+        }
+    }
+}
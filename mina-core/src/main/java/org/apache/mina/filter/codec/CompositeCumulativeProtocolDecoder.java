@@ -0,0 +1,260 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec;
+
+import java.util.Iterator;
+
+import org.apache.mina.core.IoUtil;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.AbstractIoService;
+import org.apache.mina.core.service.IoService;
+import org.apache.mina.core.service.TransportMetadata;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.util.byteaccess.BufferByteArray;
+import org.apache.mina.util.byteaccess.ByteArray;
+import org.apache.mina.util.byteaccess.CompositeByteArray;
+
+/**
+ * A {@link ProtocolDecoder} that cumulates the received buffers into a
+ * {@link CompositeByteArray} instead of copying them into a single
+ * cumulative buffer like {@link CumulativeProtocolDecoder} does.
+ * <p>
+ * The received buffers are appended by reference, and
+ * {@link #doDecode(IoSession, ByteArray.Cursor, ProtocolDecoderOutput)} reads
+ * them through a {@link ByteArray.Cursor} which transparently crosses the
+ * boundaries between the fragments.  A decoded frame can be extracted with
+ * {@link ByteArray.Cursor#slice(int)} without copying any byte, and
+ * {@link #toIoBuffer(ByteArray)} only copies it into a new {@link IoBuffer}
+ * when it actually spans more than one fragment.  Here is an example
+ * decoder which decodes frames prefixed by their length:
+ * <pre>
+ * public class LengthPrefixedDecoder
+ *         extends CompositeCumulativeProtocolDecoder {
+ *
+ *     protected boolean doDecode(
+ *             IoSession session, ByteArray.Cursor in, ProtocolDecoderOutput out)
+ *             throws Exception {
+ *         if (in.getRemaining() &lt; 4) {
+ *             return false;
+ *         }
+ *
+ *         int start = in.getIndex();
+ *         int length = in.getInt();
+ *
+ *         if (in.getRemaining() &lt; length) {
+ *             // Wait for the whole frame.
+ *             in.setIndex(start);
+ *             return false;
+ *         }
+ *
+ *         out.write(toIoBuffer(in.slice(length)));
+ *         return true;
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * Please note that the received buffers are retained until the frames they
+ * contain are decoded, and that the slices handed to the next filters share
+ * their content.  When the {@link IoService} recycles its read buffers (see
+ * {@link AbstractIoService#setReadBufferRecycled(boolean)}), the received buffers are copied
+ * once before being appended, because the I/O processor reuses them as soon
+ * as the filter chain returns.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public abstract class CompositeCumulativeProtocolDecoder extends ProtocolDecoderAdapter {
+
+    /**
+     * The index above which the cumulative buffer is rebuilt, so that the
+     * absolute indexes of the {@link CompositeByteArray} never overflow.
+     */
+    private static final int MAX_FIRST_INDEX = 1 << 30;
+
+    private final AttributeKey BUFFER = new AttributeKey(getClass(), "buffer");
+
+    /**
+     * Creates a new instance.
+     */
+    protected CompositeCumulativeProtocolDecoder() {
+        // Do nothing
+    }
+
+    /**
+     * Appends <tt>in</tt> to the cumulative buffer and forwards decoding
+     * request to {@link #doDecode(IoSession, ByteArray.Cursor, ProtocolDecoderOutput)}.
+     * <tt>doDecode()</tt> is invoked repeatedly until it returns <tt>false</tt>,
+     * and the fragments which have been entirely consumed are released from
+     * the cumulative buffer after decoding ends.
+     *
+     * @throws IllegalStateException if your <tt>doDecode()</tt> returned
+     *                               <tt>true</tt> not consuming the cumulative buffer.
+     */
+    public void decode(IoSession session, IoBuffer in,
+            ProtocolDecoderOutput out) throws Exception {
+        if (!in.hasRemaining()) {
+            return;
+        }
+
+        boolean hasFragmentation = session.getTransportMetadata().hasFragmentation();
+        CompositeByteArray buf = null;
+
+        if (hasFragmentation) {
+            buf = (CompositeByteArray) session.getAttribute(BUFFER);
+        }
+
+        if (buf == null) {
+            buf = new CompositeByteArray();
+        }
+
+        append(session, buf, in);
+
+        ByteArray.Cursor cursor = buf.cursor(buf.first());
+
+        while (cursor.hasRemaining()) {
+            int oldIndex = cursor.getIndex();
+
+            if (!doDecode(session, cursor, out)) {
+                break;
+            }
+
+            if (cursor.getIndex() == oldIndex) {
+                throw new IllegalStateException(
+                        "doDecode() can't return true when buffer is not consumed.");
+            }
+        }
+
+        // Keep what has not been decoded yet for the next invocation, unless
+        // the transport doesn't have fragmentation (see TransportMetadata).
+        if (!hasFragmentation || !cursor.hasRemaining()) {
+            removeSessionBuffer(session);
+        } else {
+            session.setAttribute(BUFFER, discardConsumed(buf, cursor.getIndex()));
+        }
+    }
+
+    /**
+     * Implement this method to consume the specified cumulative buffer and
+     * decode its content into message(s).
+     *
+     * @param in the cursor over the cumulative buffer
+     * @return <tt>true</tt> if and only if there's more to decode in the buffer
+     *         and you want to have <tt>doDecode</tt> method invoked again.
+     *         Return <tt>false</tt> if remaining data is not enough to decode,
+     *         then this method will be invoked again when more data is cumulated.
+     * @throws Exception if cannot decode <tt>in</tt>.
+     */
+    protected abstract boolean doDecode(IoSession session, ByteArray.Cursor in,
+            ProtocolDecoderOutput out) throws Exception;
+
+    /**
+     * Returns the content of the specified {@link ByteArray} as a single
+     * {@link IoBuffer}.  The content is copied only if it spans more than
+     * one of the received buffers, otherwise the returned buffer shares its
+     * content with the received buffer.
+     */
+    protected static IoBuffer toIoBuffer(ByteArray array) {
+        Iterator<IoBuffer> buffers = array.getIoBuffers().iterator();
+
+        if (buffers.hasNext()) {
+            IoBuffer first = buffers.next();
+
+            if (!buffers.hasNext()) {
+                return first;
+            }
+        }
+
+        IoBuffer buf = IoBuffer.allocate(array.length());
+        buf.order(array.order());
+        array.get(array.first(), buf);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Releases the cumulative buffer used by the specified <tt>session</tt>.
+     * Please don't forget to call <tt>super.dispose( session )</tt> when
+     * you override this method.
+     */
+    @Override
+    public void dispose(IoSession session) throws Exception {
+        removeSessionBuffer(session);
+    }
+
+    private void removeSessionBuffer(IoSession session) {
+        session.removeAttribute(BUFFER);
+    }
+
+    private void append(IoSession session, CompositeByteArray buf, IoBuffer in) {
+        IoBuffer fragment;
+
+        if (IoUtil.isReadBufferRecycled(session)) {
+            // The I/O processor reuses the read buffer once the filter chain
+            // has consumed it : we have to copy it.
+            fragment = IoBuffer.allocate(in.remaining());
+            fragment.put(in);
+            fragment.flip();
+        } else {
+            fragment = in.slice();
+            in.position(in.limit());
+        }
+
+        fragment.order(in.order());
+        buf.addLast(new ReceivedByteArray(fragment));
+    }
+
+    /**
+     * Removes the bytes which have been decoded from the cumulative buffer.
+     */
+    private CompositeByteArray discardConsumed(CompositeByteArray buf, int index) {
+        if (index > buf.first()) {
+            buf.removeTo(index);
+        }
+
+        if (buf.first() < MAX_FIRST_INDEX) {
+            return buf;
+        }
+
+        // Move the remaining fragments to a new buffer whose indexes start
+        // from 0 again.
+        CompositeByteArray newBuf = new CompositeByteArray();
+
+        while (buf.getFirst() != null) {
+            newBuf.addLast(buf.removeFirst());
+        }
+
+        return newBuf;
+    }
+
+    /**
+     * A received buffer.  It is left to the garbage collector because the
+     * frames sliced from it may still be in use by the next filters.
+     */
+    private static class ReceivedByteArray extends BufferByteArray {
+        private ReceivedByteArray(IoBuffer bb) {
+            super(bb);
+        }
+
+        @Override
+        public void free() {
+            // Do nothing
+        }
+    }
+}
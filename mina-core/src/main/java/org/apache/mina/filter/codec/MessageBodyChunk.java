@@ -0,0 +1,93 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * A part of the body of a message decoded by a
+ * {@link StreamingProtocolDecoder}.  The chunks of a message are written
+ * to the {@link ProtocolDecoderOutput} in order, after the header of the
+ * message, and the last one is flagged by {@link #isLast()}.
+ * <p>
+ * When the decoder limits the number of pending bytes (see
+ * {@link StreamingProtocolDecoder#setMaxPendingBytes(int)}), each chunk must
+ * be {@link #release() released} once it has been consumed, so that the
+ * reads suspended by the decoder can be resumed.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class MessageBodyChunk {
+    private static final AtomicIntegerFieldUpdater<MessageBodyChunk> RELEASED_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(MessageBodyChunk.class, "released");
+
+    private final IoBuffer buffer;
+
+    private final boolean last;
+
+    /** The flow control of the session, or null */
+    private final StreamingProtocolDecoder.Context context;
+
+    private final int length;
+
+    private volatile int released;
+
+    MessageBodyChunk(IoBuffer buffer, boolean last,
+            StreamingProtocolDecoder.Context context) {
+        this.buffer = buffer;
+        this.last = last;
+        this.context = context;
+        this.length = buffer.remaining();
+    }
+
+    /**
+     * Returns the content of this chunk.  It usually shares the content of
+     * the buffer received from the network, so it must not be modified.
+     */
+    public IoBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this chunk ends the message.  The last chunk
+     * of a message without body is empty.
+     */
+    public boolean isLast() {
+        return last;
+    }
+
+    /**
+     * Tells the decoder that this chunk has been consumed.  Calling this
+     * method more than once, or when the decoder doesn't limit the pending
+     * bytes, has no effect.
+     */
+    public void release() {
+        if (context != null && RELEASED_UPDATER.compareAndSet(this, 0, 1)) {
+            context.release(length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MessageBodyChunk(" + length + (last ? " bytes, last)" : " bytes)");
+    }
+}
@@ -42,6 +42,18 @@ import org.slf4j.LoggerFactory;
  * An {@link IoFilter} which translates binary or protocol specific data into
  * message objects and vice versa using {@link ProtocolCodecFactory},
  * {@link ProtocolEncoder}, or {@link ProtocolDecoder}.
+ * <p>
+ * The objects written by the decoder are forwarded to the next filters as
+ * soon as each {@link ProtocolDecoder#decode(IoSession, IoBuffer, ProtocolDecoderOutput)}
+ * call returns, so a decoder doesn't have to produce complete messages : a
+ * {@link StreamingProtocolDecoder} streams the bodies of large messages as
+ * {@link MessageBodyChunk}s instead of cumulating them.
+ * <p>
+ * Each written message is followed by an empty buffer which tells the
+ * I/O processor that the message has been completely written. When
+ * the encoder output is coalesced (see {@link #setEncoderOutputCoalesced(boolean)}),
+ * the last encoded buffer plays this role instead, so that a message encoded
+ * into a single buffer results in a single write request.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  * @org.apache.xbean.XBean
@@ -61,6 +73,9 @@ public class ProtocolCodecFilter extends IoFilterAdapter {
     /** The factory responsible for creating the encoder and decoder */
     private final ProtocolCodecFactory factory;
 
+    /** Tells if the last encoded buffer replaces the message delimiter */
+    private volatile boolean encoderOutputCoalesced;
+
     /**
      * 
      * Creates a new instance of ProtocolCodecFilter, associating a factory
@@ -186,6 +201,33 @@ public class ProtocolCodecFilter extends IoFilterAdapter {
         return (ProtocolEncoder) session.getAttribute(ENCODER);
     }
 
+    /**
+     * Tells if the output of the encoder is coalesced with the message
+     * delimiter. The default value is <tt>false</tt>.
+     *
+     * @see #setEncoderOutputCoalesced(boolean)
+     */
+    public boolean isEncoderOutputCoalesced() {
+        return encoderOutputCoalesced;
+    }
+
+    /**
+     * Sets if the output of the encoder is coalesced with the message
+     * delimiter. When it is, the last buffer produced by the encoder for a
+     * message is written with the original {@link WriteRequest} instead of
+     * being followed by an empty buffer : the write queue receives one
+     * request less per message, and the consecutive buffers of a message
+     * are written by the I/O processor in a single gathering write
+     * (see {@link org.apache.mina.core.session.IoSessionConfig#setMaxGatheringWriteCount(int)}).
+     * <p>
+     * The filters added before this filter still get a single
+     * <tt>messageSent</tt> event per message, once its last byte has been
+     * written.
+     */
+    public void setEncoderOutputCoalesced(boolean encoderOutputCoalesced) {
+        this.encoderOutputCoalesced = encoderOutputCoalesced;
+    }
+
     @Override
     public void onPreAdd(IoFilterChain parent, String name,
             NextFilter nextFilter) throws Exception {
@@ -324,23 +366,37 @@ public class ProtocolCodecFilter extends IoFilterAdapter {
             // Send it directly
             Queue<Object> bufferQueue = ((AbstractProtocolEncoderOutput)encoderOut).getMessageQueue();
             
-            // Write all the encoded messages now
+            // Write all the encoded messages now, the last one being
+            // kept aside when it can be coalesced with the delimiter
+            Object lastMessage = null;
+            
             while (!bufferQueue.isEmpty()) {
                 Object encodedMessage = bufferQueue.poll();
                 
                 // Flush only when the buffer has remaining.
                 if (!(encodedMessage instanceof IoBuffer) || ((IoBuffer) encodedMessage).hasRemaining()) {
-                    SocketAddress destination = writeRequest.getDestination();
-                    WriteRequest encodedWriteRequest = new EncodedWriteRequest(encodedMessage, null, destination); 
-
-                    nextFilter.filterWrite(session, encodedWriteRequest);
+                    if (lastMessage != null) {
+                        writeEncodedMessage(nextFilter, session, writeRequest, lastMessage);
+                    }
+                    
+                    lastMessage = encodedMessage;
                 }
             }
 
+            if (encoderOutputCoalesced && (lastMessage instanceof IoBuffer)) {
+                // The last buffer completes the message
+                nextFilter.filterWrite(session, new MessageWriteRequest(
+                        writeRequest, lastMessage));
+                return;
+            }
+            
+            if (lastMessage != null) {
+                writeEncodedMessage(nextFilter, session, writeRequest, lastMessage);
+            }
             
             // Call the next filter
             nextFilter.filterWrite(session, new MessageWriteRequest(
-                    writeRequest));
+                    writeRequest, EMPTY_BUFFER));
         } catch (Throwable t) {
             ProtocolEncoderException pee;
             
@@ -383,6 +439,14 @@ public class ProtocolCodecFilter extends IoFilterAdapter {
         nextFilter.sessionClosed(session);
     }
 
+    private void writeEncodedMessage(NextFilter nextFilter, IoSession session,
+            WriteRequest writeRequest, Object encodedMessage) {
+        SocketAddress destination = writeRequest.getDestination();
+        WriteRequest encodedWriteRequest = new EncodedWriteRequest(encodedMessage, null, destination); 
+
+        nextFilter.filterWrite(session, encodedWriteRequest);
+    }
+
     private static class EncodedWriteRequest extends DefaultWriteRequest {
         public EncodedWriteRequest(Object encodedMessage,
                 WriteFuture future, SocketAddress destination) {
@@ -395,13 +459,16 @@ public class ProtocolCodecFilter extends IoFilterAdapter {
     }
 
     private static class MessageWriteRequest extends WriteRequestWrapper {
-        public MessageWriteRequest(WriteRequest writeRequest) {
+        private final Object encodedMessage;
+
+        public MessageWriteRequest(WriteRequest writeRequest, Object encodedMessage) {
             super(writeRequest);
+            this.encodedMessage = encodedMessage;
         }
 
         @Override
         public Object getMessage() {
-            return EMPTY_BUFFER;
+            return encodedMessage;
         }
         
         @Override
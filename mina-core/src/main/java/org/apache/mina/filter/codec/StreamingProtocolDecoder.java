@@ -0,0 +1,348 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.core.IoUtil;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.AbstractIoService;
+import org.apache.mina.core.service.IoService;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+
+/**
+ * A {@link ProtocolDecoder} for protocols whose messages are made of a
+ * header announcing the length of a potentially huge body.  Instead of
+ * cumulating the whole message, it only cumulates the header, and streams
+ * the body as {@link MessageBodyChunk}s, so a message of any size is decoded
+ * in constant memory.
+ * <p>
+ * For each message, the next filters receive the object(s) written by
+ * {@link #decodeHeader(IoSession, IoBuffer, ProtocolDecoderOutput)}, then the
+ * chunks of the body, the last one being flagged by
+ * {@link MessageBodyChunk#isLast()}.  Here is an example decoder for a
+ * protocol prefixing each message with its type and its length:
+ * <pre>
+ * public class UploadDecoder extends StreamingProtocolDecoder {
+ *     protected long decodeHeader(
+ *             IoSession session, IoBuffer in, ProtocolDecoderOutput out) {
+ *         if (in.remaining() &lt; 12) {
+ *             return -1;
+ *         }
+ *
+ *         out.write(new UploadHeader(in.getInt()));
+ *         return in.getLong();
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * The chunks are slices of the buffers received from the network, so they
+ * are not copied.  When the {@link IoService} recycles its read buffers (see
+ * {@link AbstractIoService#setReadBufferRecycled(boolean)}), they are copied, because the
+ * I/O processor reuses the read buffer as soon as the filter chain returns.
+ * <p>
+ * As long as the chunks are consumed in the I/O processor thread, the
+ * network itself throttles the peer.  When they are handed to another
+ * thread, {@link #setMaxPendingBytes(int)} bounds the memory they use : the
+ * reads of the session are suspended when the chunks which have not been
+ * {@link MessageBodyChunk#release() released} yet exceed this amount, and
+ * resumed once half of it has been released.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public abstract class StreamingProtocolDecoder extends ProtocolDecoderAdapter {
+    private static final IoBuffer EMPTY_BUFFER = IoBuffer.wrap(new byte[0]);
+
+    private final AttributeKey CONTEXT = new AttributeKey(getClass(), "context");
+
+    /** The maximum size of a header. Default to 8192 bytes. */
+    private int maxHeaderLength = 8192;
+
+    /** The maximum number of unreleased bytes, 0 if unlimited */
+    private int maxPendingBytes;
+
+    /**
+     * Creates a new instance.
+     */
+    protected StreamingProtocolDecoder() {
+        // Do nothing
+    }
+
+    /**
+     * Returns the maximum size of a header.  A {@link ProtocolDecoderException}
+     * is thrown when a longer header is received.  The default value is
+     * <tt>8192</tt>.
+     */
+    public int getMaxHeaderLength() {
+        return maxHeaderLength;
+    }
+
+    /**
+     * Sets the maximum size of a header.
+     */
+    public void setMaxHeaderLength(int maxHeaderLength) {
+        if (maxHeaderLength <= 0) {
+            throw new IllegalArgumentException("maxHeaderLength ("
+                    + maxHeaderLength + ") should be a positive value");
+        }
+
+        this.maxHeaderLength = maxHeaderLength;
+    }
+
+    /**
+     * Returns the number of bytes of body chunks which can be written to the
+     * output and not released before the reads of the session are suspended,
+     * or <tt>0</tt> if the chunks don't need to be released.  The default
+     * value is <tt>0</tt>.
+     */
+    public int getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    /**
+     * Sets the number of bytes of body chunks which can be written to the
+     * output and not released before the reads of the session are suspended.
+     *
+     * @param maxPendingBytes <tt>0</tt> to disable the flow control
+     */
+    public void setMaxPendingBytes(int maxPendingBytes) {
+        if (maxPendingBytes < 0) {
+            throw new IllegalArgumentException("maxPendingBytes ("
+                    + maxPendingBytes + ") should not be negative");
+        }
+
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * Decodes the header of a message.  This method writes the decoded header
+     * to the output and returns the length of the body, or returns <tt>-1</tt>
+     * without writing anything if the header is not complete yet.  In this
+     * case, it will be invoked again with the same bytes followed by the
+     * next received ones.
+     *
+     * @return the length of the body, or <tt>-1</tt> to wait for more data
+     */
+    protected abstract long decodeHeader(IoSession session, IoBuffer in,
+            ProtocolDecoderOutput out) throws Exception;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void decode(IoSession session, IoBuffer in, ProtocolDecoderOutput out)
+            throws Exception {
+        Context ctx = getContext(session);
+
+        while (in.hasRemaining()) {
+            if (ctx.bodyRemaining >= 0) {
+                writeChunk(ctx, session, in, out);
+            } else if (!readHeader(ctx, session, in, out)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void dispose(IoSession session) throws Exception {
+        session.removeAttribute(CONTEXT);
+    }
+
+    private Context getContext(IoSession session) {
+        Context ctx = (Context) session.getAttribute(CONTEXT);
+
+        if (ctx == null) {
+            ctx = new Context(session, maxPendingBytes);
+            session.setAttribute(CONTEXT, ctx);
+        }
+
+        return ctx;
+    }
+
+    /**
+     * Decodes a header, cumulating its beginning if it is not complete.
+     *
+     * @return <tt>false</tt> if all the bytes have been consumed without
+     * completing the header
+     */
+    private boolean readHeader(Context ctx, IoSession session, IoBuffer in,
+            ProtocolDecoderOutput out) throws Exception {
+        IoBuffer header = ctx.header;
+
+        if (header == null) {
+            int start = in.position();
+            long length = decodeHeader(session, in, out);
+
+            if (length >= 0) {
+                startBody(ctx, length, out);
+                return true;
+            }
+
+            in.position(start);
+
+            if (in.remaining() >= maxHeaderLength) {
+                throw new ProtocolDecoderException("Header is too long: "
+                        + in.remaining());
+            }
+
+            header = IoBuffer.allocate(in.remaining()).setAutoExpand(true);
+            header.put(in);
+            ctx.header = header;
+
+            return false;
+        }
+
+        // Only append the bytes which can still belong to the header
+        int appended = Math.min(in.remaining(), maxHeaderLength - header.position());
+        int limit = in.limit();
+        in.limit(in.position() + appended);
+        header.put(in);
+        in.limit(limit);
+        header.flip();
+
+        long length = decodeHeader(session, header, out);
+
+        if (length < 0) {
+            if (header.limit() >= maxHeaderLength) {
+                ctx.header = null;
+                throw new ProtocolDecoderException("Header is too long: "
+                        + header.limit());
+            }
+
+            header.position(header.limit());
+            header.limit(header.capacity());
+
+            return false;
+        }
+
+        // The bytes following the header have been appended from the
+        // received buffer : read them from there.
+        int unread = header.remaining();
+
+        if (unread > appended) {
+            throw new IllegalStateException(
+                    "decodeHeader() didn't consume the bytes it had refused before.");
+        }
+
+        in.position(in.position() - unread);
+        ctx.header = null;
+        startBody(ctx, length, out);
+
+        return true;
+    }
+
+    private void startBody(Context ctx, long length, ProtocolDecoderOutput out) {
+        if (length == 0) {
+            out.write(new MessageBodyChunk(EMPTY_BUFFER.duplicate(), true, null));
+        } else {
+            ctx.bodyRemaining = length;
+        }
+    }
+
+    private void writeChunk(Context ctx, IoSession session, IoBuffer in,
+            ProtocolDecoderOutput out) {
+        int length = (int) Math.min(in.remaining(), ctx.bodyRemaining);
+        int limit = in.limit();
+        IoBuffer chunk;
+
+        in.limit(in.position() + length);
+
+        if (IoUtil.isReadBufferRecycled(session)) {
+            chunk = IoBuffer.allocate(length);
+            chunk.put(in);
+            chunk.flip();
+        } else {
+            chunk = in.slice();
+            in.position(in.limit());
+        }
+
+        in.limit(limit);
+
+        boolean last = (ctx.bodyRemaining -= length) == 0;
+
+        if (last) {
+            ctx.bodyRemaining = -1;
+        }
+
+        if (ctx.maxPendingBytes > 0) {
+            out.write(new MessageBodyChunk(chunk, last, ctx));
+            ctx.acquire(length);
+        } else {
+            out.write(new MessageBodyChunk(chunk, last, null));
+        }
+    }
+
+    /**
+     * The decoding state and the flow control of a session.
+     */
+    static final class Context {
+        private final IoSession session;
+
+        private final int maxPendingBytes;
+
+        /** The beginning of an incomplete header, or null */
+        private IoBuffer header;
+
+        /** The number of body bytes to be read, or -1 when reading a header */
+        private long bodyRemaining = -1;
+
+        /** The number of bytes written to the output and not released */
+        private final AtomicLong pendingBytes = new AtomicLong();
+
+        /** Tells if the reads have been suspended by this context */
+        private boolean readSuspended;
+
+        private Context(IoSession session, int maxPendingBytes) {
+            this.session = session;
+            this.maxPendingBytes = maxPendingBytes;
+        }
+
+        private void acquire(int length) {
+            if (pendingBytes.addAndGet(length) > maxPendingBytes) {
+                updateReads();
+            }
+        }
+
+        void release(int length) {
+            pendingBytes.addAndGet(-length);
+            updateReads();
+        }
+
+        /**
+         * Suspends or resumes the reads according to the pending bytes.  The
+         * decision and the call to the session are made atomically, so that
+         * the thread which changed the pending bytes last always wins.
+         */
+        private synchronized void updateReads() {
+            long pending = pendingBytes.get();
+
+            if (!readSuspended && pending > maxPendingBytes) {
+                readSuspended = true;
+                session.suspendRead();
+            } else if (readSuspended && pending <= maxPendingBytes >> 1) {
+                readSuspended = false;
+                session.resumeRead();
+            }
+        }
+    }
+}
@@ -19,6 +19,10 @@
  */
 package org.apache.mina.filter.codec.demux;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.AttributeKey;
 import org.apache.mina.core.session.IoSession;
@@ -52,6 +56,14 @@ import org.apache.mina.filter.codec.ProtocolDecoderOutput;
  * in {@link MessageDecoder#decodable(IoSession, IoBuffer)} will be reverted back to its
  * original value.
  * <p>
+ * The {@link MessageDecoder}s which implement {@link DiscriminatedMessageDecoder}
+ * don't take part in this process : their discriminators are stored in a
+ * table when the first session is created, and such a decoder is selected
+ * with a single lookup as soon as the discriminator of the message has been
+ * received.  The other decoders are only asked when no discriminator
+ * matches.  When two decoders declare the same discriminator, the last added
+ * one is selected.
+ * <p>
  * Once a {@link MessageDecoder} is selected, {@link DemuxingProtocolDecoder} calls
  * {@link MessageDecoder#decode(IoSession, IoBuffer, ProtocolDecoderOutput)} continuously
  * reading its return value:
@@ -77,6 +89,9 @@ public class DemuxingProtocolDecoder extends CumulativeProtocolDecoder {
     private MessageDecoderFactory[] decoderFactories = new MessageDecoderFactory[0];
     private static final Class<?>[] EMPTY_PARAMS = new Class[0];
 
+    /** The index of the discriminated decoders, built with the first session */
+    private volatile DispatchIndex dispatchIndex;
+
     public DemuxingProtocolDecoder() {
         // Do nothing
     }
@@ -128,10 +143,29 @@ public class DemuxingProtocolDecoder extends CumulativeProtocolDecoder {
         
         if (state.currentDecoder == null) {
             MessageDecoder[] decoders = state.decoders;
+            DispatchIndex dispatchIndex = state.dispatchIndex;
+            boolean needData = false;
+            
+            // First look the discriminators up
+            DiscriminatorTable[] tables = dispatchIndex.tables;
+            
+            for (int i = tables.length - 1; i >= 0; i--) {
+                int index = tables[i].lookup(in);
+                
+                if (index >= 0) {
+                    state.currentDecoder = decoders[index];
+                    break;
+                } else if (index == DiscriminatorTable.NEED_DATA) {
+                    needData = true;
+                }
+            }
+            
+            // Then ask the other decoders
+            int[] fallbacks = dispatchIndex.fallbacks;
             int undecodables = 0;
         
-            for (int i = decoders.length - 1; i >= 0; i--) {
-                MessageDecoder decoder = decoders[i];
+            for (int i = fallbacks.length - 1; i >= 0 && state.currentDecoder == null; i--) {
+                MessageDecoder decoder = decoders[fallbacks[i]];
                 int limit = in.limit();
                 int pos = in.position();
 
@@ -156,7 +190,8 @@ public class DemuxingProtocolDecoder extends CumulativeProtocolDecoder {
                 }
             }
 
-            if (undecodables == decoders.length) {
+            if (state.currentDecoder == null && !needData
+                    && undecodables == fallbacks.length) {
                 // Throw an exception if all decoders cannot decode data.
                 String dump = in.getHexDump();
                 in.position(in.limit()); // Skip data
@@ -225,8 +260,25 @@ public class DemuxingProtocolDecoder extends CumulativeProtocolDecoder {
         return state;
     }
     
+    /**
+     * Returns the index of the given decoders, building it if the
+     * registered decoders have changed since it was last built.
+     */
+    private DispatchIndex getDispatchIndex(MessageDecoderFactory[] decoderFactories,
+            MessageDecoder[] decoders) {
+        DispatchIndex index = dispatchIndex;
+        
+        if (index == null || index.decoderFactories != decoderFactories) {
+            index = new DispatchIndex(decoderFactories, decoders);
+            dispatchIndex = index;
+        }
+        
+        return index;
+    }
+    
     private class State {
         private final MessageDecoder[] decoders;
+        private final DispatchIndex dispatchIndex;
         private MessageDecoder currentDecoder;
         
         private State() throws Exception {
@@ -235,6 +287,176 @@ public class DemuxingProtocolDecoder extends CumulativeProtocolDecoder {
             for (int i = decoderFactories.length - 1; i >= 0; i--) {
                 decoders[i] = decoderFactories[i].getDecoder();
             }
+            
+            dispatchIndex = getDispatchIndex(decoderFactories, decoders);
+        }
+    }
+
+    /**
+     * The positions of the registered decoders, either in a
+     * {@link DiscriminatorTable} or in the list of the decoders which have
+     * to be asked if they can decode a message.
+     */
+    private static class DispatchIndex {
+        private final MessageDecoderFactory[] decoderFactories;
+        private final DiscriminatorTable[] tables;
+        private final int[] fallbacks;
+        
+        private DispatchIndex(MessageDecoderFactory[] decoderFactories,
+                MessageDecoder[] decoders) {
+            this.decoderFactories = decoderFactories;
+            
+            List<DiscriminatorTable> tables = new ArrayList<DiscriminatorTable>();
+            int[] fallbacks = new int[decoders.length];
+            int fallbackCount = 0;
+            
+            for (int i = 0; i < decoders.length; i++) {
+                byte[] discriminator = null;
+                int offset = 0;
+                
+                if (decoders[i] instanceof DiscriminatedMessageDecoder) {
+                    DiscriminatedMessageDecoder decoder = (DiscriminatedMessageDecoder) decoders[i];
+                    discriminator = decoder.getDiscriminator();
+                    offset = decoder.getDiscriminatorOffset();
+                }
+                
+                if (discriminator == null) {
+                    fallbacks[fallbackCount++] = i;
+                    continue;
+                }
+                
+                if (discriminator.length == 0 || discriminator.length > 8) {
+                    throw new IllegalArgumentException(
+                            "discriminator length: " + discriminator.length
+                                    + " (expected: 1-8)");
+                }
+                
+                if (offset < 0) {
+                    throw new IllegalArgumentException(
+                            "discriminator offset: " + offset + " (expected: 0+)");
+                }
+                
+                DiscriminatorTable table = null;
+                
+                for (DiscriminatorTable t : tables) {
+                    if (t.offset == offset && t.length == discriminator.length) {
+                        table = t;
+                        break;
+                    }
+                }
+                
+                if (table == null) {
+                    table = new DiscriminatorTable(offset, discriminator.length);
+                    tables.add(table);
+                }
+                
+                // A decoder added later overrides the previous one
+                table.put(DiscriminatorTable.toKey(discriminator), i);
+            }
+            
+            this.tables = tables.toArray(new DiscriminatorTable[tables.size()]);
+            this.fallbacks = new int[fallbackCount];
+            System.arraycopy(fallbacks, 0, this.fallbacks, 0, fallbackCount);
+        }
+    }
+    
+    /**
+     * An open addressing hash table which maps the discriminators found at a
+     * given offset, and with a given length, to the position of their decoder.
+     */
+    private static class DiscriminatorTable {
+        private static final int NO_MATCH = -1;
+        private static final int NEED_DATA = -2;
+        
+        private final int offset;
+        private final int length;
+        private long[] keys = new long[8];
+        private int[] indexes = newIndexes(8);
+        private int size;
+        
+        private DiscriminatorTable(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+        
+        /**
+         * Returns the position of the decoder of the message starting at the
+         * buffer position, {@link #NO_MATCH} if there is none, or
+         * {@link #NEED_DATA} if the discriminator hasn't been received yet.
+         */
+        private int lookup(IoBuffer in) {
+            int start = in.position() + offset;
+            
+            if (in.limit() - start < length) {
+                return NEED_DATA;
+            }
+            
+            long key = 0;
+            
+            for (int i = 0; i < length; i++) {
+                key = (key << 8) | (in.get(start + i) & 0xFF);
+            }
+            
+            int mask = keys.length - 1;
+            
+            for (int i = hash(key) & mask; indexes[i] != NO_MATCH; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return indexes[i];
+                }
+            }
+            
+            return NO_MATCH;
+        }
+        
+        private void put(long key, int index) {
+            if ((size + 1) * 2 > keys.length) {
+                long[] oldKeys = keys;
+                int[] oldIndexes = indexes;
+                keys = new long[oldKeys.length * 2];
+                indexes = newIndexes(keys.length);
+                size = 0;
+                
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldIndexes[i] != NO_MATCH) {
+                        put(oldKeys[i], oldIndexes[i]);
+                    }
+                }
+            }
+            
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            
+            while (indexes[i] != NO_MATCH && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            
+            if (indexes[i] == NO_MATCH) {
+                size++;
+            }
+            
+            keys[i] = key;
+            indexes[i] = index;
+        }
+        
+        private static long toKey(byte[] discriminator) {
+            long key = 0;
+            
+            for (byte b : discriminator) {
+                key = (key << 8) | (b & 0xFF);
+            }
+            
+            return key;
+        }
+        
+        private static int hash(long key) {
+            int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+        
+        private static int[] newIndexes(int capacity) {
+            int[] indexes = new int[capacity];
+            Arrays.fill(indexes, NO_MATCH);
+            return indexes;
         }
     }
 
@@ -0,0 +1,58 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec.demux;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+
+/**
+ * A {@link MessageDecoder} whose messages all start with a fixed
+ * discriminator, such as a magic number or an opcode, located at a fixed
+ * offset from the beginning of the message.
+ * <p>
+ * {@link DemuxingProtocolDecoder} selects such a decoder with a single table
+ * lookup on the discriminator, without calling its
+ * {@link #decodable(IoSession, IoBuffer)} method.  The decoders which don't
+ * implement this interface are still selected by calling their
+ * {@link #decodable(IoSession, IoBuffer)} method when no discriminator
+ * matches.
+ * <p>
+ * The discriminator is read once, when the first session is created, so all
+ * the decoders returned by a {@link MessageDecoderFactory} must declare the
+ * same discriminator.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ *
+ * @see DemuxingProtocolDecoder
+ */
+public interface DiscriminatedMessageDecoder extends MessageDecoder {
+    /**
+     * Returns the offset of the discriminator from the beginning of the
+     * message.
+     */
+    int getDiscriminatorOffset();
+
+    /**
+     * Returns the bytes of the discriminator.  It must be 1 to 8 bytes long,
+     * or <tt>null</tt> if this decoder has to be selected by calling its
+     * {@link #decodable(IoSession, IoBuffer)} method.
+     */
+    byte[] getDiscriminator();
+}
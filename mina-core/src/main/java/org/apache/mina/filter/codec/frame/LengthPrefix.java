@@ -0,0 +1,85 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec.frame;
+
+/**
+ * The encodings of the length prefix of a frame.  The fixed length prefixes
+ * are read and written in the byte order of the buffers.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public enum LengthPrefix {
+    /** An unsigned byte, for the frames up to 255 bytes */
+    BYTE(1, 0xFF),
+
+    /** An unsigned short, for the frames up to 65535 bytes */
+    SHORT(2, 0xFFFF),
+
+    /** A positive int */
+    INT(4, Integer.MAX_VALUE),
+
+    /**
+     * A variable length unsigned integer made of 1 to 5 bytes, the 7 lower
+     * bits of each byte holding a group of 7 bits of the length, least
+     * significant group first, and the higher bit being set on every byte
+     * except the last one.  This is the encoding of the Protocol Buffers.
+     */
+    VARINT(5, Integer.MAX_VALUE);
+
+    private final int maxPrefixLength;
+
+    private final int maxFrameLength;
+
+    private LengthPrefix(int maxPrefixLength, int maxFrameLength) {
+        this.maxPrefixLength = maxPrefixLength;
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * Returns the maximum number of bytes of the prefix.
+     */
+    public int getMaxPrefixLength() {
+        return maxPrefixLength;
+    }
+
+    /**
+     * Returns the maximum length of a frame this prefix can encode.
+     */
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    /**
+     * Returns the number of bytes of the prefix encoding the given length.
+     */
+    int getPrefixLength(int frameLength) {
+        if (this != VARINT) {
+            return maxPrefixLength;
+        }
+
+        int prefixLength = 1;
+
+        while ((frameLength >>>= 7) != 0) {
+            prefixLength++;
+        }
+
+        return prefixLength;
+    }
+}
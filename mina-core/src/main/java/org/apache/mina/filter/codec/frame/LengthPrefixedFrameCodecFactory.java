@@ -0,0 +1,101 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec.frame;
+
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFactory;
+import org.apache.mina.filter.codec.ProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolEncoder;
+
+/**
+ * A {@link ProtocolCodecFactory} that splits the data into frames preceded
+ * by their length.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ *
+ * @see LengthPrefixedFrameEncoder
+ * @see LengthPrefixedFrameDecoder
+ */
+public class LengthPrefixedFrameCodecFactory implements ProtocolCodecFactory {
+
+    private final LengthPrefixedFrameEncoder encoder;
+
+    private final LengthPrefixedFrameDecoder decoder;
+
+    public LengthPrefixedFrameCodecFactory(LengthPrefix prefix) {
+        encoder = new LengthPrefixedFrameEncoder(prefix);
+        decoder = new LengthPrefixedFrameDecoder(prefix);
+    }
+
+    public LengthPrefixedFrameCodecFactory() {
+        this(LengthPrefix.INT);
+    }
+
+    /**
+     * Returns the encoding of the length prefix.
+     */
+    public LengthPrefix getPrefix() {
+        return encoder.getPrefix();
+    }
+
+    /**
+     * Returns the allowed maximum length of an encoded frame.
+     * <p>
+     * This method does the same job as {@link LengthPrefixedFrameEncoder#getMaxFrameLength()}.
+     */
+    public int getEncoderMaxFrameLength() {
+        return encoder.getMaxFrameLength();
+    }
+
+    /**
+     * Sets the allowed maximum length of an encoded frame.
+     * <p>
+     * This method does the same job as {@link LengthPrefixedFrameEncoder#setMaxFrameLength(int)}.
+     */
+    public void setEncoderMaxFrameLength(int maxFrameLength) {
+        encoder.setMaxFrameLength(maxFrameLength);
+    }
+
+    /**
+     * Returns the allowed maximum length of a decoded frame.
+     * <p>
+     * This method does the same job as {@link LengthPrefixedFrameDecoder#getMaxFrameLength()}.
+     */
+    public int getDecoderMaxFrameLength() {
+        return decoder.getMaxFrameLength();
+    }
+
+    /**
+     * Sets the allowed maximum length of a decoded frame.
+     * <p>
+     * This method does the same job as {@link LengthPrefixedFrameDecoder#setMaxFrameLength(int)}.
+     */
+    public void setDecoderMaxFrameLength(int maxFrameLength) {
+        decoder.setMaxFrameLength(maxFrameLength);
+    }
+
+    public ProtocolEncoder getEncoder(IoSession session) throws Exception {
+        return encoder;
+    }
+
+    public ProtocolDecoder getDecoder(IoSession session) throws Exception {
+        return decoder;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec.frame;
+
+import org.apache.mina.core.IoUtil;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.AbstractIoService;
+import org.apache.mina.core.service.IoService;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolDecoderAdapter;
+import org.apache.mina.filter.codec.ProtocolDecoderException;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.RecoverableProtocolDecoderException;
+
+/**
+ * A {@link ProtocolDecoder} which splits the received data into frames
+ * preceded by their length, and writes the content of each frame as an
+ * {@link IoBuffer} whose position is <tt>0</tt>.
+ * <p>
+ * The frames which are received within a single read are slices of the read
+ * buffer, so they are not copied.  Only the frames spanning several reads
+ * are cumulated into a new buffer.  When the {@link IoService} recycles its
+ * read buffers (see {@link AbstractIoService#setReadBufferRecycled(boolean)}), all the
+ * frames are copied, because the I/O processor reuses the read buffer as
+ * soon as the filter chain returns.
+ * <p>
+ * A frame longer than {@link #getMaxFrameLength()} is skipped, and a
+ * {@link RecoverableProtocolDecoderException} is thrown.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class LengthPrefixedFrameDecoder extends ProtocolDecoderAdapter {
+
+    public final static int DEFAULT_MAX_FRAME_LENGTH = 1048576;
+
+    private final AttributeKey CONTEXT = new AttributeKey(getClass(), "context");
+
+    private final LengthPrefix prefix;
+
+    private int maxFrameLength;
+
+    /**
+     * @param prefix         the encoding of the length prefix
+     * @param maxFrameLength maximum number of bytes allowed for a single frame
+     */
+    public LengthPrefixedFrameDecoder(LengthPrefix prefix, int maxFrameLength) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix");
+        }
+
+        this.prefix = prefix;
+        setMaxFrameLength(maxFrameLength);
+    }
+
+    public LengthPrefixedFrameDecoder(LengthPrefix prefix) {
+        this(prefix, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public LengthPrefixedFrameDecoder() {
+        this(LengthPrefix.INT);
+    }
+
+    /**
+     * Returns the encoding of the length prefix.
+     */
+    public LengthPrefix getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Returns the maximum number of bytes allowed for a single frame, not
+     * including its prefix.  The default value is
+     * {@link #DEFAULT_MAX_FRAME_LENGTH}.
+     */
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    /**
+     * Sets the maximum number of bytes allowed for a single frame, not
+     * including its prefix.
+     * <p>
+     * Useful for preventing an OutOfMemory attack by the peer.
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength ("
+                    + maxFrameLength + ") should be a positive value");
+        }
+
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    public void decode(IoSession session, IoBuffer in, ProtocolDecoderOutput out)
+            throws Exception {
+        Context ctx = getContext(session);
+
+        if (ctx.discardedBytes > 0) {
+            discard(ctx, in);
+
+            if (ctx.discardedBytes > 0) {
+                return;
+            }
+        }
+
+        if (ctx.buffer != null && !completeFrame(ctx, in, out)) {
+            return;
+        }
+
+        boolean copy = IoUtil.isReadBufferRecycled(session);
+
+        while (in.hasRemaining()) {
+            int pos = in.position();
+            int prefixLength = getPrefixLength(in, pos, in.limit());
+
+            if (prefixLength < 0) {
+                break;
+            }
+
+            int frameLength = getFrameLength(in, pos, prefixLength);
+            int frameStart = pos + prefixLength;
+
+            if (frameLength > maxFrameLength) {
+                in.position(frameStart);
+                discardFrame(ctx, in, frameLength, frameLength);
+            }
+
+            if (in.limit() - frameStart < frameLength) {
+                break;
+            }
+
+            int limit = in.limit();
+            IoBuffer frame;
+
+            in.position(frameStart);
+            in.limit(frameStart + frameLength);
+
+            if (copy) {
+                frame = IoBuffer.allocate(frameLength);
+                frame.put(in);
+                frame.flip();
+            } else {
+                frame = in.slice();
+                in.position(in.limit());
+            }
+
+            in.limit(limit);
+            frame.order(in.order());
+            out.write(frame);
+        }
+
+        if (in.hasRemaining()) {
+            // Keep the beginning of the next frame until it is complete
+            int pos = in.position();
+            int prefixLength = getPrefixLength(in, pos, in.limit());
+            int capacity = prefix.getMaxPrefixLength();
+
+            if (prefixLength >= 0) {
+                capacity = prefixLength + getFrameLength(in, pos, prefixLength);
+            }
+
+            ctx.buffer = IoBuffer.allocate(capacity);
+            ctx.buffer.order(in.order());
+            ctx.buffer.put(in);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void dispose(IoSession session) throws Exception {
+        session.removeAttribute(CONTEXT);
+    }
+
+    private Context getContext(IoSession session) {
+        Context ctx = (Context) session.getAttribute(CONTEXT);
+
+        if (ctx == null) {
+            ctx = new Context();
+            session.setAttribute(CONTEXT, ctx);
+        }
+
+        return ctx;
+    }
+
+    /**
+     * Appends the received bytes to the frame cumulated in the context, and
+     * writes it once it is complete.
+     *
+     * @return <tt>true</tt> if the frame has been written
+     */
+    private boolean completeFrame(Context ctx, IoBuffer in,
+            ProtocolDecoderOutput out) throws ProtocolDecoderException {
+        IoBuffer buf = ctx.buffer;
+        int prefixLength = getPrefixLength(buf, 0, buf.position());
+
+        // The prefix is at most 5 bytes long : complete it byte per byte
+        while (prefixLength < 0) {
+            if (!in.hasRemaining()) {
+                return false;
+            }
+
+            buf.put(in.get());
+            prefixLength = getPrefixLength(buf, 0, buf.position());
+        }
+
+        int frameLength = getFrameLength(buf, 0, prefixLength);
+        int frameEnd = prefixLength + frameLength;
+
+        if (frameLength > maxFrameLength) {
+            ctx.buffer = null;
+            discardFrame(ctx, in, frameEnd - buf.position(), frameLength);
+        }
+
+        if (buf.capacity() < frameEnd) {
+            buf.flip();
+            ctx.buffer = IoBuffer.allocate(frameEnd);
+            ctx.buffer.order(buf.order());
+            ctx.buffer.put(buf);
+            buf = ctx.buffer;
+        }
+
+        int length = Math.min(frameEnd - buf.position(), in.remaining());
+        int limit = in.limit();
+
+        in.limit(in.position() + length);
+        buf.put(in);
+        in.limit(limit);
+
+        if (buf.position() < frameEnd) {
+            return false;
+        }
+
+        ctx.buffer = null;
+        buf.flip();
+        buf.position(prefixLength);
+        out.write(buf.slice().order(buf.order()));
+        return true;
+    }
+
+    /**
+     * Skips the content of a frame which is too long.
+     */
+    private void discardFrame(Context ctx, IoBuffer in, int discardedBytes,
+            int frameLength) throws RecoverableProtocolDecoderException {
+        ctx.discardedBytes = discardedBytes;
+        discard(ctx, in);
+
+        throw new RecoverableProtocolDecoderException("Frame length ("
+                + frameLength + ") exceeds the maximum (" + maxFrameLength
+                + ")");
+    }
+
+    private void discard(Context ctx, IoBuffer in) {
+        int length = Math.min(ctx.discardedBytes, in.remaining());
+
+        in.position(in.position() + length);
+        ctx.discardedBytes -= length;
+    }
+
+    /**
+     * Returns the number of bytes of the prefix starting at the given
+     * position, or <tt>-1</tt> if it has not been completely received.
+     */
+    private int getPrefixLength(IoBuffer buf, int pos, int limit)
+            throws ProtocolDecoderException {
+        if (prefix != LengthPrefix.VARINT) {
+            int prefixLength = prefix.getMaxPrefixLength();
+            return limit - pos >= prefixLength ? prefixLength : -1;
+        }
+
+        for (int i = pos; i < limit; i++) {
+            if ((buf.get(i) & 0x80) == 0) {
+                return i - pos + 1;
+            }
+
+            if (i - pos == 4) {
+                throw new ProtocolDecoderException(
+                        "Variable length prefix longer than 5 bytes");
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the length of the frame whose prefix starts at the given
+     * position.
+     */
+    private int getFrameLength(IoBuffer buf, int pos, int prefixLength)
+            throws ProtocolDecoderException {
+        long frameLength;
+
+        switch (prefix) {
+        case BYTE:
+            return buf.getUnsigned(pos);
+
+        case SHORT:
+            return buf.getUnsignedShort(pos);
+
+        case INT:
+            frameLength = buf.getInt(pos);
+            break;
+
+        default:
+            frameLength = 0;
+
+            for (int i = 0; i < prefixLength; i++) {
+                frameLength |= (long) (buf.get(pos + i) & 0x7F) << (7 * i);
+            }
+        }
+
+        if (frameLength < 0 || frameLength > Integer.MAX_VALUE) {
+            throw new ProtocolDecoderException("Invalid frame length: "
+                    + frameLength);
+        }
+
+        return (int) frameLength;
+    }
+
+    private static class Context {
+        /** The beginning of a frame spanning several reads, if any */
+        private IoBuffer buffer;
+
+        /** The number of bytes of a too long frame which are still to be skipped */
+        private int discardedBytes;
+    }
+}
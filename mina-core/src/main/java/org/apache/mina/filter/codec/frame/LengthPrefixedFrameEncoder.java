@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec.frame;
+
+import java.nio.ByteBuffer;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.codec.ProtocolEncoder;
+import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+
+/**
+ * A {@link ProtocolEncoder} which prefixes the content of a frame, given as
+ * a byte array or a {@link ByteBuffer}, with its length.  An {@link IoBuffer}
+ * can't be used, because {@link ProtocolCodecFilter} considers it has
+ * already been encoded.
+ * <p>
+ * The small frames are copied after their prefix, in a single buffer.  The
+ * larger ones are not copied : the prefix and the content are written as two
+ * buffers, which the I/O processor writes with a single system call when
+ * the gathering writes are enabled (see
+ * {@link org.apache.mina.core.session.IoSessionConfig#setMaxGatheringWriteCount(int)}).
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class LengthPrefixedFrameEncoder extends ProtocolEncoderAdapter {
+
+    public final static int DEFAULT_MAX_FRAME_LENGTH = 1048576;
+
+    /** The length up to which a frame is copied after its prefix */
+    private static final int COPY_THRESHOLD = 1024;
+
+    private final LengthPrefix prefix;
+
+    private int maxFrameLength;
+
+    /**
+     * @param prefix         the encoding of the length prefix
+     * @param maxFrameLength maximum number of bytes allowed for a single frame
+     */
+    public LengthPrefixedFrameEncoder(LengthPrefix prefix, int maxFrameLength) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix");
+        }
+
+        this.prefix = prefix;
+        setMaxFrameLength(maxFrameLength);
+    }
+
+    public LengthPrefixedFrameEncoder(LengthPrefix prefix) {
+        this(prefix, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public LengthPrefixedFrameEncoder() {
+        this(LengthPrefix.INT);
+    }
+
+    /**
+     * Returns the encoding of the length prefix.
+     */
+    public LengthPrefix getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Returns the maximum number of bytes allowed for a single frame, not
+     * including its prefix.  The default value is
+     * {@link #DEFAULT_MAX_FRAME_LENGTH}.
+     */
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    /**
+     * Sets the maximum number of bytes allowed for a single frame, not
+     * including its prefix.  The encoder will throw an
+     * {@link IllegalArgumentException} when a longer frame is written.
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength ("
+                    + maxFrameLength + ") should be a positive value");
+        }
+
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    public void encode(IoSession session, Object message, ProtocolEncoderOutput out)
+            throws Exception {
+        IoBuffer frame;
+
+        if (message instanceof byte[]) {
+            frame = IoBuffer.wrap((byte[]) message);
+        } else if (message instanceof ByteBuffer) {
+            // Don't move the position of the message
+            frame = IoBuffer.wrap(((ByteBuffer) message).duplicate());
+        } else {
+            throw new IllegalArgumentException("Unsupported message type: "
+                    + message.getClass().getName());
+        }
+
+        int frameLength = frame.remaining();
+
+        if (frameLength > maxFrameLength || frameLength > prefix.getMaxFrameLength()) {
+            throw new IllegalArgumentException("Frame length: " + frameLength);
+        }
+
+        int prefixLength = prefix.getPrefixLength(frameLength);
+
+        if (frameLength <= COPY_THRESHOLD) {
+            IoBuffer buffer = IoBuffer.allocate(prefixLength + frameLength);
+            putPrefix(buffer, frameLength);
+            buffer.put(frame);
+            buffer.flip();
+            out.write(buffer);
+        } else {
+            IoBuffer buffer = IoBuffer.allocate(prefixLength);
+            putPrefix(buffer, frameLength);
+            buffer.flip();
+            out.write(buffer);
+            out.write(frame);
+        }
+    }
+
+    private void putPrefix(IoBuffer buffer, int frameLength) {
+        switch (prefix) {
+        case BYTE:
+            buffer.put((byte) frameLength);
+            break;
+
+        case SHORT:
+            buffer.putShort((short) frameLength);
+            break;
+
+        case INT:
+            buffer.putInt(frameLength);
+            break;
+
+        default:
+            while ((frameLength & ~0x7F) != 0) {
+                buffer.put((byte) (frameLength & 0x7F | 0x80));
+                frameLength >>>= 7;
+            }
+
+            buffer.put((byte) frameLength);
+        }
+    }
+}
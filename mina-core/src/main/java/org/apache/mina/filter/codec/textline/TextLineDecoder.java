@@ -19,6 +19,8 @@
  */
 package org.apache.mina.filter.codec.textline;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
@@ -34,10 +36,21 @@ import org.apache.mina.filter.codec.RecoverableProtocolDecoderException;
 
 /**
  * A {@link ProtocolDecoder} which decodes a text line into a string.
+ * <p>
+ * The lines which are entirely contained in a received buffer are decoded
+ * directly from it, looking for the delimiter eight bytes at a time.  Only
+ * the lines spanning several buffers are accumulated in a per-session
+ * buffer.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class TextLineDecoder implements ProtocolDecoder {
+    /** A long with each of its bytes set to 0x7F */
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    /** A long with each of its bytes set to 0x01 */
+    private static final long BYTE_ONES = 0x0101010101010101L;
+
     private final AttributeKey CONTEXT = new AttributeKey(getClass(), "context");
 
     private final Charset charset;
@@ -230,6 +243,10 @@ public class TextLineDecoder implements ProtocolDecoder {
             throws CharacterCodingException, ProtocolDecoderException {
         int matchCount = ctx.getMatchCount();
 
+        if (matchCount == 0 && ctx.isEmpty()) {
+            decodeCompleteLines(ctx, session, in, out);
+        }
+
         // Try to find a match
         int oldPos = in.position();
         int oldLimit = in.limit();
@@ -283,7 +300,9 @@ public class TextLineDecoder implements ProtocolDecoder {
                             "Line is too long: " + overflowPosition);
                 }
 
-                oldPos = pos;
+                // The next lines may not span this buffer
+                decodeCompleteLines(ctx, session, in, out);
+                oldPos = in.position();
                 matchCount = 0;
             }
         }
@@ -302,6 +321,10 @@ public class TextLineDecoder implements ProtocolDecoder {
             throws CharacterCodingException, ProtocolDecoderException {
         int matchCount = ctx.getMatchCount();
 
+        if (matchCount == 0 && ctx.isEmpty()) {
+            decodeCompleteLines(ctx, session, in, out);
+        }
+
         // Try to find a match
         int oldPos = in.position();
         int oldLimit = in.limit();
@@ -340,7 +363,9 @@ public class TextLineDecoder implements ProtocolDecoder {
                                 "Line is too long: " + overflowPosition);
                     }
 
-                    oldPos = pos;
+                    // The next lines may not span this buffer
+                    decodeCompleteLines(ctx, session, in, out);
+                    oldPos = in.position();
                     matchCount = 0;
                 }
             } else {
@@ -357,6 +382,134 @@ public class TextLineDecoder implements ProtocolDecoder {
         ctx.setMatchCount(matchCount);
     }
 
+    /**
+     * Decodes the lines which are entirely contained in the buffer, without
+     * copying them into the context buffer, which must be empty.  The buffer
+     * position is moved to the beginning of the first incomplete line.
+     */
+    private void decodeCompleteLines(Context ctx, IoSession session, IoBuffer in, ProtocolDecoderOutput out)
+            throws CharacterCodingException, ProtocolDecoderException {
+        ByteBuffer nioBuffer = in.buf();
+        boolean auto = delimBuf.limit() == 0;
+        int start = in.position();
+        int limit = in.limit();
+
+        for (;;) {
+            int end;
+            int next;
+
+            if (auto) {
+                end = indexOf(nioBuffer, start, limit, (byte) '\n');
+
+                if (end < 0) {
+                    break;
+                }
+
+                next = end + 1;
+
+                // Strip the '\r's preceding the '\n'
+                while (end > start && nioBuffer.get(end - 1) == '\r') {
+                    end--;
+                }
+            } else {
+                end = indexOfDelimiter(nioBuffer, start, limit);
+
+                if (end < 0) {
+                    break;
+                }
+
+                next = end + delimBuf.limit();
+            }
+
+            if (next - start > maxLineLength) {
+                in.position(next);
+                ctx.reset();
+                throw new RecoverableProtocolDecoderException(
+                        "Line is too long: " + (next - start));
+            }
+
+            in.limit(end);
+            in.position(start);
+
+            try {
+                writeText(session, in.getString(ctx.getDecoder()), out);
+            } finally {
+                in.limit(limit);
+                in.position(next);
+            }
+
+            start = next;
+        }
+
+        in.position(start);
+    }
+
+    /**
+     * Returns the index of the first occurrence of the delimiter entirely
+     * contained between <tt>from</tt> (inclusive) and <tt>to</tt> (exclusive),
+     * or -1.
+     */
+    private int indexOfDelimiter(ByteBuffer buffer, int from, int to) {
+        byte first = delimBuf.get(0);
+        int length = delimBuf.limit();
+
+        for (int i = from;; i++) {
+            i = indexOf(buffer, i, to, first);
+
+            if (i < 0 || i + length > to) {
+                return -1;
+            }
+
+            int j = 1;
+
+            while (j < length && buffer.get(i + j) == delimBuf.get(j)) {
+                j++;
+            }
+
+            if (j == length) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the first occurrence of a byte between
+     * <tt>from</tt> (inclusive) and <tt>to</tt> (exclusive), or -1.  The
+     * bytes are read eight at a time, and a byte of the XOR with the
+     * searched value is zero where the value is found.
+     */
+    private static int indexOf(ByteBuffer buffer, int from, int to, byte value) {
+        int i = from;
+
+        if (to - from >= 8) {
+            long pattern = (value & 0xFFL) * BYTE_ONES;
+            boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+
+            for (; i <= to - 8; i += 8) {
+                long x = buffer.getLong(i) ^ pattern;
+
+                // The high bit of each zero byte of x, and only of them
+                long zeros = ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+
+                if (zeros != 0) {
+                    if (bigEndian) {
+                        return i + (Long.numberOfLeadingZeros(zeros) >>> 3);
+                    }
+
+                    return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+                }
+            }
+        }
+
+        for (; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
     /**
      * By default, this method propagates the decoded line of text to
      * {@code ProtocolDecoderOutput#write(Object)}.  You may override this method to modify
@@ -404,6 +557,13 @@ public class TextLineDecoder implements ProtocolDecoder {
             return buf;
         }
 
+        /**
+         * Tells if no part of a line is pending.
+         */
+        public boolean isEmpty() {
+            return buf.position() == 0 && overflowPosition == 0;
+        }
+
         public int getOverflowPosition() {
             return overflowPosition;
         }
@@ -98,6 +98,18 @@ import org.apache.mina.core.write.WriteRequest;
  * chain.addLast("executor2", new ExecutorFilter(IoEventType.WRITE));
  * </code></pre>
  * 
+ * <h2>Batching Received Messages</h2>
+ *
+ * When a single read is decoded into many messages, each of them is submitted
+ * to the executor as a separate task.  If the underlying executor is an
+ * {@link OrderedThreadPoolExecutor}, you can make it queue the consecutive
+ * <tt>messageReceived</tt> events of a session as a single task, which is
+ * then delivered in order by one worker:
+ * <pre><code>
+ * ExecutorFilter executorFilter = new ExecutorFilter();
+ * ((OrderedThreadPoolExecutor) executorFilter.getExecutor()).setMessageReceivedBatched(true);
+ * </code></pre>
+ *
  * <h2>Preventing {@link OutOfMemoryError}</h2>
  * 
  * Please refer to {@link IoEventQueueThrottle}, which is specified as
@@ -143,7 +155,8 @@ public class ExecutorFilter extends IoFilterAdapter {
         IoEventType.MESSAGE_SENT,
         IoEventType.SESSION_CLOSED, 
         IoEventType.SESSION_IDLE,
-        IoEventType.SESSION_OPENED
+        IoEventType.SESSION_OPENED,
+        IoEventType.WRITABILITY_CHANGED
     };
 
     /**
@@ -647,6 +660,21 @@ public class ExecutorFilter extends IoFilterAdapter {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void writabilityChanged(NextFilter nextFilter, IoSession session,
+            boolean writable) throws Exception {
+        if (eventTypes.contains(IoEventType.WRITABILITY_CHANGED)) {
+            IoFilterEvent event = new IoFilterEvent(nextFilter,
+                IoEventType.WRITABILITY_CHANGED, session, writable); 
+            fireEvent(event);
+        } else {
+            super.writabilityChanged(nextFilter, session, writable);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
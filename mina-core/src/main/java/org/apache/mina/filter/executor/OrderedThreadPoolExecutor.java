@@ -38,6 +38,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.mina.core.session.AttributeKey;
 import org.apache.mina.core.session.DummySession;
 import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoEventType;
 import org.apache.mina.core.session.IoSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,6 +83,9 @@ public class OrderedThreadPoolExecutor extends ThreadPoolExecutor {
 
     private final IoEventQueueHandler eventQueueHandler;
 
+    /** A flag set if the consecutive messageReceived events are batched */
+    private volatile boolean messageReceivedBatched;
+
     /**
      * Creates a default ThreadPool, with default values :
      * - minimum pool size is 0
@@ -241,6 +245,30 @@ public class OrderedThreadPoolExecutor extends ThreadPoolExecutor {
         return eventQueueHandler;
     }
 
+    /**
+     * @return <tt>true</tt> if the consecutive <tt>messageReceived</tt>
+     * events of a session are batched.
+     */
+    public boolean isMessageReceivedBatched() {
+        return messageReceivedBatched;
+    }
+
+    /**
+     * Sets if the consecutive <tt>messageReceived</tt> events of a session
+     * are batched.  When enabled, a <tt>messageReceived</tt> event is appended
+     * to the last task of the session if this task is a batch of
+     * <tt>messageReceived</tt> events that no worker has taken yet, so a burst
+     * of messages decoded from a single read is queued and delivered as a
+     * single task.  The events are still delivered in order, and the
+     * {@link IoEventQueueHandler} is still notified of each of them.
+     * 
+     * @param messageReceivedBatched <tt>true</tt> to batch the consecutive
+     * <tt>messageReceived</tt> events
+     */
+    public void setMessageReceivedBatched(boolean messageReceivedBatched) {
+        this.messageReceivedBatched = messageReceivedBatched;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -410,10 +438,19 @@ public class OrderedThreadPoolExecutor extends ThreadPoolExecutor {
             synchronized (sessionTasksQueue.tasksQueue) {
                 
                 for (Runnable task: sessionTasksQueue.tasksQueue) {
-                    getQueueHandler().polled(this, (IoEvent) task);
-                    answer.add(task);
+                    if (task instanceof MessageBatch) {
+                        for (IoEvent event: ((MessageBatch) task).events) {
+                            getQueueHandler().polled(this, event);
+                            answer.add(event);
+                        }
+                    } else {
+                        getQueueHandler().polled(this, (IoEvent) task);
+                        answer.add(task);
+                    }
                 }
                 
+                sessionTasksQueue.openBatch = null;
+                
                 sessionTasksQueue.tasksQueue.clear();
             }
         }
@@ -437,7 +474,12 @@ public class OrderedThreadPoolExecutor extends ThreadPoolExecutor {
                 sb.append( ", " );
             }
                 
-            sb.append(((IoEvent)elem).getType()).append(", ");
+            if (elem instanceof MessageBatch) {
+                sb.append(IoEventType.MESSAGE_RECEIVED).append(" x ")
+                    .append(((MessageBatch) elem).events.size()).append(", ");
+            } else {
+                sb.append(((IoEvent)elem).getType()).append(", ");
+            }
         }
         sb.append( "]\n" );
         LOGGER.debug( sb.toString() );
@@ -475,7 +517,22 @@ public class OrderedThreadPoolExecutor extends ThreadPoolExecutor {
             // Ok, the message has been accepted
             synchronized (tasksQueue) {
                 // Inject the event into the executor taskQueue
-                tasksQueue.offer(event);
+                if (messageReceivedBatched && (event.getType() == IoEventType.MESSAGE_RECEIVED)) {
+                    // Append the event to the batch at the end of the queue,
+                    // if no worker has taken it yet.
+                    MessageBatch batch = sessionTasksQueue.openBatch;
+                    
+                    if (batch == null) {
+                        batch = new MessageBatch();
+                        sessionTasksQueue.openBatch = batch;
+                        tasksQueue.offer(batch);
+                    }
+                    
+                    batch.events.add(event);
+                } else {
+                    sessionTasksQueue.openBatch = null;
+                    tasksQueue.offer(event);
+                }
                 
                 if (sessionTasksQueue.processingCompleted) {
                     sessionTasksQueue.processingCompleted = false;
@@ -642,6 +699,17 @@ public class OrderedThreadPoolExecutor extends ThreadPoolExecutor {
         
         synchronized (tasksQueue) {
             removed = tasksQueue.remove(task);
+            
+            if (!removed && (event.getType() == IoEventType.MESSAGE_RECEIVED)) {
+                // The event might have been batched.
+                for (Runnable queuedTask: tasksQueue) {
+                    if ((queuedTask instanceof MessageBatch) 
+                            && ((MessageBatch) queuedTask).events.remove(event)) {
+                        removed = true;
+                        break;
+                    }
+                }
+            }
         }
 
         if (removed) {
@@ -765,11 +833,24 @@ public class OrderedThreadPoolExecutor extends ThreadPoolExecutor {
                         sessionTasksQueue.processingCompleted = true;
                         break;
                     }
+                    
+                    if (task == sessionTasksQueue.openBatch) {
+                        // Close the batch : the next events will be queued
+                        // after it.
+                        sessionTasksQueue.openBatch = null;
+                    }
                 }
 
-                eventQueueHandler.polled(OrderedThreadPoolExecutor.this, (IoEvent) task);
-
-                runTask(task);
+                if (task instanceof MessageBatch) {
+                    for (IoEvent event: ((MessageBatch) task).events) {
+                        eventQueueHandler.polled(OrderedThreadPoolExecutor.this, event);
+                        runTask(event);
+                    }
+                } else {
+                    eventQueueHandler.polled(OrderedThreadPoolExecutor.this, (IoEvent) task);
+    
+                    runTask(task);
+                }
             }
         }
 
@@ -801,5 +882,22 @@ public class OrderedThreadPoolExecutor extends ThreadPoolExecutor {
         
         /** The current task state */
         private boolean processingCompleted = true;
+        
+        /** The batch of messageReceived events at the end of the queue, if any */
+        private MessageBatch openBatch;
+    }
+    
+    /**
+     * A batch of consecutive messageReceived events queued as a single task.
+     * The worker delivers the events one by one.
+     */
+    private static class MessageBatch implements Runnable {
+        private final List<IoEvent> events = new ArrayList<IoEvent>();
+        
+        public void run() {
+            for (IoEvent event: events) {
+                event.run();
+            }
+        }
     }
 }
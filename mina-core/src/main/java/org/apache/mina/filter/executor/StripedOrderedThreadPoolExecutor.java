@@ -0,0 +1,484 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.executor;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.util.ExceptionMonitor;
+
+/**
+ * An {@link java.util.concurrent.ExecutorService} that maintains the order
+ * of {@link IoEvent}s like {@link OrderedThreadPoolExecutor}, but which
+ * avoids its shared structures : the sessions are hashed to the workers,
+ * and each worker has its own queue of sessions ready to be processed.
+ * <p>
+ * A worker processes the sessions of its own queue first.  When its queue
+ * is empty, it steals a ready session from the queue of another worker
+ * before going idle, so a busy worker doesn't delay the sessions hashed to
+ * it when other workers are idle.  As in {@link OrderedThreadPoolExecutor},
+ * a session is in at most one queue at a time and is processed by a single
+ * worker at a time, so its events are never reordered.
+ * <p>
+ * Unlike {@link OrderedThreadPoolExecutor}, the number of workers is fixed,
+ * and all of them are started when the executor is created.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ * @org.apache.xbean.XBean
+ */
+public class StripedOrderedThreadPoolExecutor extends AbstractExecutorService {
+    /** A default value for the pool size */
+    private static final int DEFAULT_POOL_SIZE = 16;
+
+    /**
+     * The maximum number of tasks of a session executed in a row before the
+     * worker moves to the next session.
+     */
+    private static final int MAX_TASKS_PER_RUN = 64;
+
+    /** The maximum time an idle worker waits before looking for work again */
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** A key stored into the session's attribute for the event tasks being queued */
+    private final AttributeKey TASKS_QUEUE = new AttributeKey(getClass(), "tasksQueue");
+
+    private final Worker[] workers;
+
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+
+    private final CountDownLatch terminated;
+
+    private volatile boolean shutdown;
+
+    private final IoEventQueueHandler eventQueueHandler;
+
+    /**
+     * Creates a new instance with 16 workers.
+     */
+    public StripedOrderedThreadPoolExecutor() {
+        this(DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param poolSize The number of workers
+     */
+    public StripedOrderedThreadPoolExecutor(int poolSize) {
+        this(poolSize, Executors.defaultThreadFactory(), null);
+    }
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param poolSize The number of workers
+     * @param threadFactory The factory used to create threads
+     */
+    public StripedOrderedThreadPoolExecutor(int poolSize, ThreadFactory threadFactory) {
+        this(poolSize, threadFactory, null);
+    }
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param poolSize The number of workers
+     * @param threadFactory The factory used to create threads
+     * @param eventQueueHandler The queue used to store events
+     */
+    public StripedOrderedThreadPoolExecutor(int poolSize, ThreadFactory threadFactory,
+            IoEventQueueHandler eventQueueHandler) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("poolSize: " + poolSize);
+        }
+
+        if (threadFactory == null) {
+            throw new IllegalArgumentException("threadFactory");
+        }
+
+        // The queueHandler might be null.
+        if (eventQueueHandler == null) {
+            this.eventQueueHandler = IoEventQueueHandler.NOOP;
+        } else {
+            this.eventQueueHandler = eventQueueHandler;
+        }
+
+        workers = new Worker[poolSize];
+        terminated = new CountDownLatch(poolSize);
+
+        for (int i = 0; i < poolSize; i++) {
+            workers[i] = new Worker(i);
+        }
+
+        for (Worker worker: workers) {
+            worker.thread = threadFactory.newThread(worker);
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * @return The associated queue handler. 
+     */
+    public IoEventQueueHandler getQueueHandler() {
+        return eventQueueHandler;
+    }
+
+    /**
+     * @return The number of workers.
+     */
+    public int getPoolSize() {
+        return workers.length;
+    }
+
+    /**
+     * @return The number of workers which are currently executing tasks.
+     */
+    public int getActiveCount() {
+        return workers.length - idleWorkers.get();
+    }
+
+    /**
+     * @return The number of tasks executed so far.
+     */
+    public long getCompletedTaskCount() {
+        long answer = 0;
+
+        for (Worker worker: workers) {
+            answer += worker.completedTaskCount;
+        }
+
+        return answer;
+    }
+
+    /**
+     * @return The number of times a worker took a session from the queue
+     * of another worker.
+     */
+    public long getStealCount() {
+        long answer = 0;
+
+        for (Worker worker: workers) {
+            answer += worker.stealCount;
+        }
+
+        return answer;
+    }
+
+    /**
+     * Get the session's tasks queue.
+     */
+    private SessionTasksQueue getSessionTasksQueue(IoSession session) {
+        SessionTasksQueue queue = (SessionTasksQueue) session.getAttribute(TASKS_QUEUE);
+
+        if (queue == null) {
+            queue = new SessionTasksQueue(workers[(int) ((session.getId() & Long.MAX_VALUE) % workers.length)]);
+            SessionTasksQueue oldQueue = 
+                (SessionTasksQueue) session.setAttributeIfAbsent(TASKS_QUEUE, queue);
+
+            if (oldQueue != null) {
+                queue = oldQueue;
+            }
+        }
+
+        return queue;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute(Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor has been shut down.");
+        }
+
+        // Check that it's a IoEvent task
+        if (!(task instanceof IoEvent)) {
+            throw new IllegalArgumentException("task must be an IoEvent or its subclass.");
+        }
+
+        IoEvent event = (IoEvent) task;
+        SessionTasksQueue sessionTasksQueue = getSessionTasksQueue(event.getSession());
+        boolean offerSession = false;
+
+        // propose the new event to the event queue handler. If we
+        // use a throttle queue handler, the message may be rejected
+        // if the maximum size has been reached.
+        boolean offerEvent = eventQueueHandler.accept(this, event);
+
+        if (offerEvent) {
+            synchronized (sessionTasksQueue) {
+                sessionTasksQueue.tasksQueue.offer(event);
+
+                if (sessionTasksQueue.processingCompleted) {
+                    sessionTasksQueue.processingCompleted = false;
+                    offerSession = true;
+                }
+            }
+        }
+
+        if (offerSession) {
+            // The session was not scheduled yet : hand it over to its worker.
+            schedule(sessionTasksQueue);
+        }
+
+        if (offerEvent) {
+            eventQueueHandler.offered(this, event);
+        }
+    }
+
+    /**
+     * Puts a ready session into the queue of its worker, and wakes up either
+     * this worker or an idle one which will steal the session.
+     */
+    private void schedule(SessionTasksQueue sessionTasksQueue) {
+        Worker home = sessionTasksQueue.home;
+        home.readySessions.offer(sessionTasksQueue);
+
+        if (home.parked) {
+            LockSupport.unpark(home.thread);
+        } else if (idleWorkers.get() > 0) {
+            for (int i = 1; i < workers.length; i++) {
+                Worker worker = workers[(home.index + i) % workers.length];
+
+                if (worker.parked) {
+                    LockSupport.unpark(worker.thread);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void shutdown() {
+        if (shutdown) {
+            return;
+        }
+
+        shutdown = true;
+
+        for (Worker worker: workers) {
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Runnable> shutdownNow() {
+        shutdown();
+
+        List<Runnable> answer = new ArrayList<Runnable>();
+
+        for (Worker worker: workers) {
+            SessionTasksQueue sessionTasksQueue;
+
+            while ((sessionTasksQueue = worker.readySessions.poll()) != null) {
+                synchronized (sessionTasksQueue) {
+                    for (Runnable task: sessionTasksQueue.tasksQueue) {
+                        getQueueHandler().polled(this, (IoEvent) task);
+                        answer.add(task);
+                    }
+
+                    sessionTasksQueue.tasksQueue.clear();
+                    sessionTasksQueue.processingCompleted = true;
+                }
+            }
+        }
+
+        return answer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    private class Worker implements Runnable {
+        private final int index;
+
+        /** The sessions hashed to this worker which have tasks to execute */
+        private final Queue<SessionTasksQueue> readySessions = new ConcurrentLinkedQueue<SessionTasksQueue>();
+
+        private Thread thread;
+
+        /** Set when the worker is about to park or is parked */
+        private volatile boolean parked;
+
+        private volatile long completedTaskCount;
+
+        private volatile long stealCount;
+
+        private Worker(int index) {
+            this.index = index;
+        }
+
+        public void run() {
+            try {
+                for (;;) {
+                    SessionTasksQueue sessionTasksQueue = readySessions.poll();
+
+                    if (sessionTasksQueue == null) {
+                        sessionTasksQueue = steal();
+                    }
+
+                    if (sessionTasksQueue != null) {
+                        runTasks(sessionTasksQueue);
+                        continue;
+                    }
+
+                    if (shutdown) {
+                        break;
+                    }
+
+                    idle();
+                }
+            } finally {
+                terminated.countDown();
+            }
+        }
+
+        /**
+         * Takes a ready session from the queue of another worker.
+         */
+        private SessionTasksQueue steal() {
+            for (int i = 1; i < workers.length; i++) {
+                SessionTasksQueue sessionTasksQueue = 
+                    workers[(index + i) % workers.length].readySessions.poll();
+
+                if (sessionTasksQueue != null) {
+                    stealCount++;
+                    return sessionTasksQueue;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Parks the worker until a session is scheduled.  The parked flag is
+         * set before checking the queues a last time, so that a concurrent
+         * schedule() either sees the flag and unparks the worker, or is seen
+         * by this last check.
+         */
+        private void idle() {
+            idleWorkers.incrementAndGet();
+            parked = true;
+
+            try {
+                if (!hasReadySessions() && !shutdown) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            } finally {
+                parked = false;
+                idleWorkers.decrementAndGet();
+            }
+        }
+
+        private boolean hasReadySessions() {
+            for (Worker worker: workers) {
+                if (!worker.readySessions.isEmpty()) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private void runTasks(SessionTasksQueue sessionTasksQueue) {
+            for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+                Runnable task;
+
+                synchronized (sessionTasksQueue) {
+                    task = sessionTasksQueue.tasksQueue.poll();
+
+                    if (task == null) {
+                        sessionTasksQueue.processingCompleted = true;
+                        return;
+                    }
+                }
+
+                eventQueueHandler.polled(StripedOrderedThreadPoolExecutor.this, (IoEvent) task);
+
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    ExceptionMonitor.getInstance().exceptionCaught(e);
+                }
+
+                completedTaskCount++;
+            }
+
+            // Let the other sessions of this worker run : the session is
+            // still scheduled, so put it back at the end of the queue.
+            readySessions.offer(sessionTasksQueue);
+        }
+    }
+
+    /**
+     * A class used to store the ordered list of events to be processed by the
+     * session, and the current task state.
+     */
+    private static class SessionTasksQueue {
+        /** The worker this session is hashed to */
+        private final Worker home;
+
+        /**  A queue of ordered event waiting to be processed */ 
+        private final Queue<Runnable> tasksQueue = new LinkedList<Runnable>();
+
+        /** The current task state */
+        private boolean processingCompleted = true;
+
+        private SessionTasksQueue(Worker home) {
+            this.home = home;
+        }
+    }
+}
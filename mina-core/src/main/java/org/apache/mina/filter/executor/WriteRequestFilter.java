@@ -23,9 +23,11 @@ import org.apache.mina.core.filterchain.IoFilterAdapter;
 import org.apache.mina.core.future.IoFutureListener;
 import org.apache.mina.core.future.WriteFuture;
 import org.apache.mina.core.service.IoProcessor;
+import org.apache.mina.core.session.AbstractIoSession;
 import org.apache.mina.core.session.IoEvent;
 import org.apache.mina.core.session.IoEventType;
 import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
 import org.apache.mina.core.write.WriteRequest;
 
 /**
@@ -57,6 +59,10 @@ import org.apache.mina.core.write.WriteRequest;
  * up.  To use such an handler, you have to insert an {@link ExecutorFilter}
  * before this filter or call {@link IoSession#write(Object)} method always
  * from a different thread.
+ * <p>
+ * The messages written with {@link AbstractIoSession#writeAndForget(Object)} have
+ * no {@link WriteFuture} to be notified of their completion, so they are
+ * not tracked by this filter.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -99,7 +105,8 @@ public class WriteRequestFilter extends IoFilterAdapter {
         if (queueHandler.accept(this, e)) {
             nextFilter.filterWrite(session, writeRequest);
             WriteFuture writeFuture = writeRequest.getFuture();
-            if (writeFuture == null) {
+            if (writeFuture == null
+                    || writeFuture == DefaultWriteRequest.UNUSED_FUTURE) {
                 return;
             }
 
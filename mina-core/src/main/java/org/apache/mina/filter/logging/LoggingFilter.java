@@ -69,6 +69,9 @@ public class LoggingFilter extends IoFilterAdapter {
     /** The log level for the sessionClosed event. Default to INFO. */
     private LogLevel sessionClosedLevel = LogLevel.INFO;
     
+    /** The log level for the writabilityChanged event. Default to INFO. */
+    private LogLevel writabilityChangedLevel = LogLevel.INFO;
+    
     /**
      * Default Constructor.
      */
@@ -210,6 +213,13 @@ public class LoggingFilter extends IoFilterAdapter {
         log(sessionClosedLevel, "CLOSED");
         nextFilter.sessionClosed(session);
     }
+
+    @Override
+    public void writabilityChanged(NextFilter nextFilter, IoSession session,
+            boolean writable) throws Exception {
+        log(writabilityChangedLevel, "WRITABLE: {}", writable);
+        super.writabilityChanged(nextFilter, session, writable);
+    }
     
     /**
      * Set the LogLevel for the ExceptionCaught event.
@@ -336,4 +346,22 @@ public class LoggingFilter extends IoFilterAdapter {
     public LogLevel getSessionClosedLogLevel() {
         return sessionClosedLevel;
     }
+    
+    /**
+     * Set the LogLevel for the WritabilityChanged event.
+     * 
+     * @param level The LogLevel to set
+     */
+    public void setWritabilityChangedLogLevel(LogLevel level) {
+        writabilityChangedLevel = level;
+    }
+
+    /**
+     * Get the LogLevel for the WritabilityChanged event.
+     * 
+     * @return The LogLevel for the WritabilityChanged eventType
+     */
+    public LogLevel getWritabilityChangedLogLevel() {
+        return writabilityChangedLevel;
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.ssl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * A pool of direct buffers shared by the {@link SslHandler}s of a
+ * {@link SslFilter}, which borrow them only while they process a TLS
+ * record.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+/** No qualifier*/ class SslBufferPool {
+    private final Queue<IoBuffer> buffers = new ConcurrentLinkedQueue<IoBuffer>();
+
+    /** The number of pooled buffers */
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final int maxSize;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maxSize the maximum number of buffers kept in the pool
+     */
+    /* no qualifier */ SslBufferPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Borrows a cleared buffer of at least <tt>minCapacity</tt> bytes.
+     */
+    /* no qualifier */ IoBuffer acquire(int minCapacity) {
+        IoBuffer buf;
+
+        while ((buf = buffers.poll()) != null) {
+            size.decrementAndGet();
+
+            if (buf.capacity() >= minCapacity) {
+                return buf;
+            }
+
+            // Too small for the packet size of the current engines
+        }
+
+        return IoBuffer.allocate(minCapacity, true).setAutoExpand(true);
+    }
+
+    /**
+     * Gives a borrowed buffer back to the pool.
+     */
+    /* no qualifier */ void release(IoBuffer buf) {
+        buf.clear();
+
+        if (size.incrementAndGet() <= maxSize) {
+            buffers.offer(buf);
+        } else {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of buffers currently in the pool
+     */
+    /* no qualifier */ int size() {
+        return size.get();
+    }
+}
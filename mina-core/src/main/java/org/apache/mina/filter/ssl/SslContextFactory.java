@@ -48,6 +48,18 @@ import javax.net.ssl.TrustManagerFactory;
  * Use the properties prefixed with <code>trustManagerFactory</code> to control
  * the creation of the {@link TrustManagerFactory} to be used.
  * </p>
+ * <p>
+ * A client reconnecting to a server can resume its previous SSL session and
+ * skip the key exchange, as long as the session is still in the session
+ * cache of the server's {@link SSLContext}.  This cache is bounded by
+ * {@link #setServerSessionCacheSize(int)} and
+ * {@link #setServerSessionTimeout(int)}.  The session cache, and the keys
+ * protecting the session tickets when the JVM issues them, belong to the
+ * {@link SSLContext} : the acceptors which must resume the sessions created
+ * by each other have to share the context returned by
+ * {@link #getSharedInstance()}.  {@link SslFilter#getResumedHandshakeCount()}
+ * tells how many handshakes have been resumed.
+ * </p>
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -73,6 +85,30 @@ public class SslContextFactory {
     private int serverSessionCacheSize = -1;
     private int serverSessionTimeout = -1;
 
+    /** The context returned by getSharedInstance() */
+    private SSLContext sharedContext;
+
+    /**
+     * Returns the {@link SSLContext} shared by the callers of this method,
+     * creating it with {@link #newInstance()} on the first call.  The
+     * {@link SslFilter}s using this context share its session cache, so a
+     * session created through one of them can be resumed through another.
+     *
+     * @return the shared context
+     */
+    public synchronized SSLContext getSharedInstance() throws Exception {
+        if (sharedContext == null) {
+            sharedContext = newInstance();
+        }
+
+        return sharedContext;
+    }
+
+    /**
+     * Creates a new {@link SSLContext}, with its own session cache.
+     *
+     * @return the new context
+     */
     public SSLContext newInstance() throws Exception {
         KeyManagerFactory kmf = this.keyManagerFactory;
         TrustManagerFactory tmf = this.trustManagerFactory;
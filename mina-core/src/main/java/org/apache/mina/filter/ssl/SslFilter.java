@@ -22,6 +22,9 @@ package org.apache.mina.filter.ssl;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
@@ -83,6 +86,38 @@ import org.slf4j.LoggerFactory;
  * }
  * </pre>
  *
+ * <h2>Delegated Tasks</h2>
+ * <p>
+ * The {@link SSLEngine} hands the expensive parts of a handshake (the
+ * certificate validation and the key exchange) over to delegated tasks.
+ * By default they are run in the I/O processor thread, which delays the
+ * reads and writes of all the other sessions handled by this processor
+ * while a burst of handshakes is processed.  You can run them in a
+ * dedicated executor instead, using
+ * {@link #setDelegatedTaskExecutor(Executor)} : the handshake of the session
+ * is suspended until its tasks are done, then resumed by the executor
+ * thread.  The executor should be bounded, for instance a
+ * {@link ThreadPoolExecutor} with a bounded queue; the tasks it rejects are
+ * run in the I/O processor thread.
+ * <p>
+ * The handshake durations and the delegated task queue can be monitored
+ * with {@link #getCompletedHandshakeCount()},
+ * {@link #getResumedHandshakeCount()}, {@link #getFullHandshakeCount()},
+ * {@link #getAverageHandshakeTime()}, {@link #getMaxHandshakeTime()},
+ * {@link #getPendingDelegatedTaskCount()} and
+ * {@link #getAverageDelegatedTaskWaitTime()}.
+ *
+ * <h2>Pooled Buffers</h2>
+ * <p>
+ * By default, a packet sized buffer (about 16KB) is allocated each time a
+ * record is encrypted, and the received data is copied into a buffer of the
+ * session before it is decrypted.  If {@link #setUsePooledBuffers(boolean)}
+ * is set, the records are encrypted into direct buffers borrowed from a pool
+ * shared by the sessions of this filter, and the received data is decrypted
+ * in place : only the bytes of an incomplete record are kept, in a pooled
+ * buffer given back as soon as the record is complete.  A session which
+ * is not processing a record then holds no network buffer.
+ *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  * @org.apache.xbean.XBean
  */
@@ -170,6 +205,28 @@ public class SslFilter extends IoFilterAdapter {
 
     private String[] enabledProtocols;
 
+    /** The default maximum number of pooled buffers */
+    private static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+
+    /** The pool of network buffers, or null if they are not pooled */
+    private volatile SslBufferPool bufferPool;
+
+    /** The executor running the delegated tasks, or null to run them inline */
+    private volatile Executor delegatedTaskExecutor;
+
+    // Handshake statistics. The durations are in nanoseconds.
+    private final AtomicLong completedHandshakes = new AtomicLong();
+    private final AtomicLong totalHandshakeTime = new AtomicLong();
+    private final AtomicLong maxHandshakeTime = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    // Delegated tasks statistics. The durations are in nanoseconds.
+    private final AtomicLong executedDelegatedTasks = new AtomicLong();
+    private final AtomicLong pendingDelegatedTasks = new AtomicLong();
+    private final AtomicLong dequeuedDelegatedTasks = new AtomicLong();
+    private final AtomicLong totalDelegatedTaskWaitTime = new AtomicLong();
+    private final AtomicLong rejectedDelegatedTasks = new AtomicLong();
+
     /**
      * Creates a new SSL filter using the specified {@link SSLContext}.
      * The handshake will start immediately.
@@ -388,6 +445,216 @@ public class SslFilter extends IoFilterAdapter {
         this.enabledProtocols = protocols;
     }
 
+    /**
+     * Returns <tt>true</tt> if the network buffers of the sessions are
+     * borrowed from a pool while a record is processed.
+     */
+    public boolean isUsePooledBuffers() {
+        return bufferPool != null;
+    }
+
+    /**
+     * Configures the sessions to borrow their network buffers from a pool of
+     * direct buffers while a record is processed, instead of allocating them
+     * for each record.  The pool keeps up to 64 buffers.  This setting is
+     * applied to the sessions when their handshake starts.
+     */
+    public void setUsePooledBuffers(boolean usePooledBuffers) {
+        if (usePooledBuffers == isUsePooledBuffers()) {
+            return;
+        }
+
+        bufferPool = usePooledBuffers ? new SslBufferPool(DEFAULT_MAX_POOLED_BUFFERS) : null;
+    }
+
+    /* no qualifier */ SslBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Returns the executor running the delegated tasks of the
+     * {@link SSLEngine}s.
+     *
+     * @return <tt>null</tt> if the tasks are run in the I/O processor thread.
+     */
+    public Executor getDelegatedTaskExecutor() {
+        return delegatedTaskExecutor;
+    }
+
+    /**
+     * Sets the executor running the delegated tasks of the {@link SSLEngine}s.
+     * This executor should be bounded : the tasks it rejects are run in the
+     * I/O processor thread.
+     *
+     * @param delegatedTaskExecutor <tt>null</tt> to run the tasks in the I/O
+     *                              processor thread (the default)
+     */
+    public void setDelegatedTaskExecutor(Executor delegatedTaskExecutor) {
+        this.delegatedTaskExecutor = delegatedTaskExecutor;
+    }
+
+    /**
+     * Returns the number of handshakes, including renegotiations, completed
+     * by the sessions of this filter.
+     */
+    public long getCompletedHandshakeCount() {
+        return completedHandshakes.get();
+    }
+
+    /**
+     * Returns the number of completed handshakes which resumed a previous
+     * SSL session, skipping the key exchange.
+     */
+    public long getResumedHandshakeCount() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Returns the number of completed handshakes which created a new SSL
+     * session.
+     */
+    public long getFullHandshakeCount() {
+        return completedHandshakes.get() - resumedHandshakes.get();
+    }
+
+    /**
+     * Returns the average duration of the completed handshakes, in
+     * milliseconds.
+     */
+    public double getAverageHandshakeTime() {
+        long count = completedHandshakes.get();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        return totalHandshakeTime.get() / 1000000.0 / count;
+    }
+
+    /**
+     * Returns the duration of the longest completed handshake, in
+     * milliseconds.
+     */
+    public double getMaxHandshakeTime() {
+        return maxHandshakeTime.get() / 1000000.0;
+    }
+
+    /**
+     * Returns the number of delegated tasks executed, in the I/O processor
+     * threads or in the delegated task executor.
+     */
+    public long getDelegatedTaskCount() {
+        return executedDelegatedTasks.get();
+    }
+
+    /**
+     * Returns the number of sessions waiting for the delegated task executor
+     * to run their tasks.
+     */
+    public long getPendingDelegatedTaskCount() {
+        return pendingDelegatedTasks.get();
+    }
+
+    /**
+     * Returns the average time the sessions waited for the delegated task
+     * executor to run their tasks, in milliseconds.
+     */
+    public double getAverageDelegatedTaskWaitTime() {
+        long count = dequeuedDelegatedTasks.get();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        return totalDelegatedTaskWaitTime.get() / 1000000.0 / count;
+    }
+
+    /**
+     * Returns the number of times the delegated task executor rejected the
+     * tasks of a session, which were then run in the I/O processor thread.
+     */
+    public long getRejectedDelegatedTaskCount() {
+        return rejectedDelegatedTasks.get();
+    }
+
+    /* no qualifier */ void handshakeCompleted(long duration, boolean resumed) {
+        if (resumed) {
+            resumedHandshakes.incrementAndGet();
+        }
+
+        completedHandshakes.incrementAndGet();
+        totalHandshakeTime.addAndGet(duration);
+
+        for (;;) {
+            long max = maxHandshakeTime.get();
+
+            if (duration <= max || maxHandshakeTime.compareAndSet(max, duration)) {
+                break;
+            }
+        }
+    }
+
+    /* no qualifier */ void delegatedTaskExecuted() {
+        executedDelegatedTasks.incrementAndGet();
+    }
+
+    /* no qualifier */ void delegatedTasksQueued() {
+        pendingDelegatedTasks.incrementAndGet();
+    }
+
+    /* no qualifier */ void delegatedTasksDequeued(long waitTime) {
+        pendingDelegatedTasks.decrementAndGet();
+        dequeuedDelegatedTasks.incrementAndGet();
+        totalDelegatedTaskWaitTime.addAndGet(waitTime);
+    }
+
+    /* no qualifier */ void delegatedTasksRejected() {
+        pendingDelegatedTasks.decrementAndGet();
+        rejectedDelegatedTasks.incrementAndGet();
+    }
+
+    /**
+     * Resumes the handshake of a session once its delegated tasks have been
+     * executed by the delegated task executor, and processes the data
+     * produced or received in the meantime.
+     */
+    /* no qualifier */ void resumeHandshake(NextFilter nextFilter, SslHandler handler, SSLEngine engine,
+            RuntimeException failure) {
+        IoSession session = handler.getSession();
+
+        if (failure != null) {
+            SSLException ssle = new SSLHandshakeException("SSL handshake failed.");
+            ssle.initCause(failure);
+            session.getFilterChain().fireExceptionCaught(ssle);
+            return;
+        }
+
+        try {
+            synchronized (handler) {
+                if (!handler.resumeHandshake(nextFilter, engine)) {
+                    // The session has been closed in the meantime
+                    return;
+                }
+
+                handleSslData(nextFilter, handler);
+
+                if (handler.isInboundDone()) {
+                    if (handler.isOutboundDone()) {
+                        handler.destroy();
+                    } else {
+                        initiateClosure(nextFilter, session);
+                    }
+                }
+            }
+
+            handler.flushScheduledEvents();
+        } catch (SSLException ssle) {
+            SSLException newSsle = new SSLHandshakeException("SSL handshake failed.");
+            newSsle.initCause(ssle);
+            session.getFilterChain().fireExceptionCaught(newSsle);
+        }
+    }
+
     /**
      * Executed just before the filter is added into the chain, we do :
      * <ul>
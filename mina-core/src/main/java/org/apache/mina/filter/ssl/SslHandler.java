@@ -23,6 +23,8 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
@@ -80,6 +82,18 @@ import org.slf4j.LoggerFactory;
      */
     private IoBuffer inNetBuffer;
 
+    /**
+     * The pool the network buffers are borrowed from, or null if they are
+     * allocated for each record
+     */
+    private SslBufferPool bufferPool;
+
+    /** Tells if the inNetBuffer has been borrowed from the pool */
+    private boolean inNetBufferPooled;
+
+    /** Tells if the outNetBuffer has been borrowed from the pool */
+    private boolean outNetBufferPooled;
+
     /**
      * Encrypted data to be written to the net
      */
@@ -112,6 +126,17 @@ import org.slf4j.LoggerFactory;
      * for data being produced during the handshake). */
     private boolean writingEncryptedData;
 
+    /** A flag set while the delegated tasks of the SSLEngine are executed by
+     * the filter's delegated task executor. The handshake is suspended
+     * until they are done. */
+    private boolean delegatedTasksRunning;
+
+    /** The time the current handshake started, in nanoseconds */
+    private long handshakeStartTime;
+
+    /** The date the current handshake started, in milliseconds */
+    private long handshakeStartDate;
+
     /**
      * Create a new SSL Handler, and initialize it.
      *
@@ -176,6 +201,8 @@ import org.slf4j.LoggerFactory;
 
         handshakeStatus = sslEngine.getHandshakeStatus();
 
+        bufferPool = sslFilter.getBufferPool();
+
         // Default value
         writingEncryptedData = false;
         
@@ -183,6 +210,9 @@ import org.slf4j.LoggerFactory;
         // set the flags accordingly
         firstSSLNegociation = true;
         handshakeComplete = false;
+        delegatedTasksRunning = false;
+        handshakeStartTime = System.nanoTime();
+        handshakeStartDate = System.currentTimeMillis();
 
         if ( LOGGER.isDebugEnabled()) {
             LOGGER.debug("{} SSL Handler Initialization done.", sslFilter.getSessionInfo(session));
@@ -223,11 +253,21 @@ import org.slf4j.LoggerFactory;
         sslEngine.closeOutbound();
         sslEngine = null;
 
+        if (inNetBufferPooled) {
+            releaseInNetBuffer();
+        }
+
         preHandshakeEventQueue.clear();
     }
 
     private void destroyOutNetBuffer() {
-        outNetBuffer.free();
+        if (outNetBufferPooled) {
+            bufferPool.release(outNetBuffer);
+            outNetBufferPooled = false;
+        } else {
+            outNetBuffer.free();
+        }
+
         outNetBuffer = null;
     }
 
@@ -340,10 +380,19 @@ import org.slf4j.LoggerFactory;
 
         // append buf to inNetBuffer
         if (inNetBuffer == null) {
-            inNetBuffer = IoBuffer.allocate(buf.remaining()).setAutoExpand(true);
+            if (bufferPool != null) {
+                // Unwrap from the received buffer itself : only the bytes
+                // of an incomplete record will be copied.
+                inNetBuffer = IoBuffer.wrap(buf.slice());
+                inNetBuffer.position(inNetBuffer.limit());
+                buf.position(buf.limit());
+            } else {
+                inNetBuffer = IoBuffer.allocate(buf.remaining()).setAutoExpand(true);
+                inNetBuffer.put(buf);
+            }
+        } else {
+            inNetBuffer.put(buf);
         }
-
-        inNetBuffer.put(buf);
         
         if (!handshakeComplete) {
             handshake(nextFilter);
@@ -352,17 +401,14 @@ import org.slf4j.LoggerFactory;
             inNetBuffer.flip();
 
             if (!inNetBuffer.hasRemaining()) {
+                releaseInNetBuffer();
                 return;
             }
 
             SSLEngineResult res = unwrap();
 
             // prepare to be written again
-            if (inNetBuffer.hasRemaining()) {
-                inNetBuffer.compact();
-            } else {
-                inNetBuffer = null;
-            }
+            compactInNetBuffer();
 
             checkStatus(res);
 
@@ -374,16 +420,71 @@ import org.slf4j.LoggerFactory;
             // is finished.
             int inNetBufferPosition = inNetBuffer == null ? 0 : inNetBuffer.position();
             buf.position(buf.position() - inNetBufferPosition);
+
+            if (inNetBuffer != null) {
+                releaseInNetBuffer();
+            }
+        }
+
+        retainInNetBuffer();
+    }
+
+    /**
+     * Prepares the inNetBuffer to receive more data once it has been
+     * unwrapped, releasing it if it is empty.
+     */
+    private void compactInNetBuffer() {
+        if (!inNetBuffer.hasRemaining()) {
+            releaseInNetBuffer();
+        } else if ((bufferPool != null) && !inNetBufferPooled) {
+            // Keep the incomplete record, not the received buffer
+            IoBuffer pooled = bufferPool.acquire(Math.max(inNetBuffer.remaining(),
+                    sslEngine.getSession().getPacketBufferSize()));
+            pooled.put(inNetBuffer);
+            inNetBuffer = pooled;
+            inNetBufferPooled = true;
+        } else {
+            inNetBuffer.compact();
+        }
+    }
+
+    /**
+     * Copies the data not yet unwrapped from the received buffer, which
+     * is not ours anymore once the message has been processed.
+     */
+    private void retainInNetBuffer() {
+        if ((bufferPool == null) || (inNetBuffer == null) || inNetBufferPooled) {
+            return;
+        }
+
+        inNetBuffer.flip();
+
+        if (inNetBuffer.hasRemaining()) {
+            compactInNetBuffer();
+        } else {
             inNetBuffer = null;
         }
     }
 
+    private void releaseInNetBuffer() {
+        if (inNetBufferPooled) {
+            bufferPool.release(inNetBuffer);
+            inNetBufferPooled = false;
+        }
+
+        inNetBuffer = null;
+    }
+
     /**
      * Get decrypted application data.
      * 
      * @return buffer with data
      */
     /* no qualifier */ IoBuffer fetchAppBuffer() {
+        if (this.appBuffer == null) {
+            return emptyBuffer;
+        }
+
         IoBuffer appBuffer = this.appBuffer.flip();
         this.appBuffer = null;
         return appBuffer;
@@ -401,6 +502,19 @@ import org.slf4j.LoggerFactory;
         }
 
         outNetBuffer = null;
+
+        if (outNetBufferPooled) {
+            // Copy the record out of the pooled buffer
+            IoBuffer record = IoBuffer.allocate(answer.remaining());
+            record.put(answer);
+            record.flip();
+
+            bufferPool.release(answer);
+            outNetBufferPooled = false;
+
+            return record;
+        }
+
         return answer.shrink();
     }
 
@@ -506,6 +620,11 @@ import org.slf4j.LoggerFactory;
      * Perform any handshaking processing.
      */
     /* no qualifier */ void handshake(NextFilter nextFilter) throws SSLException {
+        if (delegatedTasksRunning) {
+            // The handshake will be resumed when the tasks are done
+            return;
+        }
+
         for (;;) {
             switch (handshakeStatus) {
                 case FINISHED:
@@ -514,6 +633,13 @@ import org.slf4j.LoggerFactory;
                     }
                     
                     session.setAttribute(SslFilter.SSL_SESSION, sslEngine.getSession());
+
+                    if (!handshakeComplete) {
+                        // A resumed session has been created by a previous handshake
+                        boolean resumed = sslEngine.getSession().getCreationTime() < handshakeStartDate;
+                        sslFilter.handshakeCompleted(System.nanoTime() - handshakeStartTime, resumed);
+                    }
+
                     handshakeComplete = true;
     
                     // Send the SECURE message only if it's the first SSL handshake
@@ -538,6 +664,11 @@ import org.slf4j.LoggerFactory;
                         LOGGER.debug("{} processing the NEED_TASK state", sslFilter.getSessionInfo(session));
                     }
                     
+                    if (executeDelegatedTasks(nextFilter)) {
+                        // The handshake will be resumed when the tasks are done
+                        return;
+                    }
+
                     handshakeStatus = doTasks();
                     break;
     
@@ -602,6 +733,9 @@ import org.slf4j.LoggerFactory;
 
         if (outNetBuffer != null) {
             outNetBuffer.capacity(capacity);
+        } else if (bufferPool != null) {
+            outNetBuffer = bufferPool.acquire(capacity);
+            outNetBufferPooled = true;
         } else {
             outNetBuffer = IoBuffer.allocate(capacity).minimumCapacity(0);
         }
@@ -657,6 +791,10 @@ import org.slf4j.LoggerFactory;
 
         if (inNetBuffer == null || !inNetBuffer.hasRemaining()) {
             // Need more data.
+            if (inNetBuffer != null) {
+                releaseInNetBuffer();
+            }
+
             return SSLEngineResult.Status.BUFFER_UNDERFLOW;
         }
 
@@ -672,20 +810,12 @@ import org.slf4j.LoggerFactory;
             res = unwrap();
 
             // prepare to be written again
-            if (inNetBuffer.hasRemaining()) {
-                inNetBuffer.compact();
-            } else {
-                inNetBuffer = null;
-            }
+            compactInNetBuffer();
 
             renegotiateIfNeeded(nextFilter, res);
         } else {
             // prepare to be written again
-            if (inNetBuffer.hasRemaining()) {
-                inNetBuffer.compact();
-            } else {
-                inNetBuffer = null;
-            }
+            compactInNetBuffer();
         }
 
         return res.getStatus();
@@ -697,6 +827,8 @@ import org.slf4j.LoggerFactory;
              ( res.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING ) ) {
             // Renegotiation required.
             handshakeComplete = false;
+            handshakeStartTime = System.nanoTime();
+            handshakeStartDate = System.currentTimeMillis();
             handshakeStatus = res.getHandshakeStatus();
             handshake(nextFilter);
         }
@@ -756,19 +888,98 @@ import org.slf4j.LoggerFactory;
      * Do all the outstanding handshake tasks in the current Thread.
      */
     private SSLEngineResult.HandshakeStatus doTasks() {
-        /*
-         * We could run this in a separate thread, but I don't see the need for
-         * this when used from SSLFilter. Use thread filters in MINA instead?
-         */
         Runnable runnable;
         while ((runnable = sslEngine.getDelegatedTask()) != null) {
-            // TODO : we may have to use a thread pool here to improve the
-            // performances
             runnable.run();
+            sslFilter.delegatedTaskExecuted();
         }
         return sslEngine.getHandshakeStatus();
     }
 
+    /**
+     * Hands the outstanding handshake tasks over to the delegated task
+     * executor of the filter, if any. The handshake is suspended until
+     * {@link #resumeHandshake(NextFilter, SSLEngine)} is called.
+     *
+     * @return <tt>false</tt> if the tasks have to be run in the current thread
+     */
+    private boolean executeDelegatedTasks(NextFilter nextFilter) {
+        Executor executor = sslFilter.getDelegatedTaskExecutor();
+
+        if (executor == null) {
+            return false;
+        }
+
+        DelegatedTasks tasks = new DelegatedTasks(nextFilter, sslEngine);
+        delegatedTasksRunning = true;
+        sslFilter.delegatedTasksQueued();
+
+        try {
+            executor.execute(tasks);
+        } catch (RejectedExecutionException e) {
+            // The executor is saturated : run the tasks here.
+            LOGGER.debug("{} Delegated tasks rejected, running them in the I/O thread",
+                    sslFilter.getSessionInfo(session));
+            sslFilter.delegatedTasksRejected();
+            delegatedTasksRunning = false;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Resumes the handshake suspended while the delegated tasks were executed.
+     *
+     * @param engine the engine the tasks have been executed for
+     * @return <tt>false</tt> if the engine has been destroyed in the meantime
+     */
+    /* no qualifier */ boolean resumeHandshake(NextFilter nextFilter, SSLEngine engine) throws SSLException {
+        if (engine != sslEngine) {
+            return false;
+        }
+
+        delegatedTasksRunning = false;
+        handshakeStatus = sslEngine.getHandshakeStatus();
+        handshake(nextFilter);
+
+        return true;
+    }
+
+    /**
+     * Runs the delegated tasks of an {@link SSLEngine} out of the I/O
+     * thread, then resumes the handshake.
+     */
+    private class DelegatedTasks implements Runnable {
+        private final NextFilter nextFilter;
+
+        private final SSLEngine engine;
+
+        private final long queueTime = System.nanoTime();
+
+        private DelegatedTasks(NextFilter nextFilter, SSLEngine engine) {
+            this.nextFilter = nextFilter;
+            this.engine = engine;
+        }
+
+        public void run() {
+            sslFilter.delegatedTasksDequeued(System.nanoTime() - queueTime);
+            RuntimeException failure = null;
+
+            try {
+                Runnable runnable;
+                while ((runnable = engine.getDelegatedTask()) != null) {
+                    runnable.run();
+                    sslFilter.delegatedTaskExecuted();
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            sslFilter.resumeHandshake(nextFilter, SslHandler.this, engine, failure);
+        }
+    }
+
     /**
      * Creates a new MINA buffer that is a deep copy of the remaining bytes in
      * the given buffer (between index buf.position() and buf.limit())
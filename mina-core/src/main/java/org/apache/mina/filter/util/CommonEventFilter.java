@@ -65,6 +65,11 @@ public abstract class CommonEventFilter extends IoFilterAdapter {
         filter(new IoFilterEvent(nextFilter, IoEventType.EXCEPTION_CAUGHT, session, cause));
     }
 
+    @Override
+    public final void writabilityChanged(NextFilter nextFilter, IoSession session, boolean writable) throws Exception {
+        filter(new IoFilterEvent(nextFilter, IoEventType.WRITABILITY_CHANGED, session, writable));
+    }
+
     @Override
     public final void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception {
         filter(new IoFilterEvent(nextFilter, IoEventType.MESSAGE_RECEIVED, session, message));
@@ -20,12 +20,15 @@
 package org.apache.mina.transport.socket.nio;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.Executor;
@@ -45,6 +48,9 @@ public final class NioProcessor extends AbstractPollingIoProcessor<NioSession> {
     /** The selector associated with this processor */
     private Selector selector;
 
+    /** The array used for gathering writes, only used by the processor thread */
+    private ByteBuffer[] gatheringBuffers = new ByteBuffer[0];
+
     /**
      * 
      * Creates a new instance of NioProcessor.
@@ -117,6 +123,29 @@ public final class NioProcessor extends AbstractPollingIoProcessor<NioSession> {
         ch.close();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isMigratable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void detach(NioSession session) throws Exception {
+        SelectionKey key = session.getSelectionKey();
+
+        if (key != null) {
+            // The channel stays open, and will be registered on the
+            // selector of the new processor
+            key.cancel();
+            session.setSelectionKey(null);
+        }
+    }
+
     /**
      * In the case we are using the java select() method, this method is used to
      * trash the buggy selector and create a new one, registering all the
@@ -190,6 +219,11 @@ public final class NioProcessor extends AbstractPollingIoProcessor<NioSession> {
             return SessionState.OPENING;
         }
 
+        if (key.selector() != selector) {
+            // The session has been migrated to another processor
+            return SessionState.OPENING;
+        }
+
         if (key.isValid()) {
             // The session is opened
             return SessionState.OPENED;
@@ -231,6 +265,11 @@ public final class NioProcessor extends AbstractPollingIoProcessor<NioSession> {
     protected void setInterestedInRead(NioSession session, boolean isInterested)
             throws Exception {
         SelectionKey key = session.getSelectionKey();
+
+        if (key == null) {
+            return;
+        }
+
         int oldInterestOps = key.interestOps();
         int newInterestOps = oldInterestOps;
 
@@ -293,6 +332,32 @@ public final class NioProcessor extends AbstractPollingIoProcessor<NioSession> {
         }
     }
 
+    @Override
+    protected int write(NioSession session, IoBuffer[] buffers, int offset,
+            int count) throws Exception {
+        ByteChannel channel = session.getChannel();
+
+        if (!(channel instanceof GatheringByteChannel)) {
+            return super.write(session, buffers, offset, count);
+        }
+
+        if (gatheringBuffers.length < count) {
+            gatheringBuffers = new ByteBuffer[count];
+        }
+
+        for (int i = 0; i < count; i++) {
+            gatheringBuffers[i] = buffers[offset + i].buf();
+        }
+
+        try {
+            return (int) ((GatheringByteChannel) channel).write(
+                    gatheringBuffers, 0, count);
+        } finally {
+            // Don't retain the buffers
+            Arrays.fill(gatheringBuffers, 0, count, null);
+        }
+    }
+
     @Override
     protected int transferFile(NioSession session, FileRegion region, int length)
             throws Exception {
@@ -34,6 +34,7 @@ import org.apache.mina.core.session.IoEventType;
 import org.apache.mina.core.write.WriteRequest;
 import org.apache.mina.core.write.WriteRequestQueue;
 import org.apache.mina.core.write.WriteToClosedSessionException;
+import org.apache.mina.util.CachedClock;
 
 /**
  * TODO Add documentation
@@ -185,7 +186,9 @@ class VmPipeFilterChain extends DefaultIoFilterChain {
                         return;
                     }
                     WriteRequest req;
-                    long currentTime = System.currentTimeMillis();
+                    // No processor loop refreshes the clock for this
+                    // transport : the events of this flush use a fresh value
+                    long currentTime = CachedClock.update();
                     while ((req = queue.poll(session)) != null) {
                         Object m = req.getMessage();
                         pushEvent(new IoEvent(IoEventType.MESSAGE_SENT, session, req), false);
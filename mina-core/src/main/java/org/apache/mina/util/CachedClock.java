@@ -0,0 +1,115 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.util;
+
+/**
+ * A coarse clock used to timestamp the session and statistics bookkeeping
+ * (read and written bytes and messages, idle counts...).
+ * <p>
+ * Calling {@link System#currentTimeMillis()} for each event becomes visible
+ * in the profiles when millions of events are processed per second. Instead,
+ * the I/O processors {@link #update() update} this clock once per select
+ * loop iteration, and the per-event bookkeeping reads the cached value with
+ * {@link #currentTimeMillis()}. The staleness of the cached value is bounded
+ * as follows :
+ * <ul>
+ *   <li>the events of the polling I/O processors and of the connectionless
+ *   acceptors see a value which lags the real clock by the time needed to
+ *   process a single loop iteration at most, as all the events of an
+ *   iteration are processed right after the select;</li>
+ *   <li>the VM pipe transport updates the clock each time it flushes a
+ *   session, so its events see a value which lags by the time needed to
+ *   process that flush at most;</li>
+ *   <li>the other events, fired by a transport which doesn't update the
+ *   clock or out of any I/O processor, may see a value which is as old as the
+ *   last update.  While a service manages sessions, the clock is updated
+ *   at least every second, by the idle status checker of the non-polling
+ *   transports or by the select loop of the polling processors, whose
+ *   select times out after one second.  When no service manages any
+ *   session, the value is not updated at all.</li>
+ * </ul>
+ * <p>
+ * If the exact time is needed for every event, the high-resolution mode can
+ * be enabled with {@link #setHighResolution(boolean)} : in this mode,
+ * {@link #currentTimeMillis()} always reads the system clock.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public final class CachedClock {
+    /** The last time read from the system clock */
+    private static volatile long currentTime = System.currentTimeMillis();
+
+    /** Tells if the system clock must be read for every call */
+    private static volatile boolean highResolution;
+
+    private CachedClock() {
+        // Do nothing
+    }
+
+    /**
+     * Returns the current time in milliseconds. Unless the high-resolution
+     * mode is enabled, this is the time cached by the last call to
+     * {@link #update()}.
+     *
+     * @return the current time, as returned by {@link System#currentTimeMillis()}
+     */
+    public static long currentTimeMillis() {
+        if (highResolution) {
+            return System.currentTimeMillis();
+        }
+
+        return currentTime;
+    }
+
+    /**
+     * Reads the system clock and caches the result. This method is called
+     * by the I/O processors once per loop iteration.
+     *
+     * @return the current time, as returned by {@link System#currentTimeMillis()}
+     */
+    public static long update() {
+        long now = System.currentTimeMillis();
+
+        // Avoid writing the shared field when the time has not changed, as
+        // all the processors update it concurrently
+        if (now != currentTime) {
+            currentTime = now;
+        }
+
+        return now;
+    }
+
+    /**
+     * @return <tt>true</tt> if the system clock is read for every event
+     */
+    public static boolean isHighResolution() {
+        return highResolution;
+    }
+
+    /**
+     * Enables or disables the high-resolution mode. When enabled, the system
+     * clock is read for every event instead of using the cached time.
+     *
+     * @param highResolution <tt>true</tt> to read the system clock for every event
+     */
+    public static void setHighResolution(boolean highResolution) {
+        CachedClock.highResolution = highResolution;
+    }
+}
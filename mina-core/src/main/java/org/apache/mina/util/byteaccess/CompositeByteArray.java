@@ -784,7 +784,7 @@ public final class CompositeByteArray extends AbstractByteArray {
          */
         public int getRemaining()
         {
-            return last() - index + 1;
+            return last() - index;
         }
 
 
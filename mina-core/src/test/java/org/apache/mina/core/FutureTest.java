@@ -20,6 +20,7 @@
 package org.apache.mina.core;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.mina.core.future.DefaultCloseFuture;
 import org.apache.mina.core.future.DefaultConnectFuture;
@@ -230,6 +231,124 @@ public class FutureTest {
         assertSame(null, listener2.notifiedFuture);
     }
 
+    @Test
+    public void testListenerOrder() throws Exception {
+        DefaultCloseFuture future = new DefaultCloseFuture(null);
+        final StringBuilder order = new StringBuilder();
+
+        for (int i = 0; i < 10; i++) {
+            final int index = i;
+            future.addListener(new IoFutureListener<IoFuture>() {
+                public void operationComplete(IoFuture future) {
+                    order.append(index);
+                }
+            });
+        }
+
+        future.setClosed();
+        assertEquals("0123456789", order.toString());
+    }
+
+    @Test
+    public void testAwaitTimeout() throws Exception {
+        DefaultCloseFuture future = new DefaultCloseFuture(null);
+
+        // Repeated timed out waits leave nothing behind
+        for (int i = 0; i < 10; i++) {
+            assertFalse(future.await(1));
+            assertFalse(future.awaitUninterruptibly(1));
+        }
+
+        assertFalse(future.await(0));
+
+        TestListener listener = new TestListener();
+        future.addListener(listener);
+        future.setClosed();
+
+        assertTrue(future.await(0));
+        assertSame(future, listener.notifiedFuture);
+    }
+
+    @Test
+    public void testMultipleWaiters() throws Exception {
+        DefaultWriteFuture future = new DefaultWriteFuture(null);
+        TestThread[] threads = new TestThread[8];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new TestThread(future);
+            threads[i].start();
+        }
+
+        future.setWritten();
+
+        for (TestThread thread : threads) {
+            thread.join();
+            assertTrue(thread.success);
+        }
+    }
+
+    @Test
+    public void testInterruptedAwait() throws Exception {
+        DefaultCloseFuture future = new DefaultCloseFuture(null);
+
+        Thread.currentThread().interrupt();
+
+        try {
+            future.await();
+            fail();
+        } catch (InterruptedException e) {
+            // Expected
+        }
+
+        // The uninterruptible wait preserves the interrupted status
+        Thread.currentThread().interrupt();
+        assertFalse(future.awaitUninterruptibly(10));
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    public void testNullValue() throws Exception {
+        DefaultConnectFuture future = new DefaultConnectFuture();
+        future.setValue(null);
+
+        assertTrue(future.isDone());
+        assertNull(future.getException());
+
+        // The value can be set only once
+        future.setException(new Exception());
+        assertTrue(future.isDone());
+        assertNull(future.getException());
+    }
+
+    @Test
+    public void testConcurrentAddListener() throws Exception {
+        for (int round = 0; round < 100; round++) {
+            final DefaultWriteFuture future = new DefaultWriteFuture(null);
+            final AtomicInteger notified = new AtomicInteger();
+            final IoFutureListener<IoFuture> listener = new IoFutureListener<IoFuture>() {
+                public void operationComplete(IoFuture future) {
+                    notified.incrementAndGet();
+                }
+            };
+
+            Thread adder = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100; i++) {
+                        future.addListener(listener);
+                    }
+                }
+            };
+
+            adder.start();
+            future.setWritten();
+            adder.join();
+
+            // Each listener is notified exactly once
+            assertEquals(100, notified.get());
+        }
+    }
+
     private static class TestThread extends Thread {
         private final IoFuture future;
 
@@ -207,6 +207,44 @@ public class IoFilterChainTest {
                 + "ASC BSC HSC");
     }
 
+    @Test
+    public void testPassThroughFilters() throws Exception {
+        chain.addLast("A", new EventOrderTestFilter('A'));
+        chain.addLast("B", new MessageReceivedTestFilter('B'));
+        chain.addLast("C", new EventOrderTestFilter('C'));
+        chain.addLast("D", new IoFilterAdapter());
+        run("AS0 CS0 HS0" + "ASO CSO HSO" + "AMR BMR CMR HMR"
+                + "CFW AFW AMS CMS HMS" + "ASI CSI HSI" + "AEC CEC HEC"
+                + "ASC CSC HSC");
+    }
+
+    @Test
+    public void testReplacePassThroughFilter() throws Exception {
+        chain.addLast("A", new EventOrderTestFilter('A'));
+        chain.addLast("B", new IoFilterAdapter());
+        chain.addLast("C", new MessageReceivedTestFilter('C'));
+
+        // The compiled chain must follow the replacement
+        chain.replace("B", new EventOrderTestFilter('B'));
+        chain.replace("C", new IoFilterAdapter());
+        run("AS0 BS0 HS0" + "ASO BSO HSO" + "AMR BMR HMR"
+                + "BFW AFW AMS BMS HMS" + "ASI BSI HSI" + "AEC BEC HEC"
+                + "ASC BSC HSC");
+    }
+
+    @Test
+    public void testRemovePassThroughFilter() throws Exception {
+        chain.addLast("A", new MessageReceivedTestFilter('A'));
+        chain.addLast("B", new EventOrderTestFilter('B'));
+        chain.addLast("C", new MessageReceivedTestFilter('C'));
+        chain.remove("B");
+        chain.remove("C");
+
+        chain.fireMessageReceived(new Object());
+        chain.fireFilterWrite(new DefaultWriteRequest(new Object()));
+        assertEquals("AMRHMRHMS", testResult);
+    }
+
     @Test
     public void testAddRemove() throws Exception {
         IoFilter filter = new AddRemoveTestFilter();
@@ -315,6 +353,25 @@ public class IoFilterChainTest {
         }
     }
 
+    /**
+     * A filter which only handles the messageReceived event : the chain
+     * skips it for the other events.
+     */
+    private class MessageReceivedTestFilter extends IoFilterAdapter {
+        private final char id;
+
+        MessageReceivedTestFilter(char id) {
+            this.id = id;
+        }
+
+        @Override
+        public void messageReceived(NextFilter nextFilter, IoSession session,
+                Object message) {
+            testResult += id + "MR";
+            nextFilter.messageReceived(session, message);
+        }
+    }
+
     private class AddRemoveTestFilter extends IoFilterAdapter {
         /**
          * Default constructor
@@ -0,0 +1,140 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link SlabBufferAllocator}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SlabBufferAllocatorTest {
+    private IoBufferAllocator oldAllocator;
+
+    @Before
+    public void setUp() {
+        oldAllocator = IoBuffer.getAllocator();
+    }
+
+    @After
+    public void tearDown() {
+        IoBuffer.setAllocator(oldAllocator);
+    }
+
+    @Test
+    public void testRecycle() {
+        SlabBufferAllocator allocator = new SlabBufferAllocator(64, 1024, 4096, 0);
+
+        IoBuffer buf = allocator.allocate(100, true);
+        assertEquals(128, buf.capacity());
+        assertEquals(100, buf.limit());
+        assertEquals(0, allocator.getHitCount());
+        assertEquals(1, allocator.getMissCount());
+        assertEquals(4096, allocator.getBytesHeld());
+
+        buf.free();
+        buf = allocator.allocate(120, true);
+        assertEquals(1, allocator.getHitCount());
+        assertEquals(1, allocator.getMissCount());
+
+        // Smaller requests use the smallest size class.
+        buf = allocator.allocate(1, false);
+        assertEquals(64, buf.capacity());
+        assertEquals(1, buf.limit());
+    }
+
+    @Test
+    public void testAutoExpand() {
+        SlabBufferAllocator allocator = new SlabBufferAllocator(64, 1024, 4096, 0);
+
+        IoBuffer buf = allocator.allocate(16, true);
+        buf.setAutoExpand(true);
+
+        for (int i = 0; i < 900; i++) {
+            buf.put((byte) i);
+        }
+
+        assertEquals(1024, buf.capacity());
+        buf.flip();
+
+        for (int i = 0; i < 900; i++) {
+            assertEquals((byte) i, buf.get());
+        }
+
+        // The expanded buffer still belongs to the arena.
+        buf.free();
+        long hits = allocator.getHitCount();
+        allocator.allocate(1024, true);
+        assertEquals(hits + 1, allocator.getHitCount());
+    }
+
+    @Test
+    public void testCrossThreadFree() throws Exception {
+        SlabBufferAllocator allocator = new SlabBufferAllocator(64, 1024, 4096, 0);
+        final IoBuffer buf = allocator.allocate(512, false);
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                buf.free();
+            }
+        };
+
+        thread.start();
+        thread.join();
+
+        allocator.allocate(512, false);
+        assertEquals(1, allocator.getHitCount());
+        assertEquals(1, allocator.getArenaCount());
+    }
+
+    @Test
+    public void testMaxArenaCapacity() {
+        SlabBufferAllocator allocator = new SlabBufferAllocator(64, 1024, 4096, 8192);
+
+        for (int i = 0; i < 32; i++) {
+            IoBuffer buf = allocator.allocate(1024, true);
+            assertEquals(1024, buf.capacity());
+        }
+
+        assertEquals(8192, allocator.getBytesHeld());
+        assertEquals(32, allocator.getMissCount());
+    }
+
+    @Test
+    public void testUnpooledBuffer() {
+        SlabBufferAllocator allocator = new SlabBufferAllocator(64, 1024, 4096, 0);
+
+        IoBuffer buf = allocator.allocate(2000, true);
+        assertEquals(2048, buf.capacity());
+        assertTrue(buf.isDirect());
+        buf.free();
+
+        assertEquals(0, allocator.getHitCount());
+        assertEquals(0, allocator.getMissCount());
+        assertEquals(0, allocator.getBytesHeld());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.service;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.mina.core.service.AbstractIoService.ServiceOperationFuture;
+import org.junit.Test;
+
+/**
+ * Tests {@link ServiceOperationFuture}, which is done only when it has
+ * succeeded.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ServiceOperationFutureTest {
+    @Test
+    public void testAwaitException() throws Exception {
+        final ServiceOperationFuture future = new ServiceOperationFuture();
+        final Exception exception = new Exception("bind failed");
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+
+                future.setException(exception);
+            }
+        };
+
+        thread.start();
+
+        // Must return even though the future is not done
+        future.awaitUninterruptibly();
+        thread.join();
+
+        assertFalse(future.isDone());
+        assertSame(exception, future.getException());
+        assertTrue(future.awaitUninterruptibly(10));
+    }
+
+    @Test
+    public void testAwaitCompletedException() throws Exception {
+        ServiceOperationFuture future = new ServiceOperationFuture();
+        future.setException(new Exception());
+
+        assertTrue(future.await(10));
+        assertFalse(future.isDone());
+    }
+
+    @Test
+    public void testAwaitDone() throws Exception {
+        ServiceOperationFuture future = new ServiceOperationFuture();
+        future.setDone();
+
+        assertTrue(future.await(10));
+        assertTrue(future.isDone());
+    }
+}
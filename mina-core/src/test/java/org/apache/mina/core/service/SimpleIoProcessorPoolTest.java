@@ -0,0 +1,237 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.polling.SessionMigrationFuture;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.transport.socket.nio.NioProcessor;
+import org.apache.mina.transport.socket.nio.NioSession;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the assignment strategies and the session migration of
+ * {@link SimpleIoProcessorPool}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SimpleIoProcessorPoolTest {
+    private static final int POOL_SIZE = 3;
+
+    private static final int SESSIONS = 6;
+
+    private SimpleIoProcessorPool<NioSession> pool;
+
+    private NioSocketAcceptor acceptor;
+
+    private NioSocketConnector connector;
+
+    private final List<IoSession> sessions = new ArrayList<IoSession>();
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new SimpleIoProcessorPool<NioSession>(NioProcessor.class, POOL_SIZE);
+        pool.setAssignmentStrategy(new LeastSessionsAssignmentStrategy<NioSession>());
+
+        acceptor = new NioSocketAcceptor(pool);
+        acceptor.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                // Echo
+                IoBuffer buf = (IoBuffer) message;
+                session.write(buf.duplicate());
+                buf.position(buf.limit());
+            }
+        });
+        acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+
+        connector = new NioSocketConnector();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (IoSession session : sessions) {
+            session.close(true).awaitUninterruptibly();
+        }
+
+        connector.dispose();
+        acceptor.dispose();
+        pool.dispose();
+    }
+
+    @Test
+    public void testLeastSessionsAssignment() throws Exception {
+        connect(new CountDownLatch(0));
+
+        for (int i = 0; i < POOL_SIZE; i++) {
+            assertEquals(SESSIONS / POOL_SIZE, pool.getManagedSessionCount(i));
+        }
+    }
+
+    @Test
+    public void testLeastBytesAssignment() throws Exception {
+        pool.setAssignmentStrategy(new LeastBytesAssignmentStrategy<NioSession>(100));
+
+        // Idle processors : the sessions are spread
+        connect(new CountDownLatch(0));
+
+        for (int i = 0; i < POOL_SIZE; i++) {
+            assertEquals(SESSIONS / POOL_SIZE, pool.getManagedSessionCount(i));
+        }
+
+        // Load the first processor only
+        for (NioSession session : pool.getManagedSessions(0)) {
+            assertTrue(session.write(IoBuffer.allocate(65536)).awaitUninterruptibly(5000));
+        }
+
+        Thread.sleep(200);
+
+        // The new sessions go to the other processors, all of them
+        connect(new CountDownLatch(0), POOL_SIZE);
+
+        assertEquals(SESSIONS / POOL_SIZE, pool.getManagedSessionCount(0));
+
+        for (int i = 1; i < POOL_SIZE; i++) {
+            assertTrue(pool.getManagedSessionCount(i) > SESSIONS / POOL_SIZE);
+        }
+    }
+
+    @Test
+    public void testSessionsNotTrackedByDefault() throws Exception {
+        pool.setAssignmentStrategy(null);
+        pool.setSessionTracking(false);
+        connect(new CountDownLatch(0));
+
+        for (int i = 0; i < POOL_SIZE; i++) {
+            assertEquals(0, pool.getManagedSessionCount(i));
+        }
+
+        try {
+            pool.rebalance();
+            fail("The sessions are not tracked");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testMigrationAndRebalance() throws Exception {
+        CountDownLatch echoes = new CountDownLatch(SESSIONS * 2);
+        connect(echoes);
+
+        // Move all the sessions to the first processor
+        for (int i = 1; i < POOL_SIZE; i++) {
+            for (NioSession session : new ArrayList<NioSession>(pool.getManagedSessions(i))) {
+                SessionMigrationFuture future = pool.migrate(session, 0);
+                assertTrue(future.awaitUninterruptibly(5000));
+                assertTrue(future.isMigrated());
+            }
+        }
+
+        assertEquals(SESSIONS, pool.getManagedSessionCount(0));
+
+        // The migrated sessions must still be served
+        writeToAll();
+
+        // Then spread them again
+        assertEquals(SESSIONS - SESSIONS / POOL_SIZE, pool.rebalance());
+        long deadline = System.currentTimeMillis() + 5000;
+
+        // A migrating session is managed by no processor for a while
+        while (!isBalanced() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        for (int i = 0; i < POOL_SIZE; i++) {
+            assertEquals(SESSIONS / POOL_SIZE, pool.getManagedSessionCount(i));
+        }
+
+        writeToAll();
+        assertTrue(echoes.await(5, TimeUnit.SECONDS));
+    }
+
+    private boolean isBalanced() {
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (pool.getManagedSessionCount(i) != SESSIONS / POOL_SIZE) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void connect(final CountDownLatch echoes) throws Exception {
+        connect(echoes, SESSIONS);
+    }
+
+    private void connect(final CountDownLatch echoes, int count) throws Exception {
+        if (!connector.isActive()) {
+            connector.setHandler(new IoHandlerAdapter() {
+                @Override
+                public void messageReceived(IoSession session, Object message) {
+                    IoBuffer buf = (IoBuffer) message;
+
+                    while (buf.hasRemaining()) {
+                        buf.get();
+                        echoes.countDown();
+                    }
+                }
+            });
+        }
+
+        int port = acceptor.getLocalAddress().getPort();
+
+        for (int i = 0; i < count; i++) {
+            sessions.add(connector.connect(new InetSocketAddress("127.0.0.1", port))
+                    .awaitUninterruptibly().getSession());
+        }
+
+        // Wait for the acceptor side to register the sessions
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (acceptor.getManagedSessionCount() < sessions.size()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void writeToAll() {
+        for (IoSession session : sessions) {
+            IoBuffer buf = IoBuffer.allocate(1);
+            buf.put((byte) 0);
+            buf.flip();
+            session.write(buf);
+        }
+    }
+}
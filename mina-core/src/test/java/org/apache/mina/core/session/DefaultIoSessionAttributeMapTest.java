@@ -0,0 +1,147 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link IoSessionAttributeMap} created by the
+ * {@link DefaultIoSessionDataStructureFactory}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DefaultIoSessionAttributeMapTest {
+    private IoSessionAttributeMap map;
+
+    @Before
+    public void setUp() throws Exception {
+        map = new DefaultIoSessionDataStructureFactory().getAttributeMap(null);
+    }
+
+    @Test
+    public void testAttributeKeys() {
+        AttributeKey key1 = new AttributeKey(getClass(), "key");
+        AttributeKey key2 = new AttributeKey(getClass(), "key");
+
+        assertNull(map.getAttribute(null, key1, null));
+        assertEquals("default", map.getAttribute(null, key1, "default"));
+        assertFalse(map.containsAttribute(null, key1));
+
+        assertNull(map.setAttribute(null, key1, "value1"));
+        assertNull(map.setAttribute(null, key2, "value2"));
+        assertEquals("value1", map.setAttribute(null, key1, "value3"));
+
+        assertEquals("value3", map.getAttribute(null, key1, null));
+        assertEquals("value2", map.getAttribute(null, key2, null));
+        assertTrue(map.containsAttribute(null, key2));
+
+        assertEquals("value2", map.removeAttribute(null, key2));
+        assertNull(map.removeAttribute(null, key2));
+        assertFalse(map.containsAttribute(null, key2));
+        assertEquals("value3", map.getAttribute(null, key1, null));
+
+        // Setting a null value removes the attribute
+        assertEquals("value3", map.setAttribute(null, key1, null));
+        assertFalse(map.containsAttribute(null, key1));
+    }
+
+    @Test
+    public void testEqualKeys() {
+        assertNull(map.setAttribute(null, "key", "value1"));
+        assertEquals("value1", map.setAttribute(null, new String("key"), "value2"));
+        assertEquals("value2", map.getAttribute(null, new String("key"), null));
+        assertEquals(1, map.getAttributeKeys(null).size());
+    }
+
+    @Test
+    public void testConditionalOperations() {
+        AttributeKey key = new AttributeKey(getClass(), "key");
+
+        assertNull(map.setAttributeIfAbsent(null, key, "value1"));
+        assertEquals("value1", map.setAttributeIfAbsent(null, key, "value2"));
+
+        assertFalse(map.replaceAttribute(null, key, "value2", "value3"));
+        assertTrue(map.replaceAttribute(null, key, "value1", "value3"));
+        assertEquals("value3", map.getAttribute(null, key, null));
+
+        assertFalse(map.removeAttribute(null, key, "value1"));
+        assertTrue(map.removeAttribute(null, key, "value3"));
+        assertFalse(map.containsAttribute(null, key));
+        assertFalse(map.replaceAttribute(null, key, "value3", "value4"));
+    }
+
+    @Test
+    public void testManyAttributes() {
+        AttributeKey[] keys = new AttributeKey[1000];
+        Set<Object> expectedKeys = new HashSet<Object>();
+
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new AttributeKey(getClass(), "key" + i);
+            map.setAttribute(null, keys[i], i);
+            map.setAttribute(null, "key" + i, i);
+            expectedKeys.add(keys[i]);
+            expectedKeys.add("key" + i);
+        }
+
+        assertEquals(expectedKeys, map.getAttributeKeys(null));
+
+        // Remove every other attribute, then add new ones so that the
+        // table is rebuilt without the removed ones
+        for (int i = 0; i < keys.length; i += 2) {
+            assertEquals(i, map.removeAttribute(null, keys[i]));
+            expectedKeys.remove(keys[i]);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            AttributeKey key = new AttributeKey(getClass(), "new" + i);
+            map.setAttribute(null, key, i);
+            expectedKeys.add(key);
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i % 2 == 0 ? null : i, map.getAttribute(null, keys[i], null));
+            assertEquals(i, map.getAttribute(null, "key" + i, null));
+        }
+
+        assertEquals(expectedKeys, map.getAttributeKeys(null));
+    }
+
+    @Test
+    public void testRemoveAndSetAgain() {
+        AttributeKey key = new AttributeKey(getClass(), "key");
+
+        // A key removed and set again many times reuses its slot
+        for (int i = 0; i < 10000; i++) {
+            map.setAttribute(null, key, i);
+            assertEquals(i, map.removeAttribute(null, key));
+        }
+
+        assertTrue(map.getAttributeKeys(null).isEmpty());
+    }
+}
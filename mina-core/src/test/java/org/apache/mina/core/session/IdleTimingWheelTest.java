@@ -0,0 +1,163 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.session;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link IdleTimingWheel}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class IdleTimingWheelTest {
+    private DummySession session;
+
+    private int readerIdleCount;
+
+    @Before
+    public void setUp() {
+        session = new DummySession();
+        session.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void sessionIdle(IoSession session, IdleStatus status) {
+                if (status == IdleStatus.READER_IDLE) {
+                    readerIdleCount++;
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testIdleSession() {
+        IdleTimingWheel wheel = new IdleTimingWheel();
+        long now = session.getLastReadTime();
+        session.getConfig().setIdleTime(IdleStatus.READER_IDLE, 5);
+
+        wheel.add(session, now);
+        assertEquals(1, wheel.size());
+
+        wheel.expire(now + 1000);
+        wheel.expire(now + 4000);
+        assertEquals(0, readerIdleCount);
+
+        wheel.expire(now + 6000);
+        assertEquals(1, readerIdleCount);
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void testDeadlineBeyondWheelRevolution() {
+        IdleTimingWheel wheel = new IdleTimingWheel(1000, 8, 60000);
+        long now = session.getLastReadTime();
+        session.getConfig().setIdleTime(IdleStatus.READER_IDLE, 20);
+
+        wheel.add(session, now);
+
+        for (long t = 1000; t < 20000; t += 1000) {
+            wheel.expire(now + t);
+        }
+
+        assertEquals(0, readerIdleCount);
+
+        wheel.expire(now + 21000);
+        assertEquals(1, readerIdleCount);
+    }
+
+    @Test
+    public void testLateExpire() {
+        IdleTimingWheel wheel = new IdleTimingWheel(1000, 8, 60000);
+        long now = session.getLastReadTime();
+        session.getConfig().setIdleTime(IdleStatus.READER_IDLE, 3);
+
+        wheel.add(session, now);
+
+        // All the buckets are passed at once
+        wheel.expire(now + 50000);
+        assertEquals(1, readerIdleCount);
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void testIdleTimeChangedAfterScheduling() {
+        IdleTimingWheel wheel = new IdleTimingWheel(1000, 64, 10000);
+        long now = session.getLastReadTime();
+
+        wheel.add(session, now);
+        session.getConfig().setIdleTime(IdleStatus.READER_IDLE, 2);
+
+        // The session is moved, it doesn't wait for its next check.
+        wheel.expire(now + 1000);
+        assertEquals(0, readerIdleCount);
+
+        wheel.expire(now + 3000);
+        assertEquals(1, readerIdleCount);
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void testIdleTimeChangedAfterRemoval() {
+        IdleTimingWheel wheel = new IdleTimingWheel(1000, 64, 10000);
+        long now = session.getLastReadTime();
+
+        wheel.add(session, now);
+        wheel.remove(session);
+        session.getConfig().setIdleTime(IdleStatus.READER_IDLE, 2);
+        assertEquals(0, wheel.size());
+
+        wheel.expire(now + 3000);
+        assertEquals(0, readerIdleCount);
+    }
+
+    @Test
+    public void testRemove() {
+        IdleTimingWheel wheel = new IdleTimingWheel();
+        long now = session.getLastReadTime();
+        session.getConfig().setIdleTime(IdleStatus.READER_IDLE, 5);
+
+        wheel.add(session, now);
+        wheel.remove(session);
+        assertEquals(0, wheel.size());
+
+        // Removing twice is harmless
+        wheel.remove(session);
+        assertEquals(0, wheel.size());
+
+        wheel.expire(now + 10000);
+        assertEquals(0, readerIdleCount);
+    }
+
+    @Test
+    public void testClosedSessionIsDropped() {
+        IdleTimingWheel wheel = new IdleTimingWheel();
+        long now = session.getLastReadTime();
+        session.getConfig().setIdleTime(IdleStatus.READER_IDLE, 5);
+
+        wheel.add(session, now);
+        session.close(true);
+
+        wheel.expire(now + 6000);
+        assertEquals(0, readerIdleCount);
+        assertEquals(0, wheel.size());
+    }
+}
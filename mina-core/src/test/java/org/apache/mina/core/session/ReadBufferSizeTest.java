@@ -0,0 +1,139 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.session;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.mina.core.service.AbstractIoService;
+import org.apache.mina.core.service.IoServiceStatistics;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the adaptive read buffer sizing of {@link AbstractIoSession} and the
+ * read buffer budget of the service.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ReadBufferSizeTest {
+    private DummySession session;
+
+    private IoSessionConfig config;
+
+    @Before
+    public void setUp() {
+        session = new DummySession();
+        config = session.getConfig();
+        config.setMinReadBufferSize(64);
+        config.setMaxReadBufferSize(65536);
+        config.setReadBufferSize(1024);
+    }
+
+    /**
+     * Simulates reads filling the read buffer of the given session.
+     */
+    private static void readFull(AbstractIoSession session, int count) {
+        for (int i = 0; i < count; i++) {
+            session.updateReadBufferSize(session.getConfig().getReadBufferSize());
+        }
+    }
+
+    @Test
+    public void testGrowOnFullReads() {
+        // A single full read doesn't grow the buffer
+        session.updateReadBufferSize(1024);
+        assertEquals(1024, config.getReadBufferSize());
+
+        readFull(session, 2);
+        assertEquals(2048, config.getReadBufferSize());
+
+        readFull(session, 100);
+        assertEquals(65536, config.getReadBufferSize());
+    }
+
+    @Test
+    public void testShrinkOnSustainedSmallReads() {
+        // A single small read doesn't shrink the buffer
+        session.updateReadBufferSize(10);
+        assertEquals(1024, config.getReadBufferSize());
+
+        for (int i = 0; i < 100; i++) {
+            session.updateReadBufferSize(10);
+        }
+
+        assertEquals(64, config.getReadBufferSize());
+    }
+
+    @Test
+    public void testBurstsDontOscillate() {
+        // Settle on a steady read size
+        for (int i = 0; i < 20; i++) {
+            session.updateReadBufferSize(400);
+        }
+
+        assertEquals(1024, config.getReadBufferSize());
+
+        // An isolated full read followed by the usual traffic
+        session.updateReadBufferSize(1024);
+        int size = config.getReadBufferSize();
+
+        for (int i = 0; i < 20; i++) {
+            session.updateReadBufferSize(400);
+            assertEquals(size, config.getReadBufferSize());
+        }
+    }
+
+    @Test
+    public void testBudget() {
+        AbstractIoService service = (AbstractIoService) session.getService();
+        IoServiceStatistics stats = service.getStatistics();
+        service.setReadBufferBudget(4096);
+
+        DummySession session2 = new DummySession();
+        session2.setService(service);
+        session2.getConfig().setReadBufferSize(1024);
+
+        // The first session takes 1024 + 2048 bytes of the budget, and
+        // can't grow to 8192 bytes
+        readFull(session, 20);
+        assertEquals(4096, config.getReadBufferSize());
+        assertEquals(3072, stats.getReadBufferBudgetUsage());
+
+        // Only 1024 bytes are left : the second session grows once
+        readFull(session2, 20);
+        assertEquals(2048, session2.getConfig().getReadBufferSize());
+        assertEquals(4096, stats.getReadBufferBudgetUsage());
+        assertEquals(1.0, stats.getReadBufferBudgetUtilization(), 0.0);
+
+        // Nor does the first session
+        readFull(session, 20);
+        assertEquals(4096, config.getReadBufferSize());
+
+        // Shrinking and closing give the budget back
+        for (int i = 0; i < 100; i++) {
+            session.updateReadBufferSize(100);
+        }
+
+        assertEquals(1024, stats.getReadBufferBudgetUsage());
+
+        session2.releaseReadBufferBudget();
+        assertEquals(0, stats.getReadBufferBudgetUsage());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link AbstractIoSession#writeAndForget(Object)}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class WriteAndForgetTest {
+    private DummySession session;
+
+    private final List<WriteRequest> requests = new ArrayList<WriteRequest>();
+
+    private final List<Object> sentMessages = new ArrayList<Object>();
+
+    @Before
+    public void setUp() {
+        session = new DummySession();
+        session.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageSent(IoSession session, Object message) {
+                sentMessages.add(message);
+            }
+        });
+        session.getFilterChain().addLast("recorder", new IoFilterAdapter() {
+            @Override
+            public void filterWrite(NextFilter nextFilter, IoSession session,
+                    WriteRequest writeRequest) throws Exception {
+                requests.add(writeRequest);
+                nextFilter.filterWrite(session, writeRequest);
+            }
+        });
+    }
+
+    @Test
+    public void testWriteAndForget() {
+        IoBuffer message = IoBuffer.wrap(new byte[] { 1, 2, 3 });
+        session.writeAndForget(message);
+
+        assertEquals(1, requests.size());
+        assertSame(message, requests.get(0).getMessage());
+        assertSame(DefaultWriteRequest.UNUSED_FUTURE, requests.get(0).getFuture());
+
+        // The handler is notified anyway
+        assertEquals(1, sentMessages.size());
+        assertSame(message, sentMessages.get(0));
+    }
+
+    @Test
+    public void testEmptyBuffer() {
+        try {
+            session.writeAndForget(IoBuffer.allocate(8).limit(0));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        assertEquals(0, requests.size());
+    }
+
+    @Test
+    public void testClosedSession() {
+        session.close(true);
+        session.writeAndForget(IoBuffer.wrap(new byte[] { 1 }));
+
+        assertEquals(0, requests.size());
+        assertEquals(0, sentMessages.size());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the write watermarks of {@link AbstractIoSession}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class WriteWatermarkTest {
+    private DummySession session;
+
+    private final StringBuilder handlerEvents = new StringBuilder();
+
+    private int filterEvents;
+
+    @Before
+    public void setUp() {
+        session = new DummySession();
+        session.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void writabilityChanged(IoSession session, boolean writable) {
+                handlerEvents.append(writable ? 'W' : 'U');
+            }
+        });
+        session.getFilterChain().addLast("counter", new IoFilterAdapter() {
+            @Override
+            public void writabilityChanged(NextFilter nextFilter,
+                    IoSession session, boolean writable) throws Exception {
+                filterEvents++;
+                super.writabilityChanged(nextFilter, session, writable);
+            }
+        });
+
+        // Keep the written buffers in the write queue
+        session.suspendWrite();
+    }
+
+    /**
+     * Writes the given number of bytes, then updates the writability as the
+     * I/O processor does after a flush.
+     */
+    private void write(int bytes) {
+        session.write(IoBuffer.allocate(bytes).limit(bytes));
+        session.updateWritability();
+    }
+
+    private void written(int bytes) {
+        session.increaseWrittenBytes(bytes, System.currentTimeMillis());
+        session.updateWritability();
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        for (int i = 0; i < 100; i++) {
+            write(1000);
+        }
+
+        assertEquals(100000, session.getScheduledWriteBytes());
+        assertTrue(session.isWritable());
+        assertFalse(session.isReadSuspended());
+        assertEquals("", handlerEvents.toString());
+    }
+
+    @Test
+    public void testWatermarks() {
+        session.getConfig().setWriteHighWatermark(1000);
+        session.getConfig().setWriteLowWatermark(500);
+
+        write(600);
+        assertTrue(session.isWritable());
+
+        // Above the high watermark
+        write(600);
+        assertFalse(session.isWritable());
+        assertTrue(session.isReadSuspended());
+        assertEquals("U", handlerEvents.toString());
+
+        write(600);
+        assertEquals("U", handlerEvents.toString());
+
+        // Between the watermarks
+        written(1200);
+        assertFalse(session.isWritable());
+
+        // At the low watermark
+        written(100);
+        assertTrue(session.isWritable());
+        assertFalse(session.isReadSuspended());
+        assertEquals("UW", handlerEvents.toString());
+        assertEquals(2, filterEvents);
+    }
+
+    @Test
+    public void testUpdatedByProcessorOnly() {
+        session.getConfig().setWriteHighWatermark(1000);
+        session.write(IoBuffer.allocate(1200).limit(1200));
+
+        // The writer thread doesn't fire the event
+        assertTrue(session.isWritable());
+        assertEquals("", handlerEvents.toString());
+
+        session.updateWritability();
+        assertFalse(session.isWritable());
+        assertEquals("U", handlerEvents.toString());
+
+        // Nothing changed
+        session.updateWritability();
+        assertEquals("U", handlerEvents.toString());
+    }
+
+    @Test
+    public void testReadSuspendedByUser() {
+        session.getConfig().setWriteHighWatermark(1000);
+        session.getConfig().setWriteLowWatermark(500);
+        session.suspendRead();
+
+        write(1200);
+        assertFalse(session.isWritable());
+        written(1200);
+        assertTrue(session.isWritable());
+
+        // The reads suspended by the user are not resumed
+        assertTrue(session.isReadSuspended());
+        assertEquals("UW", handlerEvents.toString());
+    }
+
+    @Test
+    public void testWatermarksDisabledWhileNotWritable() {
+        session.getConfig().setWriteHighWatermark(1000);
+        write(1200);
+        assertFalse(session.isWritable());
+
+        session.getConfig().setWriteHighWatermark(0);
+        written(100);
+        assertTrue(session.isWritable());
+        assertEquals("UW", handlerEvents.toString());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core.write;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link LockFreeWriteRequestQueue}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class LockFreeWriteRequestQueueTest {
+    private static final int PRODUCERS = 4;
+
+    private static final int REQUESTS_PER_PRODUCER = 100000;
+
+    @Test
+    public void testOfferPoll() {
+        LockFreeWriteRequestQueue q = new LockFreeWriteRequestQueue();
+        assertTrue(q.isEmpty(null));
+        assertNull(q.poll(null));
+
+        WriteRequest r1 = new DefaultWriteRequest("1");
+        WriteRequest r2 = new DefaultWriteRequest("2");
+        q.offer(null, r1);
+        q.offer(null, r2);
+        assertFalse(q.isEmpty(null));
+
+        assertSame(r1, q.poll(null));
+        assertSame(r2, q.poll(null));
+        assertNull(q.poll(null));
+        assertTrue(q.isEmpty(null));
+    }
+
+    @Test
+    public void testClear() {
+        LockFreeWriteRequestQueue q = new LockFreeWriteRequestQueue();
+
+        for (int i = 0; i < 10; i++) {
+            q.offer(null, new DefaultWriteRequest(i));
+        }
+
+        q.clear(null);
+        assertTrue(q.isEmpty(null));
+        assertNull(q.poll(null));
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final LockFreeWriteRequestQueue q = new LockFreeWriteRequestQueue();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] producers = new Thread[PRODUCERS];
+
+        for (int i = 0; i < PRODUCERS; i++) {
+            final int producerId = i;
+            producers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int j = 0; j < REQUESTS_PER_PRODUCER; j++) {
+                        q.offer(null, new DefaultWriteRequest(new int[] { producerId, j }));
+                    }
+                }
+            };
+            producers[i].start();
+        }
+
+        start.countDown();
+
+        // Every producer's requests must be polled in the order they were offered
+        int[] expected = new int[PRODUCERS];
+        int polled = 0;
+
+        while (polled < PRODUCERS * REQUESTS_PER_PRODUCER) {
+            WriteRequest req = q.poll(null);
+
+            if (req == null) {
+                Thread.yield();
+                continue;
+            }
+
+            int[] message = (int[]) req.getMessage();
+            assertEquals(expected[message[0]]++, message[1]);
+            polled++;
+        }
+
+        for (Thread t : producers) {
+            t.join();
+        }
+
+        assertTrue(q.isEmpty(null));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.net.SocketAddress;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.DefaultTransportMetadata;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.session.IoSessionConfig;
+import org.apache.mina.util.byteaccess.ByteArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link CompositeCumulativeProtocolDecoder}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CompositeCumulativeProtocolDecoderTest {
+    private final ProtocolCodecSession session = new ProtocolCodecSession();
+
+    private LengthPrefixedDecoder decoder;
+
+    @Before
+    public void setUp() throws Exception {
+        decoder = new LengthPrefixedDecoder();
+        session.setTransportMetadata(
+                new DefaultTransportMetadata(
+                        "mina", "dummy", false, true, SocketAddress.class,
+                        IoSessionConfig.class, IoBuffer.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        decoder.dispose(session);
+    }
+
+    @Test
+    public void testSingleFragmentFrame() throws Exception {
+        IoBuffer buf = IoBuffer.allocate(16);
+        buf.putInt(3);
+        buf.put((byte) 1).put((byte) 2).put((byte) 3);
+        buf.flip();
+
+        decoder.decode(session, buf, session.getDecoderOutput());
+        assertEquals(buf.limit(), buf.position());
+        assertEquals(1, session.getDecoderOutputQueue().size());
+
+        // The frame shares its content with the received buffer.
+        IoBuffer frame = (IoBuffer) session.getDecoderOutputQueue().poll();
+        assertEquals(3, frame.remaining());
+        assertSame(buf.array(), frame.array());
+        assertEquals(1, frame.get());
+        assertEquals(2, frame.get());
+        assertEquals(3, frame.get());
+    }
+
+    @Test
+    public void testFragmentedFrames() throws Exception {
+        IoBuffer data = IoBuffer.allocate(64);
+
+        for (int i = 1; i <= 4; i++) {
+            data.putInt(i);
+
+            for (int j = 0; j < i; j++) {
+                data.put((byte) i);
+            }
+        }
+
+        data.flip();
+
+        // Feed the frames 3 bytes at a time.
+        while (data.hasRemaining()) {
+            IoBuffer buf = IoBuffer.allocate(3);
+
+            while (buf.hasRemaining() && data.hasRemaining()) {
+                buf.put(data.get());
+            }
+
+            buf.flip();
+            decoder.decode(session, buf, session.getDecoderOutput());
+            assertEquals(buf.limit(), buf.position());
+        }
+
+        assertEquals(4, session.getDecoderOutputQueue().size());
+
+        for (int i = 1; i <= 4; i++) {
+            IoBuffer frame = (IoBuffer) session.getDecoderOutputQueue().poll();
+            assertEquals(i, frame.remaining());
+
+            while (frame.hasRemaining()) {
+                assertEquals(i, frame.get());
+            }
+        }
+    }
+
+    @Test
+    public void testWrongImplementationDetection() throws Exception {
+        IoBuffer buf = IoBuffer.allocate(4);
+        buf.putInt(0);
+        buf.flip();
+
+        try {
+            new WrongDecoder().decode(session, buf, session.getDecoderOutput());
+            fail();
+        } catch (IllegalStateException e) {
+            // OK
+        }
+    }
+
+    private static class LengthPrefixedDecoder extends CompositeCumulativeProtocolDecoder {
+        @Override
+        protected boolean doDecode(IoSession session, ByteArray.Cursor in,
+                ProtocolDecoderOutput out) throws Exception {
+            if (in.getRemaining() < 4) {
+                return false;
+            }
+
+            int start = in.getIndex();
+            int length = in.getInt();
+
+            if (in.getRemaining() < length) {
+                in.setIndex(start);
+                return false;
+            }
+
+            out.write(toIoBuffer(in.slice(length)));
+            return true;
+        }
+    }
+
+    private static class WrongDecoder extends CompositeCumulativeProtocolDecoder {
+        @Override
+        protected boolean doDecode(IoSession session, ByteArray.Cursor in,
+                ProtocolDecoderOutput out) throws Exception {
+            return true;
+        }
+    }
+}
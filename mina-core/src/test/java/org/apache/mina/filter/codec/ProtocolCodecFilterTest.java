@@ -0,0 +1,157 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the write requests produced by {@link ProtocolCodecFilter}, with
+ * and without the encoder output coalescing.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ProtocolCodecFilterTest {
+    private static final String MESSAGE = "message";
+
+    private DummySession session;
+
+    private ProtocolCodecFilter filter;
+
+    private final List<WriteRequest> requests = new ArrayList<WriteRequest>();
+
+    private final List<Object> sentMessages = new ArrayList<Object>();
+
+    /** The number of buffers produced by the encoder for each message */
+    private int bufferCount;
+
+    @Before
+    public void setUp() {
+        filter = new ProtocolCodecFilter(new ProtocolEncoderAdapter() {
+            public void encode(IoSession session, Object message,
+                    ProtocolEncoderOutput out) throws Exception {
+                for (int i = 0; i < bufferCount; i++) {
+                    out.write(IoBuffer.wrap(new byte[] { (byte) i }));
+                }
+            }
+        }, new ProtocolDecoderAdapter() {
+            public void decode(IoSession session, IoBuffer in,
+                    ProtocolDecoderOutput out) throws Exception {
+                // Do nothing
+            }
+        });
+
+        session = new DummySession();
+        session.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageSent(IoSession session, Object message) {
+                sentMessages.add(message);
+            }
+        });
+        session.getFilterChain().addLast("recorder", new IoFilterAdapter() {
+            @Override
+            public void filterWrite(NextFilter nextFilter, IoSession session,
+                    WriteRequest writeRequest) throws Exception {
+                requests.add(writeRequest);
+                nextFilter.filterWrite(session, writeRequest);
+            }
+        });
+        session.getFilterChain().addLast("codec", filter);
+    }
+
+    @Test
+    public void testDelimitedOutput() {
+        bufferCount = 2;
+        WriteFuture future = session.write(MESSAGE);
+
+        // Two encoded buffers and the empty delimiter
+        assertEquals(3, requests.size());
+        assertEquals(0, ((IoBuffer) requests.get(2).getMessage()).remaining());
+        assertSame(future, requests.get(2).getFuture());
+        assertTrue(future.isWritten());
+
+        assertMessageSent();
+    }
+
+    @Test
+    public void testCoalescedOutput() {
+        filter.setEncoderOutputCoalesced(true);
+        bufferCount = 2;
+        WriteFuture future = session.write(MESSAGE);
+
+        // The last buffer replaces the delimiter
+        assertEquals(2, requests.size());
+        assertEquals(1, ((IoBuffer) requests.get(1).getMessage()).get(0));
+        assertSame(future, requests.get(1).getFuture());
+        assertFalse(requests.get(1).isEncoded());
+        assertTrue(future.isWritten());
+
+        assertMessageSent();
+    }
+
+    @Test
+    public void testCoalescedSingleBuffer() {
+        filter.setEncoderOutputCoalesced(true);
+        bufferCount = 1;
+        WriteFuture future = session.write(MESSAGE);
+
+        assertEquals(1, requests.size());
+        assertEquals(1, ((IoBuffer) requests.get(0).getMessage()).remaining());
+        assertTrue(future.isWritten());
+
+        assertMessageSent();
+    }
+
+    @Test
+    public void testCoalescedEmptyOutput() {
+        filter.setEncoderOutputCoalesced(true);
+        bufferCount = 0;
+        WriteFuture future = session.write(MESSAGE);
+
+        // Nothing to coalesce with, the delimiter is still written
+        assertEquals(1, requests.size());
+        assertEquals(0, ((IoBuffer) requests.get(0).getMessage()).remaining());
+        assertTrue(future.isWritten());
+
+        assertMessageSent();
+    }
+
+    private void assertMessageSent() {
+        assertEquals(1, sentMessages.size());
+        assertSame(MESSAGE, sentMessages.get(0));
+        assertEquals(1, session.getWrittenMessages());
+        assertEquals(0, session.getScheduledWriteMessages());
+    }
+}
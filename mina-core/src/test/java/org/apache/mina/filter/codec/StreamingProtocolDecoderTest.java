@@ -0,0 +1,279 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.session.IoSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link StreamingProtocolDecoder}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class StreamingProtocolDecoderTest {
+    private final ProtocolCodecSession session = new ProtocolCodecSession();
+
+    private UploadDecoder decoder;
+
+    @Before
+    public void setUp() throws Exception {
+        decoder = new UploadDecoder();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        decoder.dispose(session);
+    }
+
+    private static IoBuffer message(int type, int bodyLength) {
+        IoBuffer buf = IoBuffer.allocate(12 + bodyLength);
+        buf.putInt(type);
+        buf.putLong(bodyLength);
+
+        for (int i = 0; i < bodyLength; i++) {
+            buf.put((byte) i);
+        }
+
+        return buf.flip();
+    }
+
+    private List<Object> poll() {
+        List<Object> messages = new ArrayList<Object>();
+
+        while (!session.getDecoderOutputQueue().isEmpty()) {
+            messages.add(session.getDecoderOutputQueue().poll());
+        }
+
+        return messages;
+    }
+
+    @Test
+    public void testSingleBuffer() throws Exception {
+        IoBuffer in = IoBuffer.allocate(64);
+        in.put(message(1, 3)).put(message(2, 0)).flip();
+
+        decoder.decode(session, in, session.getDecoderOutput());
+        assertFalse(in.hasRemaining());
+
+        List<Object> messages = poll();
+        assertEquals(4, messages.size());
+        assertEquals(1, messages.get(0));
+
+        // The body is not copied
+        MessageBodyChunk chunk = (MessageBodyChunk) messages.get(1);
+        assertTrue(chunk.isLast());
+        assertSame(in.array(), chunk.getBuffer().array());
+        assertEquals(3, chunk.getBuffer().remaining());
+        assertEquals(0, chunk.getBuffer().get());
+        assertEquals(1, chunk.getBuffer().get());
+        assertEquals(2, chunk.getBuffer().get());
+
+        assertEquals(2, messages.get(2));
+        chunk = (MessageBodyChunk) messages.get(3);
+        assertTrue(chunk.isLast());
+        assertFalse(chunk.getBuffer().hasRemaining());
+    }
+
+    @Test
+    public void testFragmentedMessage() throws Exception {
+        IoBuffer message = message(7, 100000);
+        int received = 0;
+
+        // Fragments of 7 bytes, splitting the header too
+        while (message.hasRemaining()) {
+            IoBuffer in = message.getSlice(Math.min(7, message.remaining()));
+            decoder.decode(session, in, session.getDecoderOutput());
+            assertFalse(in.hasRemaining());
+
+            for (Object m : poll()) {
+                if (m instanceof MessageBodyChunk) {
+                    IoBuffer chunk = ((MessageBodyChunk) m).getBuffer();
+
+                    while (chunk.hasRemaining()) {
+                        assertEquals((byte) received++, chunk.get());
+                    }
+
+                    assertEquals(received == 100000, ((MessageBodyChunk) m).isLast());
+                } else {
+                    assertEquals(0, received);
+                    assertEquals(7, m);
+                }
+            }
+        }
+
+        assertEquals(100000, received);
+    }
+
+    @Test
+    public void testHeaderTooLong() throws Exception {
+        decoder.setMaxHeaderLength(8);
+
+        IoBuffer message = message(1, 0);
+
+        decoder.decode(session, message.getSlice(4), session.getDecoderOutput());
+
+        try {
+            decoder.decode(session, message.getSlice(5), session.getDecoderOutput());
+            fail();
+        } catch (ProtocolDecoderException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testFlowControl() throws Exception {
+        decoder.setMaxPendingBytes(1000);
+
+        IoBuffer message = message(1, 10000);
+        List<MessageBodyChunk> chunks = new ArrayList<MessageBodyChunk>();
+
+        // 500 body bytes pending
+        decoder.decode(session, message.getSlice(512), session.getDecoderOutput());
+        assertFalse(session.isReadSuspended());
+
+        // More than 1000 pending bytes
+        decoder.decode(session, message.getSlice(512), session.getDecoderOutput());
+        assertTrue(session.isReadSuspended());
+
+        for (Object m : poll()) {
+            if (m instanceof MessageBodyChunk) {
+                chunks.add((MessageBodyChunk) m);
+            }
+        }
+
+        // Resumed when at most 500 bytes are left
+        chunks.get(0).release();
+        chunks.get(0).release();
+        assertTrue(session.isReadSuspended());
+        chunks.get(1).release();
+        assertFalse(session.isReadSuspended());
+    }
+
+    @Test
+    public void testUserSuspendedReadIsKept() throws Exception {
+        session.suspendRead();
+        decoder.decode(session, message(1, 10).getSlice(22), session.getDecoderOutput());
+
+        for (Object m : poll()) {
+            if (m instanceof MessageBodyChunk) {
+                ((MessageBodyChunk) m).release();
+            }
+        }
+
+        // Without flow control, the decoder never resumes the reads
+        assertTrue(session.isReadSuspended());
+    }
+
+    @Test
+    public void testFlowControlWithConcurrentReleases() throws Exception {
+        final int bodyLength = 4000000;
+        final BlockingQueue<MessageBodyChunk> chunks = new LinkedBlockingQueue<MessageBodyChunk>();
+        final AtomicLong released = new AtomicLong();
+        ProtocolDecoderOutput out = new ProtocolDecoderOutput() {
+            public void write(Object message) {
+                if (message instanceof MessageBodyChunk) {
+                    chunks.add((MessageBodyChunk) message);
+                }
+            }
+
+            public void flush(NextFilter nextFilter, IoSession session) {
+                // Do nothing
+            }
+        };
+
+        // Release the chunks in another thread, as an executor would
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (released.get() < bodyLength) {
+                        MessageBodyChunk chunk = chunks.take();
+                        released.addAndGet(chunk.getBuffer().remaining());
+                        chunk.release();
+                    }
+                } catch (InterruptedException e) {
+                    // Stop
+                }
+            }
+        };
+
+        decoder.setMaxPendingBytes(1000);
+        consumer.start();
+
+        try {
+            IoBuffer message = message(1, bodyLength);
+            long stalledSince = 0;
+
+            // Read only when the reads are not suspended
+            while (message.hasRemaining()) {
+                if (session.isReadSuspended()) {
+                    if (stalledSince == 0) {
+                        stalledSince = System.currentTimeMillis();
+                    } else if (System.currentTimeMillis() - stalledSince > 5000) {
+                        fail("The reads are never resumed (" + released.get()
+                                + " bytes released)");
+                    }
+
+                    Thread.yield();
+                    continue;
+                }
+
+                stalledSince = 0;
+                decoder.decode(session, message.getSlice(Math.min(100,
+                        message.remaining())), out);
+            }
+
+            consumer.join(5000);
+            assertEquals(bodyLength, released.get());
+            assertFalse(session.isReadSuspended());
+        } finally {
+            consumer.interrupt();
+        }
+    }
+
+    private static class UploadDecoder extends StreamingProtocolDecoder {
+        @Override
+        protected long decodeHeader(IoSession session, IoBuffer in,
+                ProtocolDecoderOutput out) {
+            if (in.remaining() < 12) {
+                return -1;
+            }
+
+            out.write(in.getInt());
+            return in.getLong();
+        }
+    }
+}
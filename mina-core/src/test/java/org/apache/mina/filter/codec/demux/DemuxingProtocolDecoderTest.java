@@ -0,0 +1,239 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec.demux;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.service.DefaultTransportMetadata;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.session.IoSessionConfig;
+import org.apache.mina.filter.codec.ProtocolDecoderException;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the selection of the {@link DiscriminatedMessageDecoder}s by the
+ * {@link DemuxingProtocolDecoder}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DemuxingProtocolDecoderTest {
+    private static final byte MAGIC = 0x7E;
+
+    private DummySession session;
+
+    private final List<Object> messages = new ArrayList<Object>();
+
+    private final ProtocolDecoderOutput out = new ProtocolDecoderOutput() {
+        public void write(Object message) {
+            messages.add(message);
+        }
+
+        public void flush(NextFilter nextFilter, IoSession session) {
+            // Do nothing
+        }
+    };
+
+    @Before
+    public void setUp() {
+        session = new DummySession();
+
+        // Let the decoder cumulate the partial messages
+        session.setTransportMetadata(new DefaultTransportMetadata("mina",
+                "dummy", false, true, SocketAddress.class,
+                IoSessionConfig.class, Object.class));
+    }
+
+    @Test
+    public void testDiscriminatedDecoders() throws Exception {
+        DemuxingProtocolDecoder decoder = new DemuxingProtocolDecoder();
+        decoder.addMessageDecoder(new OpcodeDecoder("a", 1));
+        decoder.addMessageDecoder(new OpcodeDecoder("b", 2));
+
+        decoder.decode(session, IoBuffer.wrap(new byte[] { MAGIC, 2, 5, MAGIC,
+                1, 6, MAGIC, 2, 7 }), out);
+
+        assertMessages("b5", "a6", "b7");
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        DemuxingProtocolDecoder decoder = new DemuxingProtocolDecoder();
+        decoder.addMessageDecoder(new CharacterDecoder());
+        decoder.addMessageDecoder(new OpcodeDecoder("a", 1));
+
+        decoder.decode(session, IoBuffer.wrap(new byte[] { 'T', MAGIC, 1, 5,
+                'T' }), out);
+
+        assertMessages("T", "a5", "T");
+    }
+
+    @Test
+    public void testNeedData() throws Exception {
+        DemuxingProtocolDecoder decoder = new DemuxingProtocolDecoder();
+        decoder.addMessageDecoder(new OpcodeDecoder("a", 1));
+
+        // The discriminator hasn't been received yet
+        decoder.decode(session, IoBuffer.wrap(new byte[] { MAGIC }), out);
+        assertMessages();
+
+        decoder.decode(session, IoBuffer.wrap(new byte[] { 1, 5 }), out);
+        assertMessages("a5");
+    }
+
+    @Test
+    public void testNoMatch() throws Exception {
+        DemuxingProtocolDecoder decoder = new DemuxingProtocolDecoder();
+        decoder.addMessageDecoder(new OpcodeDecoder("a", 1));
+
+        try {
+            decoder.decode(session, IoBuffer.wrap(new byte[] { MAGIC, 3, 5 }),
+                    out);
+            fail();
+        } catch (ProtocolDecoderException e) {
+            // Expected
+        }
+
+        assertMessages();
+    }
+
+    @Test
+    public void testLastAddedDecoderWins() throws Exception {
+        DemuxingProtocolDecoder decoder = new DemuxingProtocolDecoder();
+        decoder.addMessageDecoder(new OpcodeDecoder("a", 1));
+        decoder.addMessageDecoder(new OpcodeDecoder("b", 1));
+
+        decoder.decode(session, IoBuffer.wrap(new byte[] { MAGIC, 1, 5 }), out);
+
+        assertMessages("b5");
+    }
+
+    @Test
+    public void testManyDecoders() throws Exception {
+        DemuxingProtocolDecoder decoder = new DemuxingProtocolDecoder();
+        IoBuffer in = IoBuffer.allocate(256).setAutoExpand(true);
+
+        for (int i = 0; i < 100; i++) {
+            decoder.addMessageDecoder(new OpcodeDecoder("m" + i, i * 37));
+        }
+
+        for (int i = 99; i >= 0; i--) {
+            in.put(MAGIC).put((byte) (i * 37)).put((byte) 0);
+        }
+
+        decoder.decode(session, in.flip(), out);
+
+        assertEquals(100, messages.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("m" + (99 - i) + "0", messages.get(i));
+        }
+    }
+
+    @Test
+    public void testInvalidDiscriminator() throws Exception {
+        DemuxingProtocolDecoder decoder = new DemuxingProtocolDecoder();
+        decoder.addMessageDecoder(new OpcodeDecoder("a", 1) {
+            @Override
+            public byte[] getDiscriminator() {
+                return new byte[9];
+            }
+        });
+
+        try {
+            decoder.decode(session, IoBuffer.wrap(new byte[] { MAGIC, 1, 5 }),
+                    out);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private void assertMessages(Object... expected) {
+        assertEquals(expected.length, messages.size());
+
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], messages.get(i));
+        }
+    }
+
+    /**
+     * Decodes the 3 bytes messages made of the magic number, an opcode, and
+     * a value.
+     */
+    private static class OpcodeDecoder extends MessageDecoderAdapter implements
+            DiscriminatedMessageDecoder {
+        private final String name;
+
+        private final byte opcode;
+
+        private OpcodeDecoder(String name, int opcode) {
+            this.name = name;
+            this.opcode = (byte) opcode;
+        }
+
+        public int getDiscriminatorOffset() {
+            return 1;
+        }
+
+        public byte[] getDiscriminator() {
+            return new byte[] { opcode };
+        }
+
+        public MessageDecoderResult decodable(IoSession session, IoBuffer in) {
+            throw new IllegalStateException("Selected by its discriminator");
+        }
+
+        public MessageDecoderResult decode(IoSession session, IoBuffer in,
+                ProtocolDecoderOutput out) throws Exception {
+            if (in.remaining() < 3) {
+                return NEED_DATA;
+            }
+
+            assertEquals(MAGIC, in.get());
+            assertEquals(opcode, in.get());
+            out.write(name + in.get());
+            return OK;
+        }
+    }
+
+    /**
+     * Decodes the 'T' characters.
+     */
+    private static class CharacterDecoder extends MessageDecoderAdapter {
+        public MessageDecoderResult decodable(IoSession session, IoBuffer in) {
+            return in.get() == 'T' ? OK : NOT_OK;
+        }
+
+        public MessageDecoderResult decode(IoSession session, IoBuffer in,
+                ProtocolDecoderOutput out) throws Exception {
+            out.write(String.valueOf((char) in.get()));
+            return OK;
+        }
+    }
+}
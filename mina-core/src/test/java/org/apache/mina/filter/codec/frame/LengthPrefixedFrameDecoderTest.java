@@ -0,0 +1,207 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec.frame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.AbstractIoService;
+import org.apache.mina.filter.codec.ProtocolCodecSession;
+import org.apache.mina.filter.codec.ProtocolDecoderException;
+import org.apache.mina.filter.codec.RecoverableProtocolDecoderException;
+import org.junit.Test;
+
+/**
+ * Tests {@link LengthPrefixedFrameDecoder}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class LengthPrefixedFrameDecoderTest {
+    private final ProtocolCodecSession session = new ProtocolCodecSession();
+
+    @Test
+    public void testSlices() throws Exception {
+        LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder(LengthPrefix.SHORT);
+        IoBuffer in = IoBuffer.wrap(new byte[] { 0, 2, 'a', 'b', 0, 1, 'c' });
+
+        decoder.decode(session, in, session.getDecoderOutput());
+
+        assertEquals(2, session.getDecoderOutputQueue().size());
+        IoBuffer frame = (IoBuffer) session.getDecoderOutputQueue().poll();
+        assertEquals(0, frame.position());
+        assertEquals(2, frame.remaining());
+        assertEquals('a', frame.get(0));
+
+        // The frame shares the content of the read buffer
+        assertSame(in.array(), frame.array());
+        assertEquals("c", toString((IoBuffer) session.getDecoderOutputQueue().poll()));
+        assertTrue(!in.hasRemaining());
+    }
+
+    @Test
+    public void testRecycledReadBuffer() throws Exception {
+        ((AbstractIoService) session.getService()).setReadBufferRecycled(true);
+        LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder(LengthPrefix.BYTE);
+        IoBuffer in = IoBuffer.wrap(new byte[] { 2, 'a', 'b' });
+
+        decoder.decode(session, in, session.getDecoderOutput());
+
+        IoBuffer frame = (IoBuffer) session.getDecoderOutputQueue().poll();
+        assertNotSame(in.array(), frame.array());
+        assertEquals("ab", toString(frame));
+    }
+
+    @Test
+    public void testFrameSpanningReads() throws Exception {
+        for (LengthPrefix prefix : LengthPrefix.values()) {
+            LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder(prefix);
+            LengthPrefixedFrameEncoder encoder = new LengthPrefixedFrameEncoder(prefix);
+            ProtocolCodecSession session = new ProtocolCodecSession();
+            byte[] frame = newFrame(200);
+
+            encoder.encode(session, frame, session.getEncoderOutput());
+            encoder.encode(session, new byte[0], session.getEncoderOutput());
+            IoBuffer encoded = (IoBuffer) session.getEncoderOutputQueue().poll();
+            IoBuffer empty = (IoBuffer) session.getEncoderOutputQueue().poll();
+
+            // Feed the frame one byte at a time
+            while (encoded.hasRemaining()) {
+                assertEquals(0, session.getDecoderOutputQueue().size());
+                decoder.decode(session, IoBuffer.wrap(new byte[] { encoded.get() }),
+                        session.getDecoderOutput());
+            }
+
+            decoder.decode(session, empty, session.getDecoderOutput());
+
+            assertEquals(prefix.name(), 2, session.getDecoderOutputQueue().size());
+            assertEquals(IoBuffer.wrap(frame), session.getDecoderOutputQueue().poll());
+            assertEquals(0, ((IoBuffer) session.getDecoderOutputQueue().poll()).remaining());
+        }
+    }
+
+    @Test
+    public void testRandomSplits() throws Exception {
+        Random random = new Random(42);
+
+        for (LengthPrefix prefix : LengthPrefix.values()) {
+            LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder(prefix);
+            LengthPrefixedFrameEncoder encoder = new LengthPrefixedFrameEncoder(prefix);
+            ProtocolCodecSession session = new ProtocolCodecSession();
+            IoBuffer stream = IoBuffer.allocate(65536).setAutoExpand(true);
+            byte[][] frames = new byte[100][];
+
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = newFrame(random.nextInt(Math.min(2000, prefix.getMaxFrameLength())));
+                encoder.encode(session, frames[i], session.getEncoderOutput());
+            }
+
+            while (!session.getEncoderOutputQueue().isEmpty()) {
+                stream.put((IoBuffer) session.getEncoderOutputQueue().poll());
+            }
+
+            stream.flip();
+
+            while (stream.hasRemaining()) {
+                int length = Math.min(stream.remaining(), random.nextInt(300) + 1);
+                byte[] read = new byte[length];
+                stream.get(read);
+                decoder.decode(session, IoBuffer.wrap(read), session.getDecoderOutput());
+            }
+
+            assertEquals(prefix.name(), frames.length, session.getDecoderOutputQueue().size());
+
+            for (byte[] frame : frames) {
+                assertEquals(IoBuffer.wrap(frame), session.getDecoderOutputQueue().poll());
+            }
+        }
+    }
+
+    @Test
+    public void testTooLongFrame() throws Exception {
+        LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder(LengthPrefix.BYTE, 3);
+        IoBuffer in = IoBuffer.wrap(new byte[] { 1, 'a', 5, 'b', 'c' });
+
+        try {
+            decoder.decode(session, in, session.getDecoderOutput());
+            fail();
+        } catch (RecoverableProtocolDecoderException e) {
+            // Expected
+        }
+
+        assertEquals(1, session.getDecoderOutputQueue().size());
+        assertEquals("a", toString((IoBuffer) session.getDecoderOutputQueue().poll()));
+
+        // The rest of the frame is skipped
+        decoder.decode(session, IoBuffer.wrap(new byte[] { 'd', 'e', 'f', 1, 'g' }),
+                session.getDecoderOutput());
+
+        assertEquals(1, session.getDecoderOutputQueue().size());
+        assertEquals("g", toString((IoBuffer) session.getDecoderOutputQueue().poll()));
+    }
+
+    @Test
+    public void testTooLongVarint() throws Exception {
+        LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder(LengthPrefix.VARINT);
+        IoBuffer in = IoBuffer.wrap(new byte[] { (byte) 0x80, (byte) 0x80,
+                (byte) 0x80, (byte) 0x80, (byte) 0x80, 1 });
+
+        try {
+            decoder.decode(session, in, session.getDecoderOutput());
+            fail();
+        } catch (ProtocolDecoderException e) {
+            assertTrue(!(e instanceof RecoverableProtocolDecoderException));
+        }
+    }
+
+    @Test
+    public void testNegativeLength() throws Exception {
+        LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder();
+        IoBuffer in = IoBuffer.allocate(4).putInt(-1).flip();
+
+        try {
+            decoder.decode(session, in, session.getDecoderOutput());
+            fail();
+        } catch (ProtocolDecoderException e) {
+            assertTrue(!(e instanceof RecoverableProtocolDecoderException));
+        }
+    }
+
+    private static byte[] newFrame(int length) {
+        byte[] frame = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            frame[i] = (byte) (i * 31 + length);
+        }
+
+        return frame;
+    }
+
+    private static String toString(IoBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.codec.frame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.filter.codec.ProtocolCodecSession;
+import org.junit.Test;
+
+/**
+ * Tests {@link LengthPrefixedFrameEncoder}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class LengthPrefixedFrameEncoderTest {
+    private final ProtocolCodecSession session = new ProtocolCodecSession();
+
+    @Test
+    public void testFixedPrefixes() throws Exception {
+        assertEquals(IoBuffer.wrap(new byte[] { 2, 'a', 'b' }),
+                encode(LengthPrefix.BYTE, new byte[] { 'a', 'b' }));
+        assertEquals(IoBuffer.wrap(new byte[] { 0, 2, 'a', 'b' }),
+                encode(LengthPrefix.SHORT, new byte[] { 'a', 'b' }));
+        assertEquals(IoBuffer.wrap(new byte[] { 0, 0, 0, 2, 'a', 'b' }),
+                encode(LengthPrefix.INT, new byte[] { 'a', 'b' }));
+    }
+
+    @Test
+    public void testVarint() throws Exception {
+        assertEquals(IoBuffer.wrap(new byte[] { 1, 'a' }),
+                encode(LengthPrefix.VARINT, new byte[] { 'a' }));
+
+        IoBuffer buf = encode(LengthPrefix.VARINT, new byte[300]);
+        assertEquals((byte) 0xAC, buf.get());
+        assertEquals(0x02, buf.get());
+        assertEquals(300, buf.remaining());
+
+        assertEquals(1, LengthPrefix.VARINT.getPrefixLength(127));
+        assertEquals(2, LengthPrefix.VARINT.getPrefixLength(128));
+        assertEquals(5, LengthPrefix.VARINT.getPrefixLength(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testByteBuffer() throws Exception {
+        ByteBuffer message = ByteBuffer.wrap(new byte[] { 'x', 'a', 'b' });
+        message.position(1);
+
+        assertEquals(IoBuffer.wrap(new byte[] { 2, 'a', 'b' }),
+                encode(LengthPrefix.BYTE, message));
+
+        // The message is left untouched
+        assertEquals(1, message.position());
+    }
+
+    @Test
+    public void testLargeFrameIsNotCopied() throws Exception {
+        LengthPrefixedFrameEncoder encoder = new LengthPrefixedFrameEncoder();
+        byte[] frame = new byte[4096];
+
+        encoder.encode(session, frame, session.getEncoderOutput());
+
+        assertEquals(2, session.getEncoderOutputQueue().size());
+        IoBuffer prefix = (IoBuffer) session.getEncoderOutputQueue().poll();
+        assertEquals(4096, prefix.getInt());
+        assertSame(frame, ((IoBuffer) session.getEncoderOutputQueue().poll()).array());
+    }
+
+    @Test
+    public void testTooLongFrame() throws Exception {
+        try {
+            encode(LengthPrefix.BYTE, new byte[256]);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        LengthPrefixedFrameEncoder encoder = new LengthPrefixedFrameEncoder(LengthPrefix.INT, 10);
+
+        try {
+            encoder.encode(session, new byte[11], session.getEncoderOutput());
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private IoBuffer encode(LengthPrefix prefix, Object message) throws Exception {
+        LengthPrefixedFrameEncoder encoder = new LengthPrefixedFrameEncoder(prefix);
+        encoder.encode(session, message, session.getEncoderOutput());
+
+        assertEquals(1, session.getEncoderOutputQueue().size());
+        return (IoBuffer) session.getEncoderOutputQueue().poll();
+    }
+}
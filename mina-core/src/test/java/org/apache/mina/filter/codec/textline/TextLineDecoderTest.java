@@ -23,8 +23,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.filter.codec.ProtocolCodecSession;
@@ -149,6 +153,7 @@ public class TextLineDecoderTest {
         assertEquals("STU", session.getDecoderOutputQueue().poll());
     }
 
+    @Test
     public void testAutoDecode() throws Exception {
         TextLineDecoder decoder = new TextLineDecoder(Charset.forName("UTF-8"),
                 LineDelimiter.AUTO);
@@ -254,6 +259,7 @@ public class TextLineDecoderTest {
         assertEquals("STU", session.getDecoderOutputQueue().poll());
     }
 
+    @Test
     public void testOverflow() throws Exception {
         TextLineDecoder decoder = new TextLineDecoder(Charset.forName("UTF-8"),
                 LineDelimiter.AUTO);
@@ -320,6 +326,7 @@ public class TextLineDecoderTest {
         assertTrue(Runtime.getRuntime().freeMemory() - oldFreeMemory < 1048576);
     }
     
+    @Test
     public void testSMTPDataBounds() throws Exception {
         TextLineDecoder decoder = new TextLineDecoder(Charset.forName("ISO-8859-1"),
                 new LineDelimiter("\r\n.\r\n"));
@@ -336,4 +343,110 @@ public class TextLineDecoderTest {
         assertEquals(1, session.getDecoderOutputQueue().size());
         assertEquals("\r\n\r\nBody", session.getDecoderOutputQueue().poll());
     }
+
+    @Test
+    public void testRandomSplits() throws Exception {
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200; i++) {
+            assertRandomSplits(random, LineDelimiter.AUTO, random.nextBoolean(), random.nextBoolean());
+            assertRandomSplits(random, LineDelimiter.WINDOWS, random.nextBoolean(), random.nextBoolean());
+            assertRandomSplits(random, new LineDelimiter("\r\n.\r\n"), random.nextBoolean(),
+                    random.nextBoolean());
+        }
+    }
+
+    /**
+     * Decodes random lines received in random chunks, which may contain
+     * several lines, or parts of a line or of a delimiter.
+     */
+    private void assertRandomSplits(Random random, LineDelimiter delimiter, boolean direct,
+            boolean littleEndian) throws Exception {
+        TextLineDecoder decoder = new TextLineDecoder(Charset.forName("ISO-8859-1"), delimiter);
+        ProtocolCodecSession session = new ProtocolCodecSession();
+        List<String> lines = new ArrayList<String>();
+        StringBuilder text = new StringBuilder();
+        String alphabet = delimiter == LineDelimiter.AUTO ? "ab." : "ab.\r\n";
+
+        for (int i = random.nextInt(30); i > 0; i--) {
+            StringBuilder line = new StringBuilder();
+
+            for (int j = random.nextInt(40); j > 0; j--) {
+                line.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            // The first delimiter must be the one following the line
+            if (delimiter != LineDelimiter.AUTO
+                    && (line + delimiter.getValue()).indexOf(delimiter.getValue()) < line.length()) {
+                continue;
+            }
+
+            lines.add(line.toString());
+            text.append(line);
+
+            if (delimiter == LineDelimiter.AUTO) {
+                text.append(random.nextBoolean() ? "\n" : "\r\n");
+            } else {
+                text.append(delimiter.getValue());
+            }
+        }
+
+        // An incomplete line
+        text.append("ab");
+
+        byte[] bytes = text.toString().getBytes("ISO-8859-1");
+        int position = 0;
+
+        while (position < bytes.length) {
+            int length = Math.min(1 + random.nextInt(64), bytes.length - position);
+            IoBuffer in = IoBuffer.allocate(length + 16, direct);
+
+            if (littleEndian) {
+                in.order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            // Don't start at the beginning of the buffer
+            in.position(7);
+            in.put(bytes, position, length);
+            in.limit(in.position());
+            in.position(7);
+            decoder.decode(session, in, session.getDecoderOutput());
+            assertEquals(0, in.remaining());
+            position += length;
+        }
+
+        for (String line : lines) {
+            assertEquals(line, session.getDecoderOutputQueue().poll());
+        }
+
+        assertEquals(0, session.getDecoderOutputQueue().size());
+    }
+
+    @Test
+    public void testOverflowInSingleBuffer() throws Exception {
+        TextLineDecoder decoder = new TextLineDecoder(Charset.forName("UTF-8"),
+                LineDelimiter.AUTO);
+        decoder.setMaxLineLength(5);
+
+        CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder();
+        ProtocolCodecSession session = new ProtocolCodecSession();
+        ProtocolDecoderOutput out = session.getDecoderOutput();
+        IoBuffer in = IoBuffer.allocate(32);
+
+        in.putString("ABC\r\nDEFGHIJ\r\nKLM\r\n", encoder).flip();
+
+        try {
+            decoder.decode(session, in, out);
+            fail();
+        } catch (RecoverableProtocolDecoderException e) {
+            assertEquals("Line is too long: 9", e.getMessage());
+        }
+
+        assertEquals(1, session.getDecoderOutputQueue().size());
+        assertEquals("ABC", session.getDecoderOutputQueue().poll());
+
+        decoder.decode(session, in, out);
+        assertEquals(1, session.getDecoderOutputQueue().size());
+        assertEquals("KLM", session.getDecoderOutputQueue().poll());
+    }
 }
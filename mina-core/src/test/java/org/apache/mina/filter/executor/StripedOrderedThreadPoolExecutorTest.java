@@ -0,0 +1,146 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.executor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.junit.Test;
+
+/**
+ * Tests {@link StripedOrderedThreadPoolExecutor}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class StripedOrderedThreadPoolExecutorTest {
+    @Test
+    public void testStripedEventOrder() throws Throwable {
+        StripedOrderedThreadPoolExecutor executor = new StripedOrderedThreadPoolExecutor(4);
+        final ExecutorFilter filter = new ExecutorFilter(executor);
+        final EventOrderChecker nextFilter = new EventOrderChecker();
+        final EventOrderCounter[] sessions = new EventOrderCounter[] {
+                new EventOrderCounter(), new EventOrderCounter(),
+                new EventOrderCounter(), new EventOrderCounter(),
+                new EventOrderCounter(), new EventOrderCounter(),
+                new EventOrderCounter(), new EventOrderCounter(),
+                new EventOrderCounter(), new EventOrderCounter(), };
+        final int loop = 100000;
+
+        for (int i = 0; i < loop; i++) {
+            Integer objI = new Integer(i);
+
+            for (EventOrderCounter session: sessions) {
+                filter.messageReceived(nextFilter, session, objI);
+            }
+
+            if (nextFilter.throwable != null) {
+                throw nextFilter.throwable;
+            }
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+
+        for (EventOrderCounter session: sessions) {
+            assertEquals(loop - 1, session.lastCount.intValue());
+        }
+
+        assertEquals(loop * sessions.length, executor.getCompletedTaskCount());
+    }
+
+    private static class EventOrderCounter extends DummySession {
+        Integer lastCount = null;
+
+        /**
+         * Default constructor
+         */
+        public EventOrderCounter() {
+            super();
+        }
+        
+        public synchronized void setLastCount(Integer newCount) {
+            if (lastCount != null) {
+                assertEquals(lastCount.intValue() + 1, newCount
+                        .intValue());
+            }
+
+            lastCount = newCount;
+        }
+    }
+
+    private static class EventOrderChecker implements NextFilter {
+        Throwable throwable;
+
+        /**
+         * Default constructor
+         */
+        public EventOrderChecker() {
+            super();
+        }
+        
+        public void sessionOpened(IoSession session) {
+            // Do nothing
+        }
+
+        public void sessionClosed(IoSession session) {
+            // Do nothing
+        }
+
+        public void sessionIdle(IoSession session, IdleStatus status) {
+            // Do nothing
+        }
+
+        public void exceptionCaught(IoSession session, Throwable cause) {
+            // Do nothing
+        }
+
+        public void messageReceived(IoSession session, Object message) {
+            try {
+                ((EventOrderCounter) session).setLastCount((Integer) message);
+            } catch (Throwable t) {
+                if (this.throwable == null) {
+                    this.throwable = t;
+                }
+            }
+        }
+
+        public void messageSent(IoSession session, WriteRequest writeRequest) {
+            // Do nothing
+        }
+
+        public void filterWrite(IoSession session, WriteRequest writeRequest) {
+            // Do nothing
+        }
+
+        public void filterClose(IoSession session) {
+            // Do nothing
+        }
+
+        public void sessionCreated(IoSession session) {
+            // Do nothing
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.ssl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.codec.textline.TextLineCodecFactory;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.junit.Test;
+
+/**
+ * Tests {@link SslContextFactory}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SslContextFactoryTest {
+    private static final String[] PROTOCOLS = { "TLSv1.2" };
+
+    @Test
+    public void testSharedInstance() throws Exception {
+        SslContextFactory factory = createFactory();
+
+        assertSame(factory.getSharedInstance(), factory.getSharedInstance());
+        assertNotSame(factory.getSharedInstance(), factory.newInstance());
+    }
+
+    @Test
+    public void testSessionResumption() throws Exception {
+        SslContextFactory factory = createFactory();
+        factory.setServerSessionCacheSize(16);
+        factory.setServerSessionTimeout(60);
+
+        SslFilter sslFilter = new SslFilter(factory.getSharedInstance());
+        sslFilter.setEnabledProtocols(PROTOCOLS);
+
+        NioSocketAcceptor acceptor = new NioSocketAcceptor();
+        acceptor.getFilterChain().addLast("ssl", sslFilter);
+        acceptor.getFilterChain().addLast("text", new ProtocolCodecFilter(new TextLineCodecFactory()));
+        acceptor.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                session.write(message);
+            }
+        });
+        acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+
+        try {
+            // The client context caches the session for the next connections
+            SSLContext clientContext = SslDelegatedTaskTest.createSSLContext();
+            int port = acceptor.getLocalAddress().getPort();
+
+            for (int i = 0; i < 3; i++) {
+                SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(
+                        "127.0.0.1", port);
+                socket.setEnabledProtocols(PROTOCOLS);
+                socket.setSoTimeout(10000);
+                socket.getOutputStream().write("hello\n".getBytes());
+
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                assertEquals("hello", in.readLine());
+                socket.close();
+            }
+        } finally {
+            acceptor.dispose();
+        }
+
+        assertEquals(3, sslFilter.getCompletedHandshakeCount());
+        assertEquals(1, sslFilter.getFullHandshakeCount());
+        assertEquals(2, sslFilter.getResumedHandshakeCount());
+    }
+
+    private SslContextFactory createFactory() throws Exception {
+        char[] passphrase = "password".toCharArray();
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        KeyStore ts = KeyStore.getInstance("JKS");
+        ks.load(getClass().getResourceAsStream("keystore.sslTest"), passphrase);
+        ts.load(getClass().getResourceAsStream("truststore.sslTest"), passphrase);
+
+        SslContextFactory factory = new SslContextFactory();
+        factory.setKeyManagerFactoryKeyStore(ks);
+        factory.setKeyManagerFactoryKeyStorePassword("password");
+        factory.setTrustManagerFactoryKeyStore(ts);
+
+        return factory;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.ssl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.codec.textline.TextLineCodecFactory;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SslFilter} running the delegated tasks of the handshakes
+ * in a dedicated executor.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SslDelegatedTaskTest {
+    private static final String[] PROTOCOLS = { "TLSv1.2" };
+
+    private NioSocketAcceptor acceptor;
+
+    private ThreadPoolExecutor executor;
+
+    private SslFilter sslFilter;
+
+    @Before
+    public void setUp() throws Exception {
+        // A single thread and a small queue, so that some tasks are rejected
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(1));
+
+        sslFilter = new SslFilter(createSSLContext());
+        sslFilter.setEnabledProtocols(PROTOCOLS);
+        sslFilter.setDelegatedTaskExecutor(executor);
+
+        acceptor = new NioSocketAcceptor();
+        acceptor.getFilterChain().addLast("ssl", sslFilter);
+        acceptor.getFilterChain().addLast("text", new ProtocolCodecFilter(new TextLineCodecFactory()));
+        acceptor.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                session.write("echo " + message);
+            }
+        });
+        acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @After
+    public void tearDown() {
+        acceptor.dispose();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testConcurrentHandshakes() throws Exception {
+        final SSLContext context = createSSLContext();
+        final int port = acceptor.getLocalAddress().getPort();
+        final Exception[] error = new Exception[1];
+        Thread[] clients = new Thread[4];
+
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 3; j++) {
+                            SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket(
+                                    "127.0.0.1", port);
+                            socket.setEnabledProtocols(PROTOCOLS);
+                            socket.setSoTimeout(10000);
+                            socket.getOutputStream().write(("hello" + j + "\n").getBytes());
+
+                            BufferedReader in = new BufferedReader(new InputStreamReader(
+                                    socket.getInputStream()));
+                            assertEquals("echo hello" + j, in.readLine());
+                            socket.close();
+                        }
+                    } catch (Exception e) {
+                        error[0] = e;
+                    }
+                }
+            };
+            clients[i].start();
+        }
+
+        for (Thread client : clients) {
+            client.join();
+        }
+
+        if (error[0] != null) {
+            throw error[0];
+        }
+
+        assertEquals(12, sslFilter.getCompletedHandshakeCount());
+        assertTrue(sslFilter.getDelegatedTaskCount() > 0);
+        assertEquals(0, sslFilter.getPendingDelegatedTaskCount());
+    }
+
+    static SSLContext createSSLContext() throws Exception {
+        char[] passphrase = "password".toCharArray();
+        String algorithm = KeyManagerFactory.getDefaultAlgorithm();
+
+        SSLContext ctx = SSLContext.getInstance("TLS");
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(algorithm);
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(algorithm);
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        KeyStore ts = KeyStore.getInstance("JKS");
+
+        ks.load(SslTest.class.getResourceAsStream("keystore.sslTest"), passphrase);
+        ts.load(SslTest.class.getResourceAsStream("truststore.sslTest"), passphrase);
+
+        kmf.init(ks, passphrase);
+        tmf.init(ts);
+        ctx.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        return ctx;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.ssl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+
+import javax.net.ssl.SSLSocket;
+
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.codec.textline.TextLineCodecFactory;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SslFilter} borrowing its network buffers from a pool,
+ * with records split over several reads and messages spanning several
+ * records.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SslPooledBufferTest {
+    private static final String[] PROTOCOLS = { "TLSv1.2" };
+
+    private NioSocketAcceptor acceptor;
+
+    private SslFilter sslFilter;
+
+    @Before
+    public void setUp() throws Exception {
+        sslFilter = new SslFilter(SslDelegatedTaskTest.createSSLContext());
+        sslFilter.setEnabledProtocols(PROTOCOLS);
+        sslFilter.setUsePooledBuffers(true);
+
+        TextLineCodecFactory codec = new TextLineCodecFactory(Charset.forName("UTF-8"));
+        codec.setDecoderMaxLineLength(1 << 20);
+        codec.setEncoderMaxLineLength(1 << 20);
+
+        acceptor = new NioSocketAcceptor();
+        acceptor.getFilterChain().addLast("ssl", sslFilter);
+        acceptor.getFilterChain().addLast("text", new ProtocolCodecFilter(codec));
+        acceptor.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                session.write("echo " + message);
+            }
+        });
+        acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @After
+    public void tearDown() {
+        acceptor.dispose();
+    }
+
+    @Test
+    public void testEcho() throws Exception {
+        SSLSocket socket = (SSLSocket) SslDelegatedTaskTest.createSSLContext().getSocketFactory()
+                .createSocket("127.0.0.1", acceptor.getLocalAddress().getPort());
+        socket.setEnabledProtocols(PROTOCOLS);
+        socket.setSoTimeout(10000);
+
+        OutputStream out = socket.getOutputStream();
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+
+        for (int length = 1; length <= 100000; length *= 10) {
+            StringBuilder sb = new StringBuilder(length);
+
+            for (int i = 0; i < length; i++) {
+                sb.append((char) ('a' + i % 26));
+            }
+
+            String line = sb.toString();
+            byte[] data = (line + "\n").getBytes("UTF-8");
+
+            // Small writes, so that the records are received in pieces
+            for (int offset = 0; offset < data.length; offset += 3000) {
+                out.write(data, offset, Math.min(3000, data.length - offset));
+                out.flush();
+            }
+
+            assertEquals("echo " + line, in.readLine());
+        }
+
+        // The buffers have been given back once the records were processed
+        assertTrue(sslFilter.getBufferPool().size() > 0);
+
+        socket.close();
+    }
+}
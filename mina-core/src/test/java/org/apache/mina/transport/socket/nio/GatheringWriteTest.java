@@ -0,0 +1,212 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.socket.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.session.IoSessionConfig;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.codec.ProtocolDecoderAdapter;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the gathering writes enabled by
+ * {@link IoSessionConfig#setMaxGatheringWriteCount(int)}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class GatheringWriteTest {
+    private static final int MESSAGES = 5000;
+
+    private static final int MESSAGE_LENGTH = 7;
+
+    private NioSocketAcceptor acceptor;
+
+    private NioSocketConnector connector;
+
+    private final AtomicInteger received = new AtomicInteger();
+
+    private final AtomicReference<String> error = new AtomicReference<String>();
+
+    private final CountDownLatch allReceived = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        acceptor = new NioSocketAcceptor();
+        acceptor.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                IoBuffer buf = (IoBuffer) message;
+
+                // The bytes must be received in the order they were written
+                while (buf.hasRemaining()) {
+                    int expected = received.getAndIncrement();
+
+                    if (buf.get() != (byte) expected) {
+                        error.compareAndSet(null, "Unexpected byte at " + expected);
+                    }
+                }
+
+                if (received.get() == MESSAGES * MESSAGE_LENGTH) {
+                    allReceived.countDown();
+                }
+            }
+        });
+        acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+
+        connector = new NioSocketConnector();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connector.dispose();
+        acceptor.dispose();
+    }
+
+    @Test
+    public void testGatheredBuffersAreSentInOrder() throws Exception {
+        final List<Object> sentMessages = new ArrayList<Object>();
+
+        connector.getSessionConfig().setMaxGatheringWriteCount(16);
+        connector.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageSent(IoSession session, Object message) {
+                synchronized (sentMessages) {
+                    sentMessages.add(message);
+                }
+            }
+        });
+
+        IoSession session = connector.connect(new InetSocketAddress("127.0.0.1",
+                acceptor.getLocalAddress().getPort())).awaitUninterruptibly()
+                .getSession();
+        List<IoBuffer> messages = new ArrayList<IoBuffer>();
+        WriteFuture future = null;
+        int value = 0;
+
+        // Many small buffers, so that they are queued and gathered
+        for (int i = 0; i < MESSAGES; i++) {
+            IoBuffer buf = IoBuffer.allocate(MESSAGE_LENGTH);
+
+            for (int j = 0; j < MESSAGE_LENGTH; j++) {
+                buf.put((byte) value++);
+            }
+
+            buf.flip();
+            messages.add(buf);
+            future = session.write(buf);
+        }
+
+        assertTrue(future.awaitUninterruptibly(10000));
+        assertTrue(future.isWritten());
+        assertTrue(allReceived.await(10, TimeUnit.SECONDS));
+        assertNull(error.get());
+
+        session.close(true).awaitUninterruptibly();
+
+        // Every buffer is notified once, in order
+        synchronized (sentMessages) {
+            assertEquals(MESSAGES, sentMessages.size());
+
+            for (int i = 0; i < MESSAGES; i++) {
+                assertTrue(messages.get(i) == sentMessages.get(i));
+            }
+        }
+
+        assertEquals(0, session.getScheduledWriteBytes());
+    }
+
+    @Test
+    public void testEmptyBuffersAreCompletedWithoutWrite() throws Exception {
+        final int rounds = 20;
+        final CountDownLatch sent = new CountDownLatch(rounds * 8);
+
+        connector.getSessionConfig().setMaxGatheringWriteCount(16);
+
+        // An encoder producing nothing : only the codec's empty buffer
+        // markers reach the processor
+        connector.getFilterChain().addLast("codec", new ProtocolCodecFilter(
+                new ProtocolEncoderAdapter() {
+                    public void encode(IoSession session, Object message,
+                            ProtocolEncoderOutput out) {
+                        // Do nothing
+                    }
+                }, new ProtocolDecoderAdapter() {
+                    public void decode(IoSession session, IoBuffer in,
+                            ProtocolDecoderOutput out) {
+                        in.position(in.limit());
+                    }
+                }));
+        connector.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageSent(IoSession session, Object message) {
+                sent.countDown();
+            }
+        });
+
+        NioSession session = (NioSession) connector.connect(
+                new InetSocketAddress("127.0.0.1",
+                        acceptor.getLocalAddress().getPort()))
+                .awaitUninterruptibly().getSession();
+
+        for (int round = 0; round < rounds; round++) {
+            List<WriteFuture> futures = new ArrayList<WriteFuture>();
+
+            // Written in a row, most of them are queued and gathered
+            for (int i = 0; i < 8; i++) {
+                futures.add(session.write("message " + i));
+            }
+
+            for (WriteFuture future : futures) {
+                assertTrue(future.awaitUninterruptibly(10000));
+                assertTrue(future.isWritten());
+            }
+
+            // Nothing was left to write, OP_WRITE must not have been set
+            assertFalse((session.getSelectionKey().interestOps()
+                    & SelectionKey.OP_WRITE) != 0);
+        }
+
+        assertTrue(sent.await(10, TimeUnit.SECONDS));
+
+        session.close(true).awaitUninterruptibly();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.socket.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.service.AbstractIoService;
+import org.apache.mina.core.session.IoSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the read buffer recycling enabled by
+ * {@link AbstractIoService#setReadBufferRecycled(boolean)}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ReadBufferRecyclingTest {
+    private NioSocketAcceptor acceptor;
+
+    private NioSocketConnector connector;
+
+    /** The received buffers, and the byte they contained when received */
+    private final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+
+    @Before
+    public void setUp() throws Exception {
+        acceptor = new NioSocketAcceptor();
+        acceptor.setReadBufferRecycled(true);
+        acceptor.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                IoBuffer buf = (IoBuffer) message;
+                received.add(buf);
+                received.add(buf.get());
+            }
+        });
+
+        connector = new NioSocketConnector();
+        connector.setHandler(new IoHandlerAdapter());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connector.dispose();
+        acceptor.dispose();
+    }
+
+    @Test
+    public void testReadBufferIsReused() throws Exception {
+        acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+        IoBuffer[] buffers = receive(3);
+
+        assertSame(buffers[0], buffers[1]);
+        assertSame(buffers[1], buffers[2]);
+    }
+
+    @Test
+    public void testReadBufferIsNotReusedByDefault() throws Exception {
+        acceptor.setReadBufferRecycled(false);
+        acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+        IoBuffer[] buffers = receive(3);
+
+        assertNotSame(buffers[0], buffers[1]);
+        assertNotSame(buffers[1], buffers[2]);
+    }
+
+    /**
+     * Sends the given number of bytes, one by one, waiting for each of them
+     * to be received before sending the next one.
+     */
+    private IoBuffer[] receive(int count) throws Exception {
+        IoSession session = connector.connect(new InetSocketAddress("127.0.0.1",
+                acceptor.getLocalAddress().getPort())).awaitUninterruptibly()
+                .getSession();
+        IoBuffer[] buffers = new IoBuffer[count];
+
+        try {
+            for (int i = 0; i < count; i++) {
+                IoBuffer buf = IoBuffer.allocate(1);
+                buf.put((byte) i).flip();
+                session.write(buf);
+
+                buffers[i] = (IoBuffer) received.poll(10, TimeUnit.SECONDS);
+                assertTrue(buffers[i] != null);
+                assertEquals((byte) i, received.poll(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            session.close(true).awaitUninterruptibly();
+        }
+
+        return buffers;
+    }
+}
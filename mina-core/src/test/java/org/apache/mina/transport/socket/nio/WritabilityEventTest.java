@@ -0,0 +1,132 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.socket.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.AbstractIoSession;
+import org.apache.mina.core.session.IoSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the <tt>writabilityChanged</tt> events are fired by the I/O
+ * processor when a socket session crosses its write watermarks.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class WritabilityEventTest {
+    private static final int CHUNK_SIZE = 65536;
+
+    private static final int CHUNKS = 256;
+
+    private NioSocketAcceptor acceptor;
+
+    private NioSocketConnector connector;
+
+    /** The accepted session, which doesn't read until the test resumes it */
+    private final BlockingQueue<IoSession> acceptedSessions = new LinkedBlockingQueue<IoSession>();
+
+    /** The writability received by the connector handler */
+    private final BlockingQueue<Boolean> events = new LinkedBlockingQueue<Boolean>();
+
+    /** The threads the events were fired from */
+    private final BlockingQueue<Thread> eventThreads = new LinkedBlockingQueue<Thread>();
+
+    @Before
+    public void setUp() throws Exception {
+        acceptor = new NioSocketAcceptor();
+        acceptor.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void sessionCreated(IoSession session) {
+                session.suspendRead();
+                acceptedSessions.add(session);
+            }
+        });
+        acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+
+        connector = new NioSocketConnector();
+        connector.getSessionConfig().setWriteHighWatermark(4 * CHUNK_SIZE);
+        connector.getSessionConfig().setWriteLowWatermark(CHUNK_SIZE);
+        connector.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void writabilityChanged(IoSession session, boolean writable) {
+                eventThreads.add(Thread.currentThread());
+                events.add(writable);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connector.dispose();
+        acceptor.dispose();
+    }
+
+    @Test
+    public void testWritabilityChanged() throws Exception {
+        AbstractIoSession session = (AbstractIoSession) connector.connect(
+                acceptor.getLocalAddress()).awaitUninterruptibly().getSession();
+        IoSession accepted = acceptedSessions.poll(10, TimeUnit.SECONDS);
+        assertNotNull(accepted);
+
+        try {
+            // Queue everything before the processor starts flushing, so that
+            // the queue doesn't fall to the low watermark meanwhile
+            session.suspendWrite();
+
+            for (int i = 0; i < CHUNKS; i++) {
+                session.write(IoBuffer.allocate(CHUNK_SIZE).limit(CHUNK_SIZE));
+            }
+
+            session.resumeWrite();
+
+            // The peer doesn't read : the write queue exceeds the high watermark
+            assertEquals(Boolean.FALSE, events.poll(10, TimeUnit.SECONDS));
+            assertFalse(session.isWritable());
+
+            // The peer reads everything : the queue is drained
+            accepted.resumeRead();
+            assertEquals(Boolean.TRUE, events.poll(10, TimeUnit.SECONDS));
+            assertTrue(session.isWritable());
+            assertTrue(events.isEmpty());
+
+            // Both events are fired by the I/O processor, not by the writer
+            for (Thread thread : eventThreads) {
+                assertNotSame(Thread.currentThread(), thread);
+                assertTrue(thread.getName().startsWith("NioProcessor"));
+            }
+        } finally {
+            session.close(true).awaitUninterruptibly();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests {@link CachedClock}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CachedClockTest {
+    @After
+    public void tearDown() {
+        CachedClock.setHighResolution(false);
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        long before = System.currentTimeMillis();
+        long now = CachedClock.update();
+        long after = System.currentTimeMillis();
+
+        assertTrue(before <= now);
+        assertTrue(now <= after);
+        assertTrue(now <= CachedClock.currentTimeMillis());
+    }
+
+    @Test
+    public void testCachedValue() throws Exception {
+        assertFalse(CachedClock.isHighResolution());
+
+        long now = CachedClock.update();
+
+        // Wait for the system clock to move forward
+        while (System.currentTimeMillis() <= now + 10) {
+            Thread.sleep(5);
+        }
+
+        // The cached value only moves when the clock is updated, but another
+        // test thread may have done so in the meantime
+        long cached = CachedClock.currentTimeMillis();
+        assertTrue(cached >= now);
+
+        long updated = CachedClock.update();
+        assertTrue(updated > now);
+        assertTrue(CachedClock.currentTimeMillis() >= updated);
+    }
+
+    @Test
+    public void testHighResolution() throws Exception {
+        long now = CachedClock.update();
+        CachedClock.setHighResolution(true);
+        assertTrue(CachedClock.isHighResolution());
+
+        while (System.currentTimeMillis() <= now + 10) {
+            Thread.sleep(5);
+        }
+
+        // No update, yet the returned time follows the system clock
+        assertTrue(CachedClock.currentTimeMillis() > now + 10);
+
+        CachedClock.setHighResolution(false);
+        assertEquals(false, CachedClock.isHighResolution());
+    }
+}
@@ -183,7 +183,7 @@ public final class AprIoProcessor extends AbstractPollingIoProcessor<AprSession>
                 }
 
                 session.setReadable((flag & Poll.APR_POLLIN) != 0);
-                session.setWritable((flag & Poll.APR_POLLOUT) != 0);
+                session.setPollWritable((flag & Poll.APR_POLLOUT) != 0);
 
                 polledSessions.add(session);
             }
@@ -305,7 +305,7 @@ public final class AprIoProcessor extends AbstractPollingIoProcessor<AprSession>
      */
     @Override
     protected boolean isWritable(AprSession session) {
-        return session.isWritable();
+        return session.isPollWritable();
     }
 
     /**
@@ -196,7 +196,7 @@ public abstract class AprSession extends AbstractIoSession {
      * Is this session is tagged writable after a call to {@link Socket#pool(long)}.
      * @return true if this session is ready for write operations
      */
-    boolean isWritable() {
+    boolean isPollWritable() {
         return writable;
     }
 
@@ -204,7 +204,7 @@ public abstract class AprSession extends AbstractIoSession {
      * Set if this session is writable after a call to {@link Socket#pool(long)}.
      * @param writable true for set this session ready for write operations
      */
-    void setWritable(boolean writable) {
+    void setPollWritable(boolean writable) {
         this.writable = writable;
     }
     